@@ -25,6 +25,7 @@ package com.siemens.ct.exi.main.api.dom;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.DocumentFragment;
@@ -43,6 +44,8 @@ import com.siemens.ct.exi.core.attributes.AttributeFactory;
 import com.siemens.ct.exi.core.attributes.AttributeList;
 import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.main.util.ChannelOutputStream;
+import com.siemens.ct.exi.main.util.WhiteSpaceFilter;
 
 /**
  * Serializes an Document/DocumentFragment to an EXI stream.
@@ -64,6 +67,9 @@ public class DOMWriter {
 	protected boolean preserveComments;
 	protected boolean preservePIs;
 
+	// insignificant whitespace
+	protected final WhiteSpaceFilter whiteSpaceFilter;
+
 	public DOMWriter(EXIFactory factory) throws EXIException {
 		this.factory = factory;
 
@@ -78,18 +84,36 @@ public class DOMWriter {
 				FidelityOptions.FEATURE_COMMENT);
 		preservePIs = factory.getFidelityOptions().isFidelityEnabled(
 				FidelityOptions.FEATURE_PI);
+		whiteSpaceFilter = new WhiteSpaceFilter(factory);
 	}
 
 	public void setOutput(OutputStream os) throws EXIException, IOException {
 		exiBody = exiStream.encodeHeader(os);
 	}
 
+	/**
+	 * Sets a NIO channel as output, buffered by a
+	 * {@link ChannelOutputStream} of default size.
+	 * 
+	 * @param channel
+	 *            output channel
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void setOutput(WritableByteChannel channel) throws EXIException,
+			IOException {
+		setOutput(new ChannelOutputStream(channel));
+	}
+
 	public void encode(Document doc) throws EXIException, IOException {
 		if (exiBody == null) {
 			throw new EXIException("Please specify output stream");
 		}
 
 		exiBody.encodeStartDocument();
+		whiteSpaceFilter.startDocument();
 
 		// encode all child-nodes to retain root external
 		// nodes such as as comments and insignificant whitespaces
@@ -106,6 +130,7 @@ public class DOMWriter {
 		}
 
 		exiBody.encodeStartDocument();
+		whiteSpaceFilter.startDocument();
 		encodeChildNodes(docFragment.getChildNodes());
 		exiBody.encodeEndDocument();
 		exiBody.flush();
@@ -118,6 +143,7 @@ public class DOMWriter {
 			encodeFragment((DocumentFragment) n);
 		} else {
 			exiBody.encodeStartDocument();
+			whiteSpaceFilter.startDocument();
 			encodeNode(n);
 			exiBody.encodeEndDocument();
 			exiBody.flush();
@@ -144,6 +170,7 @@ public class DOMWriter {
 			prefix = Constants.XML_DEFAULT_NS_PREFIX;
 		}
 		exiBody.encodeStartElement(namespaceURI, localName, prefix);
+		whiteSpaceFilter.startElement();
 
 		// attributes
 		NamedNodeMap attributes = root.getAttributes();
@@ -162,8 +189,10 @@ public class DOMWriter {
 					// namespace-awareness ??
 					atLocalName = at.getNodeName();
 				}
+				String atValue = at.getNodeValue();
 				exiAttributes.addAttribute(at.getNamespaceURI(), atLocalName,
-						at.getPrefix(), at.getNodeValue());
+						at.getPrefix(), atValue);
+				whiteSpaceFilter.attribute(at.getNamespaceURI(), atValue);
 			}
 
 		}
@@ -177,6 +206,7 @@ public class DOMWriter {
 
 		// end element
 		exiBody.encodeEndElement();
+		whiteSpaceFilter.endElement();
 	}
 
 	protected void encodeChildNodes(NodeList children) throws EXIException,
@@ -190,12 +220,13 @@ public class DOMWriter {
 			case Node.ATTRIBUTE_NODE:
 				break;
 			case Node.TEXT_NODE:
-				exiBody.encodeCharacters(new StringValue(n.getNodeValue()));
+				encodeCharacters(n.getNodeValue());
 				break;
 			case Node.COMMENT_NODE:
 				if (preserveComments) {
 					String c = n.getNodeValue();
 					exiBody.encodeComment(c.toCharArray(), 0, c.length());
+					whiteSpaceFilter.endOfText();
 				}
 				break;
 			case Node.DOCUMENT_TYPE_NODE:
@@ -207,6 +238,7 @@ public class DOMWriter {
 				String text = dt.getInternalSubset() == null ? "" : dt
 						.getInternalSubset();
 				exiBody.encodeDocType(dt.getName(), publicID, systemID, text);
+				whiteSpaceFilter.endOfText();
 				break;
 			case Node.ENTITY_REFERENCE_NODE:
 				// checkPendingChars();
@@ -217,13 +249,14 @@ public class DOMWriter {
 				// exiBody.encodeCharacters(new
 				// StringValue(Constants.CDATA_START
 				// + cdata + Constants.CDATA_END));
-				exiBody.encodeCharacters(new StringValue(n.getNodeValue()));
+				encodeCharacters(n.getNodeValue());
 				break;
 			case Node.PROCESSING_INSTRUCTION_NODE:
 				if (preservePIs) {
 					ProcessingInstruction pi = (ProcessingInstruction) n;
 					exiBody.encodeProcessingInstruction(pi.getTarget(),
 							pi.getData());
+					whiteSpaceFilter.endOfText();
 				}
 				break;
 			default:
@@ -234,4 +267,15 @@ public class DOMWriter {
 			}
 		}
 	}
+
+	protected void encodeCharacters(String text) throws EXIException,
+			IOException {
+		if (whiteSpaceFilter.isIgnorable(text)) {
+			// dropped unless followed by other characters (adjacent nodes)
+			whiteSpaceFilter.defer(text);
+		} else {
+			whiteSpaceFilter.passOn(exiBody);
+			exiBody.encodeCharacters(new StringValue(text));
+		}
+	}
 }
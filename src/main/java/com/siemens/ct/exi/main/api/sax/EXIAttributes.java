@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import org.xml.sax.Attributes;
+
+import com.siemens.ct.exi.core.Constants;
+import com.siemens.ct.exi.core.context.QNameContext;
+import com.siemens.ct.exi.core.values.ListValue;
+import com.siemens.ct.exi.core.values.Value;
+import com.siemens.ct.exi.core.values.ValueType;
+
+/**
+ * SAX attributes backed by the decoded EXI values.
+ * 
+ * <p>
+ * Names and values are kept as delivered by the body decoder. The string
+ * representation of a value is created only when it is requested via one of
+ * the <code>getValue</code> methods. The slots are re-used across elements.
+ * </p>
+ */
+
+public class EXIAttributes implements Attributes {
+
+	protected static final String ATTRIBUTE_TYPE = "CDATA";
+
+	protected static final int DEFAULT_CAPACITY = 8;
+	protected static final int MAX_BUFFER_SIZE = 1 << 16;
+
+	protected int length;
+
+	protected QNameContext[] qnames;
+	protected String[] uris;
+	protected String[] localNames;
+	protected String[] qnameStrings;
+	protected Value[] values;
+	/* lazily created string values */
+	protected String[] strings;
+
+	/* helpers for string conversion */
+	protected char[] cbuffer;
+
+	public EXIAttributes() {
+		qnames = new QNameContext[DEFAULT_CAPACITY];
+		uris = new String[DEFAULT_CAPACITY];
+		localNames = new String[DEFAULT_CAPACITY];
+		qnameStrings = new String[DEFAULT_CAPACITY];
+		values = new Value[DEFAULT_CAPACITY];
+		strings = new String[DEFAULT_CAPACITY];
+	}
+
+	public void addAttribute(QNameContext qname, String qnameAsString,
+			Value value) {
+		addAttribute(qname, qname.getNamespaceUri(), qname.getLocalName(),
+				qnameAsString, value);
+	}
+
+	/**
+	 * Adds an attribute with the name strings to report, e.g. interned
+	 * names.
+	 * 
+	 * @param qname
+	 *            qualified name context
+	 * @param uri
+	 *            namespace URI of qname
+	 * @param localName
+	 *            local-name of qname
+	 * @param qnameAsString
+	 *            qualified name as string
+	 * @param value
+	 *            attribute value
+	 */
+	public void addAttribute(QNameContext qname, String uri,
+			String localName, String qnameAsString, Value value) {
+		if (length == qnames.length) {
+			int newCapacity = length << 1;
+			QNameContext[] newQNames = new QNameContext[newCapacity];
+			System.arraycopy(qnames, 0, newQNames, 0, length);
+			qnames = newQNames;
+			String[] newURIs = new String[newCapacity];
+			System.arraycopy(uris, 0, newURIs, 0, length);
+			uris = newURIs;
+			String[] newLocalNames = new String[newCapacity];
+			System.arraycopy(localNames, 0, newLocalNames, 0, length);
+			localNames = newLocalNames;
+			String[] newQNameStrings = new String[newCapacity];
+			System.arraycopy(qnameStrings, 0, newQNameStrings, 0, length);
+			qnameStrings = newQNameStrings;
+			Value[] newValues = new Value[newCapacity];
+			System.arraycopy(values, 0, newValues, 0, length);
+			values = newValues;
+			String[] newStrings = new String[newCapacity];
+			System.arraycopy(strings, 0, newStrings, 0, length);
+			strings = newStrings;
+		}
+		qnames[length] = qname;
+		uris[length] = uri;
+		localNames[length] = localName;
+		qnameStrings[length] = qnameAsString;
+		values[length] = value;
+		strings[length] = null;
+		length++;
+	}
+
+	public void clear() {
+		for (int i = 0; i < length; i++) {
+			// do not retain values
+			values[i] = null;
+			strings[i] = null;
+		}
+		length = 0;
+	}
+
+	/**
+	 * Returns the qualified name context of an attribute.
+	 * 
+	 * @param index
+	 *            attribute index
+	 * @return qname context or null if index is out of range
+	 */
+	public QNameContext getQNameContext(int index) {
+		return (index >= 0 && index < length) ? qnames[index] : null;
+	}
+
+	/**
+	 * Returns the decoded value of an attribute without creating its string
+	 * representation.
+	 * 
+	 * @param index
+	 *            attribute index
+	 * @return value or null if index is out of range
+	 */
+	public Value getTypedValue(int index) {
+		return (index >= 0 && index < length) ? values[index] : null;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public String getURI(int index) {
+		return (index >= 0 && index < length) ? uris[index] : null;
+	}
+
+	public String getLocalName(int index) {
+		return (index >= 0 && index < length) ? localNames[index] : null;
+	}
+
+	public String getQName(int index) {
+		return (index >= 0 && index < length) ? qnameStrings[index] : null;
+	}
+
+	public String getType(int index) {
+		return (index >= 0 && index < length) ? ATTRIBUTE_TYPE : null;
+	}
+
+	public String getValue(int index) {
+		if (index >= 0 && index < length) {
+			String s = strings[index];
+			if (s == null) {
+				s = toString(values[index]);
+				strings[index] = s;
+			}
+			return s;
+		} else {
+			return null;
+		}
+	}
+
+	public int getIndex(String uri, String localName) {
+		for (int i = 0; i < length; i++) {
+			if (localNames[i].equals(localName) && uris[i].equals(uri)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public int getIndex(String qName) {
+		for (int i = 0; i < length; i++) {
+			if (qnameStrings[i].equals(qName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public String getType(String uri, String localName) {
+		return getType(getIndex(uri, localName));
+	}
+
+	public String getType(String qName) {
+		return getType(getIndex(qName));
+	}
+
+	public String getValue(String uri, String localName) {
+		return getValue(getIndex(uri, localName));
+	}
+
+	public String getValue(String qName) {
+		return getValue(getIndex(qName));
+	}
+
+	protected void ensureBufferCapacity(int reqSize) {
+		if (cbuffer == null || reqSize > cbuffer.length) {
+			cbuffer = new char[Math.max(reqSize, 64)];
+		}
+	}
+
+	protected String toString(Value val) {
+		switch (val.getValueType()) {
+		case BOOLEAN:
+		case STRING:
+			return val.toString();
+		case LIST:
+			Value[] listValues = ((ListValue) val).toValues();
+			if (listValues.length == 0) {
+				return Constants.EMPTY_STRING;
+			}
+
+			// items and delimiters written to one buffer
+			int llen = 0;
+			for (int i = 0; i < listValues.length; i++) {
+				llen += listValues[i].getCharactersLength() + 1;
+			}
+			char[] lbuffer;
+			if (llen > MAX_BUFFER_SIZE) {
+				lbuffer = new char[llen];
+			} else {
+				ensureBufferCapacity(llen);
+				lbuffer = cbuffer;
+			}
+			int offset = 0;
+			for (int i = 0; i < listValues.length; i++) {
+				Value val2 = listValues[i];
+				val2.getCharacters(lbuffer, offset);
+				offset += val2.getCharactersLength();
+				lbuffer[offset++] = ' ';
+			}
+			return new String(lbuffer, 0, llen);
+		default:
+			int slen = val.getCharactersLength();
+			if (slen > MAX_BUFFER_SIZE) {
+				// do not keep a large helper buffer
+				return val.toString();
+			}
+			ensureBufferCapacity(slen);
+			return val.toString(cbuffer, 0);
+		}
+	}
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.sax.SAXSource;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+
+/**
+ * Encodes many (small) XML documents with one set of runtime structures.
+ * 
+ * <p>
+ * The SAX encoder and the XML reader are created once and re-used for every
+ * document of a batch (and across batches). Each document is a complete EXI
+ * stream (header and body) handed to an {@link OutputSink}.
+ * </p>
+ * 
+ * <pre>
+ * EXIBatchEncoder batch = new EXIBatchEncoder(exiFactory);
+ * batch.encodeAll(sources, EXIBatchEncoder.framed(os));
+ * </pre>
+ * 
+ * <p>
+ * Note: an instance is not thread-safe.
+ * </p>
+ */
+
+public class EXIBatchEncoder {
+
+	/**
+	 * Receives the EXI streams of a batch.
+	 */
+	public interface OutputSink {
+		/**
+		 * Returns the stream the next EXI document is written to.
+		 * 
+		 * @param index
+		 *            index of document within batch
+		 * @return output stream
+		 * @throws IOException
+		 *             IO exception
+		 */
+		OutputStream startDocument(int index) throws IOException;
+
+		/**
+		 * Called once the EXI document has been written completely.
+		 * 
+		 * @param index
+		 *            index of document within batch
+		 * @throws IOException
+		 *             IO exception
+		 */
+		void endDocument(int index) throws IOException;
+	}
+
+	protected final EXIFactory exiFactory;
+	protected final SAXEncoder encoder;
+	protected final XMLReader xmlReader;
+
+	public EXIBatchEncoder(EXIFactory exiFactory) throws EXIException {
+		this.exiFactory = exiFactory;
+		this.encoder = new SAXFactory(exiFactory).createEXIWriter();
+		try {
+			xmlReader = XMLReaderFactory.createXMLReader();
+			xmlReader.setContentHandler(encoder);
+			xmlReader.setProperty(
+					"http://xml.org/sax/properties/lexical-handler", encoder);
+			xmlReader.setProperty(
+					"http://xml.org/sax/properties/declaration-handler",
+					encoder);
+		} catch (SAXException e) {
+			throw new EXIException(e);
+		}
+	}
+
+	public EXIFactory getEXIFactory() {
+		return exiFactory;
+	}
+
+	/**
+	 * Encodes all sources to the given sink.
+	 * 
+	 * @param sources
+	 *            XML sources (stream or SAX sources)
+	 * @param sink
+	 *            receiver of EXI streams
+	 * @return number of encoded documents
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public int encodeAll(Iterable<? extends Source> sources, OutputSink sink)
+			throws EXIException, IOException, SAXException {
+		int index = 0;
+		for (Source source : sources) {
+			InputSource is = SAXSource.sourceToInputSource(source);
+			if (is == null) {
+				throw new EXIException("Unsupported source type: " + source);
+			}
+			OutputStream os = sink.startDocument(index);
+			encode(is, os);
+			sink.endDocument(index);
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Encodes a single XML document.
+	 * 
+	 * @param is
+	 *            XML input
+	 * @param os
+	 *            EXI output
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void encode(InputSource is, OutputStream os) throws EXIException,
+			IOException, SAXException {
+		encoder.reset(os);
+		xmlReader.parse(is);
+	}
+
+	/**
+	 * Returns a sink that writes all documents to one stream, each preceded
+	 * by its length in bytes as 4-byte big-endian integer (see
+	 * <code>DataOutputStream.writeInt</code>).
+	 * 
+	 * @param os
+	 *            output stream
+	 * @return framing sink
+	 */
+	public static OutputSink framed(OutputStream os) {
+		return new FramedSink(os);
+	}
+
+	/**
+	 * Returns a sink that writes all documents back-to-back to one stream.
+	 * EXI streams are self-delimiting, they can be decoded one after the
+	 * other from a <code>PushbackInputStream</code>.
+	 * 
+	 * @param os
+	 *            output stream
+	 * @return concatenating sink
+	 */
+	public static OutputSink concatenated(final OutputStream os) {
+		return new OutputSink() {
+			public OutputStream startDocument(int index) {
+				return os;
+			}
+
+			public void endDocument(int index) {
+			}
+		};
+	}
+
+	/**
+	 * Returns a sink that collects each document in its own byte array.
+	 * 
+	 * @return separating sink
+	 */
+	public static SeparateSink separate() {
+		return new SeparateSink();
+	}
+
+	static class FramedSink implements OutputSink {
+		final DataOutputStream dos;
+		final ByteArrayOutputStream buffer;
+
+		FramedSink(OutputStream os) {
+			dos = new DataOutputStream(os);
+			buffer = new ByteArrayOutputStream();
+		}
+
+		public OutputStream startDocument(int index) {
+			buffer.reset();
+			return buffer;
+		}
+
+		public void endDocument(int index) throws IOException {
+			dos.writeInt(buffer.size());
+			buffer.writeTo(dos);
+			dos.flush();
+		}
+	}
+
+	public static class SeparateSink implements OutputSink {
+		protected final List<byte[]> documents = new ArrayList<byte[]>();
+		protected final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+		public OutputStream startDocument(int index) {
+			buffer.reset();
+			return buffer;
+		}
+
+		public void endDocument(int index) {
+			documents.add(buffer.toByteArray());
+		}
+
+		public List<byte[]> getDocuments() {
+			return documents;
+		}
+	}
+
+}
@@ -25,6 +25,7 @@ package com.siemens.ct.exi.main.api.sax;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 
 import javax.xml.transform.sax.SAXResult;
 
@@ -51,7 +52,18 @@ public class EXIResult extends SAXResult {
 
 	public EXIResult(EXIFactory exiFactory) throws EXIException {
 		// DefaultHandler2 handler = exiFactory.createEXIWriter(os);
-		handler = new SAXFactory(exiFactory).createEXIWriter();
+		this(new SAXFactory(exiFactory).createEXIWriter());
+	}
+
+	/**
+	 * Creates a result that feeds the given encoder, e.g. one borrowed from
+	 * a <code>SAXEncoderPool</code>.
+	 * 
+	 * @param handler
+	 *            SAX encoder
+	 */
+	public EXIResult(SAXEncoder handler) {
+		this.handler = handler;
 		// set internal states
 		setHandler(handler);
 		setLexicalHandler(handler);
@@ -62,4 +74,44 @@ public class EXIResult extends SAXResult {
 		handler.setOutputStream(os);
 	}
 
+	/**
+	 * @param os
+	 *            output stream
+	 * @param buffered
+	 *            whether the stream is buffered already
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @see SAXEncoder#setOutputStream(OutputStream, boolean)
+	 */
+	public void setOutputStream(OutputStream os, boolean buffered)
+			throws EXIException, IOException {
+		handler.setOutputStream(os, buffered);
+	}
+
+	public void setOutputChannel(WritableByteChannel channel)
+			throws EXIException, IOException {
+		handler.setOutputChannel(channel);
+	}
+
+	/**
+	 * Re-uses this result (and its encoder) for a new document.
+	 * 
+	 * @param os
+	 *            output stream for the next EXI document
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @see SAXEncoder#reset(OutputStream)
+	 */
+	public void reset(OutputStream os) throws EXIException, IOException {
+		handler.reset(os);
+	}
+
+	public SAXEncoder getEncoder() {
+		return handler;
+	}
+
 }
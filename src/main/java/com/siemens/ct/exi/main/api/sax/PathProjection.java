@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+import com.siemens.ct.exi.core.context.QNameContext;
+
+/**
+ * Set of simple element paths that restricts the events a
+ * <code>SAXDecoder</code> reports.
+ * 
+ * <p>
+ * A path is absolute and consists of element steps, e.g.
+ * <code>/library/book/title</code>. A step is either a local-name (any
+ * namespace), <code>{uri}local-name</code> or the wildcard <code>*</code>.
+ * Elements matched by a path are reported with their entire content.
+ * Elements that are on the way to a possible match (e.g. <code>journal</code>
+ * for <code>/library/&#42;/title</code>) are reported with their attributes
+ * only (no character content, comments or processing instructions). Any other
+ * element is decoded without calling the handler and without materializing
+ * its values.
+ * </p>
+ * 
+ * <p>
+ * A projection is registered via the property {@link #PROPERTY} and keeps
+ * matching state while decoding. Hence an instance must not be shared by
+ * decoders that are used at the same time.
+ * </p>
+ */
+
+public class PathProjection {
+
+	/**
+	 * SAX property for registering a path projection (
+	 * <code>PathProjection</code> or <code>String[]</code> of paths) with an
+	 * EXI <code>XMLReader</code>.
+	 */
+	public static final String PROPERTY = "http://www.siemens.com/exi/properties/path-projection";
+
+	public static final String WILDCARD = "*";
+
+	protected final String[] paths;
+	/* steps per path, null for wildcards */
+	protected final String[][] uris;
+	protected final String[][] localNames;
+
+	/* state per element depth */
+	protected BitSet[] candidates;
+	protected boolean[] selected;
+	protected int depth;
+
+	public PathProjection(Collection<String> paths) {
+		this(paths.toArray(new String[paths.size()]));
+	}
+
+	public PathProjection(String... paths) {
+		this.paths = paths.clone();
+		this.uris = new String[paths.length][];
+		this.localNames = new String[paths.length][];
+
+		for (int p = 0; p < paths.length; p++) {
+			String path = paths[p];
+			if (path == null || !path.startsWith("/") || path.length() < 2) {
+				throw new IllegalArgumentException("Invalid path '" + path
+						+ "'");
+			}
+			String[] steps = path.substring(1).split("/");
+			uris[p] = new String[steps.length];
+			localNames[p] = new String[steps.length];
+			for (int s = 0; s < steps.length; s++) {
+				String step = steps[s];
+				if (step.length() == 0) {
+					throw new IllegalArgumentException("Invalid path '"
+							+ path + "'");
+				} else if (WILDCARD.equals(step)) {
+					// any element
+				} else if (step.charAt(0) == '{') {
+					int end = step.indexOf('}');
+					if (end < 0 || end == step.length() - 1) {
+						throw new IllegalArgumentException("Invalid path '"
+								+ path + "'");
+					}
+					uris[p][s] = step.substring(1, end);
+					localNames[p][s] = step.substring(end + 1);
+				} else {
+					localNames[p][s] = step;
+				}
+			}
+		}
+
+		candidates = new BitSet[8];
+		selected = new boolean[8];
+		candidates[0] = new BitSet(paths.length);
+		reset();
+	}
+
+	public String[] getPaths() {
+		return paths.clone();
+	}
+
+	/**
+	 * Resets the matching state, e.g. before a new document is decoded.
+	 */
+	public void reset() {
+		depth = 0;
+		selected[0] = false;
+		candidates[0].set(0, paths.length);
+	}
+
+	/**
+	 * Checks whether a start element is part of the projection and, if so,
+	 * enters the element.
+	 * 
+	 * @param se
+	 *            start element
+	 * @return false if the element and its content can be skipped (element
+	 *         is not entered)
+	 */
+	public boolean startElement(QNameContext se) {
+		boolean sel = selected[depth];
+		BitSet next = null;
+
+		if (depth + 1 == candidates.length) {
+			BitSet[] newCandidates = new BitSet[candidates.length << 1];
+			System.arraycopy(candidates, 0, newCandidates, 0, depth + 1);
+			candidates = newCandidates;
+			boolean[] newSelected = new boolean[candidates.length];
+			System.arraycopy(selected, 0, newSelected, 0, depth + 1);
+			selected = newSelected;
+		}
+
+		if (!sel) {
+			next = candidates[depth + 1];
+			if (next == null) {
+				next = candidates[depth + 1] = new BitSet(paths.length);
+			} else {
+				next.clear();
+			}
+
+			BitSet current = candidates[depth];
+			for (int p = current.nextSetBit(0); p >= 0; p = current
+					.nextSetBit(p + 1)) {
+				if (matches(p, depth, se)) {
+					if (localNames[p].length == depth + 1) {
+						sel = true;
+					} else {
+						next.set(p);
+					}
+				}
+			}
+
+			if (!sel && next.isEmpty()) {
+				return false;
+			}
+		}
+
+		depth++;
+		selected[depth] = sel;
+		if (sel && next != null) {
+			// no further matching needed within selected elements
+			next.clear();
+		}
+
+		return true;
+	}
+
+	protected boolean matches(int path, int step, QNameContext se) {
+		String localName = localNames[path][step];
+		if (localName == null) {
+			return true;
+		}
+		String uri = uris[path][step];
+		return localName.equals(se.getLocalName())
+				&& (uri == null || uri.equals(se.getNamespaceUri()));
+	}
+
+	/**
+	 * Leaves an element that has been entered by
+	 * {@link #startElement(QNameContext)}.
+	 */
+	public void endElement() {
+		assert (depth > 0);
+		depth--;
+	}
+
+	/**
+	 * @return true if the content (characters, comments etc.) of the current
+	 *         element is part of the projection
+	 */
+	public boolean isContentSelected() {
+		return depth == 0 || selected[depth];
+	}
+
+}
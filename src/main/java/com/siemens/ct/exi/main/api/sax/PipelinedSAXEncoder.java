@@ -0,0 +1,601 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.values.Value;
+
+/**
+ * Serializes SAX events to EXI stream using two threads.
+ * 
+ * <p>
+ * The calling (parser) thread captures SAX events into a ring buffer of
+ * re-usable event records. A second thread replays the records to the EXI
+ * body encoder so that XML parsing and EXI encoding run in parallel. If the
+ * ring buffer is full the parser thread waits for the encoder thread
+ * (backpressure). Failures of the encoder thread are reported to the parser
+ * thread with the next SAX event or <code>endDocument</code> at the latest.
+ * </p>
+ * 
+ * <p>
+ * The output stream MUST NOT be used before <code>endDocument</code>
+ * returned. A parse that ends without <code>endDocument</code> and without
+ * reporting <code>fatalError</code> (e.g., an <code>IOException</code> of
+ * the XML input) leaves the encoder thread waiting for further events.
+ * Callers MUST call {@link #abort()} whenever parsing fails, e.g.
+ * </p>
+ * 
+ * <pre>
+ * try {
+ * 	xmlReader.parse(is);
+ * } catch (Exception e) {
+ * 	encoder.abort();
+ * 	throw e;
+ * }
+ * </pre>
+ * 
+ * <p>
+ * Resetting the encoder or starting the next document aborts a pending
+ * encoder thread as well.
+ * </p>
+ */
+
+public class PipelinedSAXEncoder extends SAXEncoderExtendedHandler {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/* records are published to the encoder thread in batches */
+	protected static final int PUBLISH_BATCH_SIZE = 64;
+
+	/* maximum number of characters per record */
+	protected static final int MAX_RECORD_CHARS = 8192;
+
+	static final int START_DOCUMENT = 0;
+	static final int END_DOCUMENT = 1;
+	static final int START_PREFIX_MAPPING = 2;
+	static final int START_ELEMENT = 3;
+	static final int END_ELEMENT = 4;
+	static final int CHARACTERS = 5;
+	static final int COMMENT = 6;
+	static final int PROCESSING_INSTRUCTION = 7;
+	static final int START_DTD = 8;
+	static final int END_DTD = 9;
+	static final int START_ENTITY = 10;
+	static final int END_ENTITY = 11;
+	static final int SKIPPED_ENTITY = 12;
+	static final int ELEMENT_DECL = 13;
+	static final int ATTRIBUTE_DECL = 14;
+	static final int INTERNAL_ENTITY_DECL = 15;
+	static final int TYPED_VALUE = 16;
+
+	protected final Executor executor;
+
+	/* ring buffer */
+	protected final Record[] records;
+	protected final int mask;
+
+	/* producer state (parser thread only) */
+	protected long produced;
+	protected long consumedCache;
+
+	/* shared state, guarded by lock */
+	protected final ReentrantLock lock;
+	protected final Condition notEmpty;
+	protected final Condition notFull;
+	protected final Condition finishedCond;
+	protected long published;
+	protected long consumed;
+	protected boolean running;
+	protected boolean aborted;
+	protected Throwable error;
+
+	public PipelinedSAXEncoder(EXIFactory factory) throws EXIException {
+		this(factory, null, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a pipelined encoder.
+	 * 
+	 * @param factory
+	 *            EXI factory
+	 * @param executor
+	 *            executor running the encoder thread for each document, or
+	 *            <code>null</code> to start a new daemon thread per document
+	 * @param capacity
+	 *            number of event records in the ring buffer, rounded up to a
+	 *            power of two
+	 * @throws EXIException
+	 *             EXI exception
+	 */
+	public PipelinedSAXEncoder(EXIFactory factory, Executor executor,
+			int capacity) throws EXIException {
+		super(factory);
+		if (capacity < 2) {
+			throw new IllegalArgumentException("Capacity too small: "
+					+ capacity);
+		}
+		this.executor = executor;
+
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		records = new Record[size];
+		for (int i = 0; i < size; i++) {
+			records[i] = new Record();
+		}
+		mask = size - 1;
+
+		lock = new ReentrantLock();
+		notEmpty = lock.newCondition();
+		notFull = lock.newCondition();
+		finishedCond = lock.newCondition();
+	}
+
+	@Override
+	public void reset(OutputStream os, boolean buffered) throws EXIException,
+			IOException {
+		abort();
+		super.reset(os, buffered);
+	}
+
+	@Override
+	public void reset() {
+		abort();
+		super.reset();
+	}
+
+	/**
+	 * Stops the encoder thread of the current document (if any) and waits
+	 * for its termination. Events that have not been encoded yet are
+	 * discarded.
+	 */
+	public void abort() {
+		lock.lock();
+		try {
+			aborted = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+			awaitFinished();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return whether the encoder thread of the current document is running
+	 */
+	public boolean isRunning() {
+		lock.lock();
+		try {
+			return running;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * ======================================================================
+	 * Producer (parser thread)
+	 * ======================================================================
+	 */
+
+	protected Record nextRecord(int type) throws SAXException {
+		if (produced - consumedCache >= records.length) {
+			// ring buffer full
+			lock.lock();
+			try {
+				publish();
+				while (produced - consumed >= records.length && running) {
+					notFull.awaitUninterruptibly();
+				}
+				consumedCache = consumed;
+				checkError();
+			} finally {
+				lock.unlock();
+			}
+		}
+		Record r = records[(int) (produced & mask)];
+		r.type = type;
+		return r;
+	}
+
+	protected void commitRecord() throws SAXException {
+		produced++;
+		if ((produced & (PUBLISH_BATCH_SIZE - 1)) == 0) {
+			lock.lock();
+			try {
+				publish();
+				checkError();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void publish() {
+		published = produced;
+		notEmpty.signal();
+	}
+
+	private void checkError() throws SAXException {
+		if (error != null) {
+			Throwable t = error;
+			if (t instanceof SAXException) {
+				throw (SAXException) t;
+			} else if (t instanceof Exception) {
+				throw new SAXException("Pipelined encoding failed",
+						(Exception) t);
+			} else if (t instanceof Error) {
+				throw (Error) t;
+			} else {
+				throw new SAXException("Pipelined encoding failed: " + t);
+			}
+		} else if (!running) {
+			throw new SAXException("Pipelined encoding not running");
+		}
+	}
+
+	private void awaitFinished() {
+		while (running) {
+			finishedCond.awaitUninterruptibly();
+		}
+	}
+
+	protected void addRecord(int type, String s1, String s2, String s3)
+			throws SAXException {
+		Record r = nextRecord(type);
+		r.s1 = s1;
+		r.s2 = s2;
+		r.s3 = s3;
+		commitRecord();
+	}
+
+	protected void addCharactersRecord(int type, char[] ch, int start,
+			int length) throws SAXException {
+		Record r = nextRecord(type);
+		r.setCharacters(ch, start, length);
+		commitRecord();
+	}
+
+	@Override
+	public void startDocument() throws SAXException {
+		abort();
+
+		lock.lock();
+		try {
+			produced = consumedCache = published = consumed = 0L;
+			aborted = false;
+			error = null;
+			running = true;
+		} finally {
+			lock.unlock();
+		}
+
+		Runnable consumer = new Runnable() {
+			public void run() {
+				consume();
+			}
+		};
+		if (executor == null) {
+			Thread t = new Thread(consumer, "EXI-PipelinedSAXEncoder");
+			t.setDaemon(true);
+			t.start();
+		} else {
+			try {
+				executor.execute(consumer);
+			} catch (RuntimeException e) {
+				lock.lock();
+				try {
+					running = false;
+				} finally {
+					lock.unlock();
+				}
+				throw new SAXException("startDocument", e);
+			}
+		}
+
+		addRecord(START_DOCUMENT, null, null, null);
+	}
+
+	@Override
+	public void endDocument() throws SAXException {
+		addRecord(END_DOCUMENT, null, null, null);
+		lock.lock();
+		try {
+			publish();
+			awaitFinished();
+			if (error != null) {
+				checkError();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void fatalError(SAXParseException e) throws SAXException {
+		abort();
+		throw e;
+	}
+
+	@Override
+	public void startPrefixMapping(String prefix, String uri)
+			throws SAXException {
+		addRecord(START_PREFIX_MAPPING, prefix, uri, null);
+	}
+
+	@Override
+	public void startElement(String uri, String local, String raw,
+			Attributes attributes) throws SAXException {
+		Record r = nextRecord(START_ELEMENT);
+		r.s1 = uri;
+		r.s2 = local;
+		r.s3 = raw;
+		r.atts.clear();
+		if (attributes != null) {
+			for (int i = 0; i < attributes.getLength(); i++) {
+				r.atts.addAttribute(attributes.getURI(i),
+						attributes.getLocalName(i), attributes.getQName(i),
+						attributes.getType(i), attributes.getValue(i));
+			}
+		}
+		commitRecord();
+	}
+
+	@Override
+	public void endElement(String uri, String local, String raw)
+			throws SAXException {
+		addRecord(END_ELEMENT, uri, local, raw);
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length)
+			throws SAXException {
+		// split large chunks, encoder thread coalesces characters anyway
+		while (length > MAX_RECORD_CHARS) {
+			addCharactersRecord(CHARACTERS, ch, start, MAX_RECORD_CHARS);
+			start += MAX_RECORD_CHARS;
+			length -= MAX_RECORD_CHARS;
+		}
+		addCharactersRecord(CHARACTERS, ch, start, length);
+	}
+
+	@Override
+	public void typedValue(Value value) throws SAXException {
+		Record r = nextRecord(TYPED_VALUE);
+		r.value = value;
+		commitRecord();
+	}
+
+	@Override
+	public void comment(char[] ch, int start, int length) throws SAXException {
+		addCharactersRecord(COMMENT, ch, start, length);
+	}
+
+	@Override
+	public void processingInstruction(String target, String data)
+			throws SAXException {
+		addRecord(PROCESSING_INSTRUCTION, target, data, null);
+	}
+
+	@Override
+	public void startDTD(String name, String publicId, String systemId)
+			throws SAXException {
+		addRecord(START_DTD, name, publicId, systemId);
+	}
+
+	@Override
+	public void endDTD() throws SAXException {
+		addRecord(END_DTD, null, null, null);
+	}
+
+	@Override
+	public void startEntity(String name) throws SAXException {
+		addRecord(START_ENTITY, name, null, null);
+	}
+
+	@Override
+	public void endEntity(String name) throws SAXException {
+		addRecord(END_ENTITY, name, null, null);
+	}
+
+	@Override
+	public void skippedEntity(String name) throws SAXException {
+		addRecord(SKIPPED_ENTITY, name, null, null);
+	}
+
+	@Override
+	public void elementDecl(String name, String model) throws SAXException {
+		addRecord(ELEMENT_DECL, name, model, null);
+	}
+
+	@Override
+	public void attributeDecl(String eName, String aName, String type,
+			String mode, String value) throws SAXException {
+		Record r = nextRecord(ATTRIBUTE_DECL);
+		r.s1 = eName;
+		r.s2 = aName;
+		r.s3 = type;
+		r.s4 = mode;
+		r.s5 = value;
+		commitRecord();
+	}
+
+	@Override
+	public void internalEntityDecl(String name, String value)
+			throws SAXException {
+		addRecord(INTERNAL_ENTITY_DECL, name, value, null);
+	}
+
+	/*
+	 * ======================================================================
+	 * Consumer (encoder thread)
+	 * ======================================================================
+	 */
+
+	protected void consume() {
+		try {
+			boolean done = false;
+			while (!done) {
+				long from;
+				long to;
+				lock.lock();
+				try {
+					while (published == consumed && !aborted) {
+						notEmpty.awaitUninterruptibly();
+					}
+					if (aborted) {
+						return;
+					}
+					from = consumed;
+					to = published;
+				} finally {
+					lock.unlock();
+				}
+
+				for (long i = from; i < to && !done; i++) {
+					Record r = records[(int) (i & mask)];
+					replay(r);
+					r.s1 = r.s2 = r.s3 = r.s4 = r.s5 = null;
+					r.value = null;
+					done = (r.type == END_DOCUMENT);
+				}
+
+				lock.lock();
+				try {
+					consumed = to;
+					notFull.signal();
+				} finally {
+					lock.unlock();
+				}
+			}
+		} catch (Throwable t) {
+			lock.lock();
+			try {
+				error = t;
+			} finally {
+				lock.unlock();
+			}
+		} finally {
+			lock.lock();
+			try {
+				running = false;
+				notFull.signalAll();
+				finishedCond.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	protected void replay(Record r) throws SAXException {
+		switch (r.type) {
+		case START_DOCUMENT:
+			super.startDocument();
+			break;
+		case END_DOCUMENT:
+			super.endDocument();
+			break;
+		case START_PREFIX_MAPPING:
+			super.startPrefixMapping(r.s1, r.s2);
+			break;
+		case START_ELEMENT:
+			super.startElement(r.s1, r.s2, r.s3, r.atts);
+			break;
+		case END_ELEMENT:
+			super.endElement(r.s1, r.s2, r.s3);
+			break;
+		case CHARACTERS:
+			super.characters(r.ch, 0, r.length);
+			break;
+		case COMMENT:
+			super.comment(r.ch, 0, r.length);
+			break;
+		case PROCESSING_INSTRUCTION:
+			super.processingInstruction(r.s1, r.s2);
+			break;
+		case START_DTD:
+			super.startDTD(r.s1, r.s2, r.s3);
+			break;
+		case END_DTD:
+			super.endDTD();
+			break;
+		case START_ENTITY:
+			super.startEntity(r.s1);
+			break;
+		case END_ENTITY:
+			super.endEntity(r.s1);
+			break;
+		case SKIPPED_ENTITY:
+			super.skippedEntity(r.s1);
+			break;
+		case ELEMENT_DECL:
+			super.elementDecl(r.s1, r.s2);
+			break;
+		case ATTRIBUTE_DECL:
+			super.attributeDecl(r.s1, r.s2, r.s3, r.s4, r.s5);
+			break;
+		case INTERNAL_ENTITY_DECL:
+			super.internalEntityDecl(r.s1, r.s2);
+			break;
+		case TYPED_VALUE:
+			super.typedValue(r.value);
+			break;
+		default:
+			throw new SAXException("Unknown event record " + r.type);
+		}
+	}
+
+	static final class Record {
+		int type;
+		String s1;
+		String s2;
+		String s3;
+		String s4;
+		String s5;
+		Value value;
+		final AttributesImpl atts = new AttributesImpl();
+		char[] ch = new char[64];
+		int length;
+
+		void setCharacters(char[] ch, int start, int length) {
+			if (this.ch.length < length) {
+				this.ch = new char[Math.max(length, this.ch.length << 1)];
+			}
+			System.arraycopy(ch, start, this.ch, 0, length);
+			this.length = length;
+		}
+	}
+
+}
@@ -23,11 +23,12 @@
 
 package com.siemens.ct.exi.main.api.sax;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.Arrays;
 import java.util.List;
 
 import org.xml.sax.ContentHandler;
@@ -41,7 +42,6 @@ import org.xml.sax.SAXNotSupportedException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.ext.DeclHandler;
 import org.xml.sax.ext.LexicalHandler;
-import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 import com.siemens.ct.exi.core.Constants;
@@ -49,21 +49,41 @@ import com.siemens.ct.exi.core.EXIBodyDecoder;
 import com.siemens.ct.exi.core.EXIFactory;
 import com.siemens.ct.exi.core.EXIStreamDecoder;
 import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.coder.AbstractEXIBodyCoder;
 import com.siemens.ct.exi.core.container.DocType;
 import com.siemens.ct.exi.core.container.NamespaceDeclaration;
 import com.siemens.ct.exi.core.container.ProcessingInstruction;
 import com.siemens.ct.exi.core.context.QNameContext;
 import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.grammars.event.EventType;
+import com.siemens.ct.exi.core.values.AbstractBinaryValue;
+import com.siemens.ct.exi.core.values.BinaryBase64Value;
+import com.siemens.ct.exi.core.values.BinaryHexValue;
 import com.siemens.ct.exi.core.values.ListValue;
 import com.siemens.ct.exi.core.values.Value;
 import com.siemens.ct.exi.core.values.ValueType;
 import com.siemens.ct.exi.main.helpers.DefaultSchemaIdResolver;
+import com.siemens.ct.exi.main.util.ByteBufferInputStream;
 import com.siemens.ct.exi.main.util.NoEntityResolver;
 
 /**
  * Parses EXI stream to SAX events.
  * 
+ * <p>
+ * A decoder can be used for any number of streams, one after the other.
+ * Each call to <code>parse()</code> resets the internal state while buffers
+ * and the stream decoder are kept. Handlers, features and properties remain
+ * set until changed or until {@link #reset()} is called. A decoder must not
+ * be used by several threads at the same time (see
+ * <code>SAXDecoderPool</code>).
+ * </p>
+ * 
+ * <p>
+ * If only parts of a document are of interest a {@link PathProjection} can
+ * be set as property. Elements outside of the projection are decoded without
+ * reporting any events.
+ * </p>
+ * 
  * @author Daniel.Peintner.EXT@siemens.com
  * @author Richard.Kuntschke@siemens.com
  * 
@@ -79,18 +99,33 @@ public class SAXDecoder implements XMLReader {
 	protected LexicalHandler lexicalHandler;
 	protected DeclHandler declHandler;
 	protected ErrorHandler errorHandler;
+	protected TypedValueHandler typedValueHandler;
+	protected PathProjection projection;
 
-	protected static final String ATTRIBUTE_TYPE = "CDATA";
+	/**
+	 * SAX property for the maximum size (<code>Integer</code>) of the
+	 * character buffer. Larger values are reported by several
+	 * <code>characters()</code> calls.
+	 */
+	public static final String MAX_BUFFER_SIZE_PROPERTY = "http://www.siemens.com/exi/properties/max-buffer-size";
 
 	protected static final int DEFAULT_CHAR_BUFFER_SIZE = 4096;
+	protected static final int DEFAULT_MAX_CHAR_BUFFER_SIZE = 1 << 16;
 	protected char[] cbuffer;
+	protected int maxBufferSize = DEFAULT_MAX_CHAR_BUFFER_SIZE;
 
 	protected boolean namespaces = true;
 	protected boolean namespacePrefixes = false;
 	protected boolean exiBodyOnly = false;
+	protected boolean stringInterning = false;
 
-	/* Helper for building strings */
-	protected StringBuilder sbHelper;
+	/* name strings reported to the handler */
+	SAXDecoderNameCache nameCache;
+	/* whether the current stream preserves prefixes */
+	protected boolean preservePrefix;
+
+	/* attributes of the current element, re-used */
+	protected final EXIAttributes exiAttributes;
 
 	protected SAXDecoder(EXIFactory noOptionsFactory, char[] cbuffer) throws EXIException {
 		this.noOptionsFactory = noOptionsFactory;
@@ -99,6 +134,32 @@ public class SAXDecoder implements XMLReader {
 			noOptionsFactory.setSchemaIdResolver(new DefaultSchemaIdResolver());
 		}
 		this.exiStream = noOptionsFactory.createEXIStreamDecoder();
+		this.exiAttributes = new EXIAttributes();
+		this.cbuffer = cbuffer;
+		this.reset();
+	}
+
+	public SAXDecoder(EXIFactory noOptionsFactory) throws EXIException {
+		this(noOptionsFactory, new char[DEFAULT_CHAR_BUFFER_SIZE]);
+	}
+
+	/**
+	 * Resets handlers, features and properties to their initial state, e.g.
+	 * before the decoder is handed to another user.
+	 */
+	public void reset() {
+		contentHandler = null;
+		dtdHandler = null;
+		lexicalHandler = null;
+		declHandler = null;
+		errorHandler = null;
+		typedValueHandler = null;
+		projection = null;
+		setMaxBufferSize(DEFAULT_MAX_CHAR_BUFFER_SIZE);
+
+		namespaces = true;
+		exiBodyOnly = false;
+		setStringInterning(false);
 		/*
 		 * Note: it looks like widely used APIs (Xerces, Saxon, ..) provide the
 		 * textual qname even when
@@ -107,15 +168,24 @@ public class SAXDecoder implements XMLReader {
 		 * sourceforge.net/projects/exificient/forums/forum/856596/topic/5839494
 		 */
 		// switch namespace prefixes to TRUE if the stream preserves prefixes
-		if (noOptionsFactory.getFidelityOptions().isFidelityEnabled(
-				FidelityOptions.FEATURE_PREFIX)) {
-			namespacePrefixes = true;
+		namespacePrefixes = noOptionsFactory.getFidelityOptions()
+				.isFidelityEnabled(FidelityOptions.FEATURE_PREFIX);
+	}
+
+	protected void setMaxBufferSize(int maxBufferSize) {
+		this.maxBufferSize = maxBufferSize;
+		if (cbuffer.length > maxBufferSize) {
+			// release oversized buffer
+			cbuffer = new char[Math.min(DEFAULT_CHAR_BUFFER_SIZE,
+					maxBufferSize)];
 		}
-		this.cbuffer = cbuffer;
 	}
 
-	public SAXDecoder(EXIFactory noOptionsFactory) throws EXIException {
-		this(noOptionsFactory, new char[DEFAULT_CHAR_BUFFER_SIZE]);
+	protected void setStringInterning(boolean stringInterning) {
+		if (nameCache == null || nameCache.intern != stringInterning) {
+			nameCache = new SAXDecoderNameCache(stringInterning);
+		}
+		this.stringInterning = stringInterning;
 	}
 
 	/*
@@ -165,6 +235,9 @@ public class SAXDecoder implements XMLReader {
 		} else if ("http://xml.org/sax/features/namespace-prefixes"
 				.equals(name)) {
 			return namespacePrefixes;
+		} else if ("http://xml.org/sax/features/string-interning"
+				.equals(name)) {
+			return stringInterning;
 		} else {
 			return false;
 		}
@@ -178,6 +251,9 @@ public class SAXDecoder implements XMLReader {
 		} else if ("http://xml.org/sax/features/namespace-prefixes"
 				.equals(name)) {
 			namespacePrefixes = value;
+		} else if ("http://xml.org/sax/features/string-interning"
+				.equals(name)) {
+			setStringInterning(value);
 		} else if (Constants.W3C_EXI_FEATURE_BODY_ONLY.equals(name)) {
 			exiBodyOnly = value;
 		} else {
@@ -192,6 +268,27 @@ public class SAXDecoder implements XMLReader {
 		} else if ("http://xml.org/sax/properties/declaration-handler"
 				.equals(name)) {
 			this.declHandler = (DeclHandler) value;
+		} else if (TypedValueHandler.PROPERTY.equals(name)) {
+			this.typedValueHandler = (TypedValueHandler) value;
+		} else if (PathProjection.PROPERTY.equals(name)) {
+			if (value == null || value instanceof PathProjection) {
+				this.projection = (PathProjection) value;
+			} else if (value instanceof String[]) {
+				try {
+					this.projection = new PathProjection((String[]) value);
+				} catch (IllegalArgumentException e) {
+					throw new SAXNotSupportedException(e.getMessage());
+				}
+			} else {
+				throw new SAXNotSupportedException(name + ": " + value);
+			}
+		} else if (MAX_BUFFER_SIZE_PROPERTY.equals(name)) {
+			if (value instanceof Integer && ((Integer) value) >= 4) {
+				setMaxBufferSize((Integer) value);
+			} else {
+				// at least one base64 quartet
+				throw new SAXNotSupportedException(name + ": " + value);
+			}
 		} else {
 			throw new SAXNotRecognizedException(name);
 		}
@@ -204,15 +301,19 @@ public class SAXDecoder implements XMLReader {
 		} else if ("http://xml.org/sax/properties/declaration-handler"
 				.equals(name)) {
 			return this.declHandler;
+		} else if (TypedValueHandler.PROPERTY.equals(name)) {
+			return this.typedValueHandler;
+		} else if (PathProjection.PROPERTY.equals(name)) {
+			return this.projection;
+		} else if (MAX_BUFFER_SIZE_PROPERTY.equals(name)) {
+			return this.maxBufferSize;
 		} else {
 			return null;
 		}
 	}
 
 	public void parse(String systemId) throws IOException, SAXException {
-		FileInputStream fis = new FileInputStream(systemId);
-		InputSource is = new InputSource(fis);
-		this.parse(is);
+		this.parse(new InputSource(systemId));
 	}
 
 	public void parse(InputSource inputSource) throws IOException, SAXException {
@@ -223,13 +324,16 @@ public class SAXDecoder implements XMLReader {
 			throw new SAXException("No content handler set!");
 		}
 
-		try {
-			// setup input stream
-			InputStream is = inputSource.getByteStream();
+		InputStream is = inputSource.getByteStream();
+		boolean closeStream = false;
 
+		try {
 			// systemId ?
 			if (is == null && inputSource.getSystemId() != null) {
-				is = new FileInputStream(inputSource.getSystemId());
+				// large files are memory-mapped
+				is = ByteBufferInputStream.open(new File(inputSource
+						.getSystemId()));
+				closeStream = true;
 			}
 			if (is == null) {
 				throw new EXIException("No valid input source " + is);
@@ -244,6 +348,7 @@ public class SAXDecoder implements XMLReader {
 			} else {
 				// read header (default)
 				decoder = exiStream.decodeHeader(is);
+				checkStreamDecoder(decoder);
 			}
 
 			// process EXI events
@@ -251,7 +356,36 @@ public class SAXDecoder implements XMLReader {
 
 		} catch (EXIException e) {
 			throw new SAXException("EXI " + e.getLocalizedMessage(), e);
+		} finally {
+			if (closeStream) {
+				is.close();
+			}
+		}
+	}
+
+	/*
+	 * The stream decoder keeps a body decoder created for EXI options found in
+	 * a header for all following streams. Renew it in that case.
+	 */
+	protected void checkStreamDecoder(EXIBodyDecoder decoder)
+			throws EXIException {
+		if (decoder instanceof AbstractEXIBodyCoder
+				&& ((AbstractEXIBodyCoder) decoder).exiFactory != noOptionsFactory) {
+			exiStream = noOptionsFactory.createEXIStreamDecoder();
+		}
+	}
+
+	/*
+	 * Qualified names contain the decoded prefix only if prefixes are
+	 * preserved, the default prefix otherwise.
+	 */
+	protected boolean isPrefixPreserved(EXIBodyDecoder decoder) {
+		EXIFactory f = noOptionsFactory;
+		if (decoder instanceof AbstractEXIBodyCoder) {
+			f = ((AbstractEXIBodyCoder) decoder).exiFactory;
 		}
+		return f.getFidelityOptions().isFidelityEnabled(
+				FidelityOptions.FEATURE_PREFIX);
 	}
 
 	protected void parseEXIEvents(EXIBodyDecoder decoder) throws IOException, EXIException,
@@ -261,7 +395,13 @@ public class SAXDecoder implements XMLReader {
 
 		QNameContext deferredStartElement = null;
 		boolean isStartElementDeferred = false;
-		final AttributesImpl attributes = new AttributesImpl();
+		final EXIAttributes attributes = this.exiAttributes;
+		attributes.clear();
+		final PathProjection projection = this.projection;
+		if (projection != null) {
+			projection.reset();
+		}
+		preservePrefix = isPrefixPreserved(decoder);
 
 		while ((eventType = decoder.next()) != null) {
 
@@ -311,7 +451,14 @@ public class SAXDecoder implements XMLReader {
 				}
 				// defer start element and keep on processing
 				deferredStartElement = decoder.decodeStartElement();
-				isStartElementDeferred = true;
+				if (projection != null
+						&& !projection.startElement(deferredStartElement)) {
+					// not projected, no events for the entire element
+					skipElement(decoder);
+					isStartElementDeferred = false;
+				} else {
+					isStartElementDeferred = true;
+				}
 				// System.out.println("> SE: " + deferredStartElement);
 				break;
 			/* END ELEMENT */
@@ -335,20 +482,28 @@ public class SAXDecoder implements XMLReader {
 				if (namespaces) {
 					eePrefixes = decoder.getDeclaredPrefixDeclarations();
 				}
-				String eeQNameAsString = decoder.getElementQNameAsString();
+				String eePrefix = preservePrefix ? decoder.getElementPrefix()
+						: null;
 
 				QNameContext eeQName = decoder.decodeEndElement();
+				SAXDecoderNameCache.Entry ee = nameCache.get(eeQName);
+				String eeQNameAsString = preservePrefix ? nameCache
+						.getQualifiedName(ee, eePrefix) : ee.defaultQName;
 				// start sax end element
-				contentHandler.endElement(eeQName.getNamespaceUri(),
-						eeQName.getLocalName(), eeQNameAsString);
+				contentHandler.endElement(ee.uri, ee.localName,
+						eeQNameAsString);
 
 				// endPrefixMapping
 				if (namespaces && eePrefixes != null) {
 					for (int i = 0; i < eePrefixes.size(); i++) {
 						NamespaceDeclaration ns = eePrefixes.get(i);
-						contentHandler.endPrefixMapping(ns.prefix);
+						contentHandler.endPrefixMapping(nameCache
+								.getString(ns.prefix));
 					}
 				}
+				if (projection != null) {
+					projection.endElement();
+				}
 				break;
 			/* CHARACTERS */
 			case CHARACTERS:
@@ -360,64 +515,41 @@ public class SAXDecoder implements XMLReader {
 					isStartElementDeferred = false;
 				}
 
+				if (projection != null && !projection.isContentSelected()) {
+					decoder.decodeCharacters();
+					break;
+				}
+
 				Value val = decoder.decodeCharacters();
 				char[] chars;
 
+				if (typedValueHandler != null
+						&& val.getValueType() != ValueType.STRING) {
+					// native value, no conversion to characters
+					typedValueHandler.typedValue(val);
+					break;
+				}
+
 				switch (val.getValueType()) {
 				case BOOLEAN:
 				case STRING:
 					chars = val.getCharacters();
-					contentHandler.characters(chars, 0, chars.length);
+					handleCharacters(chars, 0, chars.length);
 					break;
 				case LIST:
-					ListValue lv = (ListValue) val;
-					Value[] values = lv.toValues();
-
-					if (values.length > 0) {
-						ValueType vt = values[0].getValueType();
-						int len;
-
-						for (int i = 0; i < values.length; i++) {
-							Value val2 = values[i];
-							switch (vt) {
-							case BOOLEAN:
-							case STRING:
-								chars = val2.getCharacters();
-								contentHandler.characters(chars, 0,
-										chars.length);
-								contentHandler
-										.characters(
-												Constants.XSD_LIST_DELIM_CHAR_ARRAY,
-												0,
-												Constants.XSD_LIST_DELIM_CHAR_ARRAY.length);
-								break;
-							default:
-								int offset = 0;
-								len = val2.getCharactersLength();
-
-								if (cbuffer.length < (offset + len + 1)) {
-									contentHandler.characters(cbuffer, 0,
-											offset);
-									offset = 0;
-								}
-								val2.getCharacters(cbuffer, offset);
-								offset += len;
-								cbuffer[offset++] = ' ';
-								// pending chars
-								contentHandler.characters(cbuffer, 0, offset);
-								break;
-							}
-
-						}
-					}
+					handleListValue((ListValue) val);
 					break;
 				default:
 					int slen = val.getCharactersLength();
-					ensureBufferCapacity(slen);
+					if (slen > maxBufferSize) {
+						handleLargeValue(val, slen);
+					} else {
+						ensureBufferCapacity(slen);
 
-					// fills char array with value
-					val.getCharacters(cbuffer, 0);
-					contentHandler.characters(cbuffer, 0, slen);
+						// fills char array with value
+						val.getCharacters(cbuffer, 0);
+						contentHandler.characters(cbuffer, 0, slen);
+					}
 					break;
 				}
 				break;
@@ -438,6 +570,10 @@ public class SAXDecoder implements XMLReader {
 					isStartElementDeferred = false;
 				}
 
+				if (projection != null && !projection.isContentSelected()) {
+					decoder.decodeEntityReference();
+					break;
+				}
 				handleEntityReference(decoder.decodeEntityReference());
 				break;
 			case COMMENT:
@@ -447,6 +583,10 @@ public class SAXDecoder implements XMLReader {
 					isStartElementDeferred = false;
 				}
 
+				if (projection != null && !projection.isContentSelected()) {
+					decoder.decodeComment();
+					break;
+				}
 				handleComment(decoder.decodeComment());
 				break;
 			case PROCESSING_INSTRUCTION:
@@ -456,6 +596,10 @@ public class SAXDecoder implements XMLReader {
 					isStartElementDeferred = false;
 				}
 
+				if (projection != null && !projection.isContentSelected()) {
+					decoder.decodeProcessingInstruction();
+					break;
+				}
 				ProcessingInstruction pi = decoder
 						.decodeProcessingInstruction();
 				contentHandler.processingInstruction(pi.target, pi.data);
@@ -467,11 +611,75 @@ public class SAXDecoder implements XMLReader {
 		}
 	}
 
+	/*
+	 * Decodes the remaining events of the current element without reporting
+	 * them, values are not converted to characters.
+	 */
+	protected void skipElement(EXIBodyDecoder decoder) throws IOException,
+			EXIException {
+		int level = 1;
+		EventType eventType;
+
+		while (level > 0 && (eventType = decoder.next()) != null) {
+			switch (eventType) {
+			case ATTRIBUTE_XSI_NIL:
+				decoder.decodeAttributeXsiNil();
+				break;
+			case ATTRIBUTE_XSI_TYPE:
+				decoder.decodeAttributeXsiType();
+				break;
+			case ATTRIBUTE:
+			case ATTRIBUTE_NS:
+			case ATTRIBUTE_GENERIC:
+			case ATTRIBUTE_GENERIC_UNDECLARED:
+			case ATTRIBUTE_INVALID_VALUE:
+			case ATTRIBUTE_ANY_INVALID_VALUE:
+				decoder.decodeAttribute();
+				break;
+			case NAMESPACE_DECLARATION:
+				decoder.decodeNamespaceDeclaration();
+				break;
+			case SELF_CONTAINED:
+				decoder.decodeStartSelfContainedFragment();
+				break;
+			case START_ELEMENT:
+			case START_ELEMENT_NS:
+			case START_ELEMENT_GENERIC:
+			case START_ELEMENT_GENERIC_UNDECLARED:
+				decoder.decodeStartElement();
+				level++;
+				break;
+			case END_ELEMENT:
+			case END_ELEMENT_UNDECLARED:
+				decoder.decodeEndElement();
+				level--;
+				break;
+			case CHARACTERS:
+			case CHARACTERS_GENERIC:
+			case CHARACTERS_GENERIC_UNDECLARED:
+				decoder.decodeCharacters();
+				break;
+			case ENTITY_REFERENCE:
+				decoder.decodeEntityReference();
+				break;
+			case COMMENT:
+				decoder.decodeComment();
+				break;
+			case PROCESSING_INSTRUCTION:
+				decoder.decodeProcessingInstruction();
+				break;
+			default:
+				throw new RuntimeException("Unexpected EXI Event '" + eventType
+						+ "' ");
+			}
+		}
+	}
+
 	/*
 	 * SAX Content Handler
 	 */
 	protected void handleDeferredStartElement(EXIBodyDecoder decoder,
-			QNameContext deferredStartElement, final AttributesImpl attributes)
+			QNameContext deferredStartElement, final EXIAttributes attributes)
 			throws SAXException, IOException, EXIException {
 
 		if (namespaces) {
@@ -480,8 +688,9 @@ public class SAXDecoder implements XMLReader {
 			if (prefixes != null) {
 				for (int i = 0; i < prefixes.size(); i++) {
 					NamespaceDeclaration ns = prefixes.get(i);
-					contentHandler.startPrefixMapping(ns.prefix,
-							ns.namespaceURI);
+					contentHandler.startPrefixMapping(
+							nameCache.getString(ns.prefix),
+							nameCache.getString(ns.namespaceURI));
 				}
 			}
 		}
@@ -502,11 +711,12 @@ public class SAXDecoder implements XMLReader {
 		 * http:// sourceforge.net/projects/exificient/forums/forum/856596/topic
 		 * /5839494
 		 */
-		String seQNameAsString = decoder.getElementQNameAsString();
+		SAXDecoderNameCache.Entry se = nameCache.get(deferredStartElement);
+		String seQNameAsString = preservePrefix ? nameCache.getQualifiedName(
+				se, decoder.getElementPrefix()) : se.defaultQName;
 
 		// start so far deferred start element
-		contentHandler.startElement(deferredStartElement.getNamespaceUri(),
-				deferredStartElement.getLocalName(), seQNameAsString,
+		contentHandler.startElement(se.uri, se.localName, seQNameAsString,
 				attributes);
 
 		// clear AT information
@@ -521,69 +731,122 @@ public class SAXDecoder implements XMLReader {
 				newSize = newSize << 2;
 			} while (newSize < reqSize);
 
-			cbuffer = new char[newSize];
+			// do not grow beyond the maximum size if not required
+			cbuffer = new char[Math.max(reqSize,
+					Math.min(newSize, maxBufferSize))];
 		}
 	}
 
-	protected void handleAttribute(EXIBodyDecoder decoder, final QNameContext atQName,
-			final AttributesImpl attributes) throws SAXException, IOException,
-			EXIException {
-		Value val = decoder.getAttributeValue();
-		String sVal;
-
-		// System.out.println("> AT: " + atQName + ": " + val);
-
-		switch (val.getValueType()) {
-		case BOOLEAN:
-		case STRING:
-			sVal = val.toString();
-			break;
-		case LIST:
-			ListValue lv = (ListValue) val;
+	/*
+	 * Grows the buffer keeping the first length characters
+	 */
+	protected void growBuffer(int reqSize, int length) {
+		char[] old = cbuffer;
+		ensureBufferCapacity(reqSize);
+		if (old != cbuffer) {
+			System.arraycopy(old, 0, cbuffer, 0, length);
+		}
+	}
 
-			if (lv.getNumberOfValues() > 0) {
-				if (sbHelper == null) {
-					sbHelper = new StringBuilder();
+	/*
+	 * Writes list items followed by a delimiter to the character buffer and
+	 * reports them at once or, for long lists, in chunks of at most
+	 * maxBufferSize
+	 */
+	protected void handleListValue(ListValue lv) throws SAXException {
+		Value[] values = lv.toValues();
+		int offset = 0;
+
+		for (int i = 0; i < values.length; i++) {
+			Value item = values[i];
+			int len = item.getCharactersLength();
+			int reqSize = offset + len + 1;
+
+			if (reqSize > cbuffer.length) {
+				if (reqSize <= maxBufferSize) {
+					growBuffer(reqSize, offset);
 				} else {
-					sbHelper.setLength(0);
-				}
-
-				Value[] values = lv.toValues();
-				ValueType vt = values[0].getValueType();
-				for (int i = 0; i < values.length; i++) {
-					Value val2 = values[i];
-					switch (vt) {
-					case BOOLEAN:
-					case STRING:
-						sbHelper.append(val2.getCharacters());
-						sbHelper.append(' ');
-						break;
-					default:
-						int slen = val2.getCharactersLength();
-						ensureBufferCapacity(slen);
-						val2.getCharacters(cbuffer, 0);
-						sbHelper.append(cbuffer, 0, slen);
-						sbHelper.append(' ');
-						break;
+					// pending chars
+					if (offset > 0) {
+						contentHandler.characters(cbuffer, 0, offset);
+						offset = 0;
+					}
+					if (len + 1 > maxBufferSize) {
+						handleLargeValue(item, len);
+						cbuffer[offset++] = ' ';
+						continue;
 					}
+					ensureBufferCapacity(len + 1);
 				}
-				sVal = sbHelper.toString();
-			} else {
-				sVal = Constants.EMPTY_STRING;
+			}
+
+			item.getCharacters(cbuffer, offset);
+			offset += len;
+			cbuffer[offset++] = ' ';
+		}
+
+		if (offset > 0) {
+			contentHandler.characters(cbuffer, 0, offset);
+		}
+	}
+
+	/*
+	 * Reports characters in chunks of at most maxBufferSize, surrogate pairs
+	 * are not split
+	 */
+	protected void handleCharacters(char[] ch, int start, int length)
+			throws SAXException {
+		while (length > maxBufferSize) {
+			int chunk = maxBufferSize;
+			if (Character.isHighSurrogate(ch[start + chunk - 1])) {
+				chunk--;
+			}
+			contentHandler.characters(ch, start, chunk);
+			start += chunk;
+			length -= chunk;
+		}
+		contentHandler.characters(ch, start, length);
+	}
+
+	/*
+	 * Reports a value that does not fit into the character buffer. Binary
+	 * data is converted in chunks, other values via a temporary buffer and
+	 * handleCharacters.
+	 */
+	protected void handleLargeValue(Value val, int slen) throws SAXException {
+		switch (val.getValueType()) {
+		case BINARY_BASE64:
+		case BINARY_HEX:
+			boolean base64 = val.getValueType() == ValueType.BINARY_BASE64;
+			byte[] bytes = ((AbstractBinaryValue) val).toBytes();
+			// complete base64 quartets resp. hex pairs per chunk
+			int chunkSize = base64 ? (maxBufferSize / 4) * 3
+					: maxBufferSize / 2;
+			ensureBufferCapacity(maxBufferSize);
+
+			for (int off = 0; off < bytes.length; off += chunkSize) {
+				byte[] chunk = Arrays.copyOfRange(bytes, off,
+						Math.min(bytes.length, off + chunkSize));
+				Value chunkValue = base64 ? new BinaryBase64Value(chunk)
+						: new BinaryHexValue(chunk);
+				int clen = chunkValue.getCharactersLength();
+				chunkValue.getCharacters(cbuffer, 0);
+				contentHandler.characters(cbuffer, 0, clen);
 			}
 			break;
 		default:
-			int slen = val.getCharactersLength();
-			ensureBufferCapacity(slen);
-			sVal = val.toString(cbuffer, 0);
+			char[] tmp = new char[slen];
+			val.getCharacters(tmp, 0);
+			handleCharacters(tmp, 0, slen);
 			break;
 		}
+	}
+
+	protected void handleAttribute(EXIBodyDecoder decoder, final QNameContext atQName,
+			final EXIAttributes attributes) throws SAXException, IOException,
+			EXIException {
+		// System.out.println("> AT: " + atQName + ": " + val);
 
-		// // empty string if no qualified name is necessary
-		// String atQNameAsString = Constants.EMPTY_STRING;
-		// if (namespacePrefixes) {
-		// atQNameAsString = decoder.getAttributeQNameAsString();
-		// }
 		/*
 		 * Note: it looks like widely used APIs (Xerces, Saxon, ..) provide the
 		 * textual qname even when
@@ -591,10 +854,13 @@ public class SAXDecoder implements XMLReader {
 		 * http://
 		 * sourceforge.net/projects/exificient/forums/forum/856596/topic/5839494
 		 */
-		String atQNameAsString = decoder.getAttributeQNameAsString();
+		SAXDecoderNameCache.Entry at = nameCache.get(atQName);
+		String atQNameAsString = preservePrefix ? nameCache.getQualifiedName(
+				at, decoder.getAttributePrefix()) : at.defaultQName;
 
-		attributes.addAttribute(atQName.getNamespaceUri(),
-				atQName.getLocalName(), atQNameAsString, ATTRIBUTE_TYPE, sVal);
+		// string value is created on demand
+		attributes.addAttribute(atQName, at.uri, at.localName,
+				atQNameAsString, decoder.getAttributeValue());
 	}
 
 	protected void handleDocType(DocType docType) throws SAXException,
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.siemens.ct.exi.core.context.QNameContext;
+
+/**
+ * Caches the name strings reported by the SAX decoder.
+ * 
+ * <p>
+ * Keeps per <code>QNameContext</code> the namespace URI, the local-name and
+ * the qualified names for the prefixes seen so far so that qualified names
+ * are not concatenated for each start and end element. If names are
+ * interned (see SAX feature
+ * <code>http://xml.org/sax/features/string-interning</code>)
+ * <code>String.intern()</code> is called only once per name, the same holds
+ * for namespace prefixes and URIs of prefix mappings.
+ * </p>
+ * 
+ * <p>
+ * The cache is kept across documents and is cleared once it holds more than
+ * <code>maxEntries</code> entries.
+ * </p>
+ */
+
+final class SAXDecoderNameCache {
+
+	static final int DEFAULT_MAX_ENTRIES = 4096;
+
+	static final class Entry {
+		final QNameContext qnc;
+		final String uri;
+		final String localName;
+		final String defaultQName;
+		/* qualified names per prefix */
+		String[] prefixes;
+		String[] qnames;
+		int size;
+		Entry next;
+
+		Entry(QNameContext qnc, String uri, String localName,
+				String defaultQName, Entry next) {
+			this.qnc = qnc;
+			this.uri = uri;
+			this.localName = localName;
+			this.defaultQName = defaultQName;
+			this.next = next;
+		}
+	}
+
+	final boolean intern;
+	final int maxEntries;
+
+	Entry[] entries;
+	int entriesSize;
+
+	/* interned prefixes and namespace URIs */
+	final Map<String, String> strings;
+
+	SAXDecoderNameCache(boolean intern) {
+		this(intern, DEFAULT_MAX_ENTRIES);
+	}
+
+	SAXDecoderNameCache(boolean intern, int maxEntries) {
+		this.intern = intern;
+		this.maxEntries = maxEntries;
+		entries = new Entry[64];
+		strings = new HashMap<String, String>();
+	}
+
+	static int hash(QNameContext qnc) {
+		int h = System.identityHashCode(qnc);
+		// spread bits
+		return h ^ (h >>> 16);
+	}
+
+	Entry get(QNameContext qnc) {
+		Entry[] tab = entries;
+		int h = hash(qnc);
+		for (Entry e = tab[h & (tab.length - 1)]; e != null; e = e.next) {
+			if (e.qnc == qnc) {
+				return e;
+			}
+		}
+
+		String uri = qnc.getNamespaceUri();
+		String localName = qnc.getLocalName();
+		String defaultQName = qnc.getDefaultQNameAsString();
+		if (intern) {
+			uri = uri.intern();
+			localName = localName.intern();
+			defaultQName = defaultQName.intern();
+		}
+
+		if (entriesSize >= maxEntries) {
+			entries = tab = new Entry[64];
+			entriesSize = 0;
+		} else if (entriesSize >= (tab.length >> 1) + (tab.length >> 2)) {
+			entries = tab = resize(tab);
+		}
+		int idx = h & (tab.length - 1);
+		Entry e = new Entry(qnc, uri, localName, defaultQName, tab[idx]);
+		tab[idx] = e;
+		entriesSize++;
+		return e;
+	}
+
+	/**
+	 * Returns the interned string if interning is enabled, the string itself
+	 * otherwise.
+	 */
+	String getString(String s) {
+		if (!intern) {
+			return s;
+		}
+		String is = strings.get(s);
+		if (is == null) {
+			if (strings.size() >= maxEntries) {
+				strings.clear();
+			}
+			is = s.intern();
+			strings.put(is, is);
+		}
+		return is;
+	}
+
+	/**
+	 * Returns the qualified name for the given prefix.
+	 */
+	String getQualifiedName(Entry e, String prefix) {
+		if (prefix == null || prefix.length() == 0) {
+			return e.localName;
+		}
+		for (int i = 0; i < e.size; i++) {
+			if (e.prefixes[i] == prefix) {
+				return e.qnames[i];
+			}
+		}
+		if (prefix.equals(e.qnc.getDefaultPrefix())) {
+			return e.defaultQName;
+		}
+		for (int i = 0; i < e.size; i++) {
+			if (e.prefixes[i].equals(prefix)) {
+				return e.qnames[i];
+			}
+		}
+
+		String qname = prefix + ":" + e.localName;
+		if (intern) {
+			qname = qname.intern();
+		}
+		if (e.prefixes == null) {
+			e.prefixes = new String[2];
+			e.qnames = new String[2];
+		} else if (e.size == e.prefixes.length) {
+			String[] newPrefixes = new String[e.size << 1];
+			System.arraycopy(e.prefixes, 0, newPrefixes, 0, e.size);
+			e.prefixes = newPrefixes;
+			String[] newQNames = new String[e.size << 1];
+			System.arraycopy(e.qnames, 0, newQNames, 0, e.size);
+			e.qnames = newQNames;
+		}
+		e.prefixes[e.size] = prefix;
+		e.qnames[e.size] = qname;
+		e.size++;
+		return qname;
+	}
+
+	static Entry[] resize(Entry[] tab) {
+		Entry[] newTab = new Entry[tab.length << 1];
+		int mask = newTab.length - 1;
+		for (int i = 0; i < tab.length; i++) {
+			Entry e = tab[i];
+			while (e != null) {
+				Entry next = e.next;
+				int idx = hash(e.qnc) & mask;
+				e.next = newTab[idx];
+				newTab[idx] = e;
+				e = next;
+			}
+		}
+		return newTab;
+	}
+
+}
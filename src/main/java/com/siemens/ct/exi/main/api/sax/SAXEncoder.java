@@ -24,15 +24,17 @@
 package com.siemens.ct.exi.main.api.sax;
 
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.channels.WritableByteChannel;
+import java.util.Calendar;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.ext.DefaultHandler2;
 
+import com.siemens.ct.exi.core.CodingMode;
 import com.siemens.ct.exi.core.Constants;
 import com.siemens.ct.exi.core.EXIBodyEncoder;
 import com.siemens.ct.exi.core.EXIFactory;
@@ -40,7 +42,18 @@ import com.siemens.ct.exi.core.EXIStreamEncoder;
 import com.siemens.ct.exi.core.attributes.AttributeFactory;
 import com.siemens.ct.exi.core.attributes.AttributeList;
 import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.types.DateTimeType;
+import com.siemens.ct.exi.core.values.BinaryBase64Value;
+import com.siemens.ct.exi.core.values.BooleanValue;
+import com.siemens.ct.exi.core.values.DecimalValue;
+import com.siemens.ct.exi.core.values.FloatValue;
+import com.siemens.ct.exi.core.values.IntegerValue;
 import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.core.values.Value;
+import com.siemens.ct.exi.main.util.ChannelOutputStream;
+import com.siemens.ct.exi.main.util.CharArrayValue;
+import com.siemens.ct.exi.main.util.TypedValues;
+import com.siemens.ct.exi.main.util.WhiteSpaceFilter;
 
 /**
  * Serializes SAX events to EXI stream.
@@ -50,7 +63,8 @@ import com.siemens.ct.exi.core.values.StringValue;
  * 
  */
 
-public class SAXEncoder extends DefaultHandler2 {
+public class SAXEncoder extends DefaultHandler2 implements
+		TypedContentHandler {
 	protected EXIFactory factory;
 
 	protected EXIStreamEncoder exiStream;
@@ -59,6 +73,37 @@ public class SAXEncoder extends DefaultHandler2 {
 	// attributes
 	protected AttributeList exiAttributes;
 
+	// pending characters
+	protected static final int DEFAULT_CHAR_BUFFER_SIZE = 4096;
+	public static final int DEFAULT_MAX_PENDING_CHARACTERS = 1 << 20;
+	protected char[] pendingChars;
+	protected int pendingCharsLength;
+	protected int maxPendingChars = DEFAULT_MAX_PENDING_CHARACTERS;
+
+	/*
+	 * Value handed to the body encoder for pending characters, no String
+	 * is created here (the encoder still creates one for the string table).
+	 * The encoder keeps a reference until the next structural event only if
+	 * values are written in-order, otherwise (re-channeling) a copy is
+	 * required.
+	 */
+	protected final CharArrayValue pendingCharsValue;
+	protected final boolean reusePendingCharsValue;
+
+	// insignificant whitespace
+	protected final WhiteSpaceFilter whiteSpaceFilter;
+
+	/* sink the body encoder is pointed to while no document is encoded */
+	private static final OutputStream NO_OUTPUT = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
 	public SAXEncoder(EXIFactory factory) throws EXIException {
 		this.factory = factory;
 
@@ -68,14 +113,79 @@ public class SAXEncoder extends DefaultHandler2 {
 		// attribute list
 		AttributeFactory attFactory = AttributeFactory.newInstance();
 		exiAttributes = attFactory.createAttributeListInstance(factory);
+
+		// character buffer
+		pendingChars = new char[DEFAULT_CHAR_BUFFER_SIZE];
+		pendingCharsValue = new CharArrayValue();
+		CodingMode codingMode = factory.getCodingMode();
+		reusePendingCharsValue = (codingMode == CodingMode.BIT_PACKED ||
+				codingMode == CodingMode.BYTE_PACKED);
+		whiteSpaceFilter = new WhiteSpaceFilter(factory);
 	}
 
+	/**
+	 * Sets the maximum number of characters that are collected before being
+	 * handed to the body encoder. Text nodes exceeding this limit are passed
+	 * on in chunks of immutable copies and still result in a single CH
+	 * event.
+	 * 
+	 * @param maxPendingChars
+	 *            maximum size of the character buffer (greater than zero)
+	 */
+	public void setMaxPendingCharacters(int maxPendingChars) {
+		if (maxPendingChars <= 0) {
+			throw new IllegalArgumentException(
+					"Maximum number of pending characters must be positive: "
+							+ maxPendingChars);
+		}
+		this.maxPendingChars = maxPendingChars;
+		if (pendingChars.length > maxPendingChars
+				&& pendingCharsLength <= maxPendingChars) {
+			char[] newChars = new char[maxPendingChars];
+			System.arraycopy(pendingChars, 0, newChars, 0, pendingCharsLength);
+			pendingChars = newChars;
+		}
+	}
+
+	public int getMaxPendingCharacters() {
+		return maxPendingChars;
+	}
+
+	/**
+	 * Sets the output stream, buffered by a <code>BufferedOutputStream</code>.
+	 * 
+	 * @param os
+	 *            output stream
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @see #setOutputStream(OutputStream, boolean)
+	 */
 	public void setOutputStream(OutputStream os) throws EXIException,
 			IOException {
-		// buffer stream if not already
-		// TODO is there a *nice* way to detect whether a stream is buffered
-		if (!(os instanceof BufferedOutputStream
-				|| os instanceof ByteArrayOutputStream || os instanceof DataOutputStream)) {
+		setOutputStream(os, false);
+	}
+
+	/**
+	 * Sets the output stream. The encoder writes in small pieces, a stream
+	 * that is neither buffered nor in-memory (e.g. a
+	 * <code>FileOutputStream</code>) has to be passed with
+	 * <code>buffered</code> set to false.
+	 * 
+	 * @param os
+	 *            output stream
+	 * @param buffered
+	 *            whether the stream is buffered already, otherwise a
+	 *            <code>BufferedOutputStream</code> is put in between
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void setOutputStream(OutputStream os, boolean buffered)
+			throws EXIException, IOException {
+		if (!buffered) {
 			os = new BufferedOutputStream(os);
 		}
 
@@ -83,6 +193,83 @@ public class SAXEncoder extends DefaultHandler2 {
 		this.encoder = exiStream.encodeHeader(os);
 	}
 
+	/**
+	 * Sets a NIO channel as output, buffered by a
+	 * {@link ChannelOutputStream} of default size.
+	 * 
+	 * @param channel
+	 *            output channel
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void setOutputChannel(WritableByteChannel channel)
+			throws EXIException, IOException {
+		setOutputStream(new ChannelOutputStream(channel), true);
+	}
+
+	/**
+	 * Prepares this encoder for encoding a new document to the given output
+	 * stream. Any state left from a previous (possibly aborted) document is
+	 * discarded while grammars, attribute lists and buffers are kept for
+	 * re-use.
+	 * 
+	 * @param os
+	 *            output stream for the next EXI document
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @see #reset(OutputStream, boolean)
+	 */
+	public void reset(OutputStream os) throws EXIException, IOException {
+		reset(os, false);
+	}
+
+	/**
+	 * Prepares this encoder for encoding a new document to the given output
+	 * stream, see {@link #reset(OutputStream)}.
+	 * 
+	 * @param os
+	 *            output stream for the next EXI document
+	 * @param buffered
+	 *            whether the stream is buffered already
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @see #setOutputStream(OutputStream, boolean)
+	 */
+	public void reset(OutputStream os, boolean buffered) throws EXIException,
+			IOException {
+		pendingCharsLength = 0;
+		exiAttributes.clear();
+		whiteSpaceFilter.startDocument();
+		setOutputStream(os, buffered);
+	}
+
+	/**
+	 * Discards any state left from the current document and releases the
+	 * output stream, e.g. before the encoder is handed to another user.
+	 * {@link #reset(OutputStream)} has to be called before encoding the next
+	 * document.
+	 */
+	public void reset() {
+		pendingCharsLength = 0;
+		exiAttributes.clear();
+		whiteSpaceFilter.startDocument();
+		if (encoder != null) {
+			try {
+				// body encoder is kept by the stream encoder, drop its channel
+				encoder.setOutputStream(NO_OUTPUT);
+			} catch (Exception e) {
+				// setting up channels for a discarding stream does not fail
+			}
+			encoder = null;
+		}
+	}
+
 	/*
 	 * ======================================================================
 	 * Interface ContentHandler
@@ -112,15 +299,21 @@ public class SAXEncoder extends DefaultHandler2 {
 
 	protected void startElementPfx(String uri, String local, String prefix,
 			Attributes attributes) throws EXIException, IOException {
+		checkPendingChars();
+
 		// start element
 		encoder.encodeStartElement(uri, local, prefix);
+		whiteSpaceFilter.startElement();
 
 		// add remaining attributes (if any)
 		if (attributes != null) {
 			for (int i = 0; i < attributes.getLength(); i++) {
-				exiAttributes.addAttribute(attributes.getURI(i),
-						attributes.getLocalName(i), getPrefixOf(attributes, i),
-						attributes.getValue(i));
+				String atLocal = attributes.getLocalName(i);
+				String atUri = attributes.getURI(i);
+				String atValue = attributes.getValue(i);
+				exiAttributes.addAttribute(atUri, atLocal,
+						getPrefixOf(attributes, i), atValue);
+				whiteSpaceFilter.attribute(atUri, atValue);
 			}
 		}
 
@@ -140,6 +333,8 @@ public class SAXEncoder extends DefaultHandler2 {
 
 	public void startDocument() throws SAXException {
 		try {
+			pendingCharsLength = 0;
+			whiteSpaceFilter.startDocument();
 			encoder.encodeStartDocument();
 		} catch (Exception e) {
 			throw new SAXException("startDocument", e);
@@ -148,6 +343,7 @@ public class SAXEncoder extends DefaultHandler2 {
 
 	public void endDocument() throws SAXException {
 		try {
+			checkPendingChars();
 			encoder.encodeEndDocument();
 			encoder.flush();
 		} catch (Exception e) {
@@ -158,7 +354,9 @@ public class SAXEncoder extends DefaultHandler2 {
 	public void endElement(String uri, String local, String raw)
 			throws SAXException {
 		try {
+			checkPendingChars();
 			encoder.encodeEndElement();
+			whiteSpaceFilter.endElement();
 		} catch (Exception e) {
 			throw new SAXException("endElement=" + raw, e);
 		}
@@ -167,13 +365,118 @@ public class SAXEncoder extends DefaultHandler2 {
 	@Override
 	public void characters(char[] ch, int start, int length)
 			throws SAXException {
+		// collect characters, encoded with next structural event
+		if (pendingCharsLength + length > maxPendingChars) {
+			try {
+				// spill what we have, the body encoder coalesces chunks
+				spillPendingChars();
+				if (length > maxPendingChars) {
+					whiteSpaceFilter.passOn(encoder);
+					encoder.encodeCharacters(new StringValue(new String(ch,
+							start, length)));
+					return;
+				}
+			} catch (Exception e) {
+				throw new SAXException("characters", e);
+			}
+		}
+		ensurePendingCharsCapacity(pendingCharsLength + length);
+		System.arraycopy(ch, start, pendingChars, pendingCharsLength, length);
+		pendingCharsLength += length;
+	}
+
+	/*
+	 * ======================================================================
+	 * Interface TypedContentHandler
+	 * ======================================================================
+	 */
+
+	public void typedValue(Value value) throws SAXException {
 		try {
-			encoder.encodeCharacters(new StringValue(new String(ch, start,
-					length)));
+			// pending characters and value form a single run
+			spillPendingChars();
+			whiteSpaceFilter.passOn(encoder);
+			encoder.encodeCharacters(value);
 		} catch (Exception e) {
-			throw new SAXException("characters="
-					+ new String(ch, start, length), e);
+			throw new SAXException("typedValue=" + value, e);
+		}
+	}
+
+	public void typedValue(boolean b) throws SAXException {
+		typedValue(BooleanValue.getBooleanValue(b));
+	}
+
+	public void typedValue(long l) throws SAXException {
+		typedValue(IntegerValue.valueOf(l));
+	}
+
+	public void typedValue(double d) throws SAXException {
+		typedValue(FloatValue.parse(d));
+	}
+
+	public void typedValue(BigDecimal decimal) throws SAXException {
+		typedValue(DecimalValue.parse(decimal));
+	}
+
+	public void typedValue(byte[] b, int off, int len) throws SAXException {
+		byte[] bytes = new byte[len];
+		System.arraycopy(b, off, bytes, 0, len);
+		typedValue(new BinaryBase64Value(bytes));
+	}
+
+	public void typedDateTime(Calendar cal, DateTimeType type)
+			throws SAXException {
+		typedValue(TypedValues.dateTime(cal, type));
+	}
+
+	protected void ensurePendingCharsCapacity(int reqSize) {
+		if (reqSize > pendingChars.length) {
+			int newSize = pendingChars.length;
+
+			do {
+				newSize = newSize << 1;
+			} while (newSize < reqSize && newSize > 0);
+
+			// do not exceed limit (and overflow)
+			if (newSize > maxPendingChars || newSize <= 0) {
+				newSize = maxPendingChars;
+			}
+
+			char[] newChars = new char[newSize];
+			System.arraycopy(pendingChars, 0, newChars, 0, pendingCharsLength);
+			pendingChars = newChars;
+		}
+	}
+
+	protected void spillPendingChars() throws EXIException, IOException {
+		if (pendingCharsLength > 0) {
+			whiteSpaceFilter.passOn(encoder);
+			encoder.encodeCharacters(new StringValue(new String(pendingChars,
+					0, pendingCharsLength)));
+			pendingCharsLength = 0;
+		}
+	}
+
+	protected void checkPendingChars() throws EXIException, IOException {
+		if (pendingCharsLength > 0
+				&& whiteSpaceFilter.isIgnorable(pendingChars, 0,
+						pendingCharsLength)) {
+			// insignificant whitespace, would be removed by the encoder
+			pendingCharsLength = 0;
+		} else if (pendingCharsLength > 0) {
+			Value chars;
+			if (reusePendingCharsValue) {
+				pendingCharsValue.setCharacters(pendingChars, 0,
+						pendingCharsLength);
+				chars = pendingCharsValue;
+			} else {
+				chars = new StringValue(new String(pendingChars, 0,
+						pendingCharsLength));
+			}
+			pendingCharsLength = 0;
+			encoder.encodeCharacters(chars);
 		}
+		whiteSpaceFilter.endOfText();
 	}
 
 }
@@ -23,6 +23,9 @@
 
 package com.siemens.ct.exi.main.api.sax;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
@@ -73,6 +76,18 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 				EncodingOptions.RETAIN_ENTITY_REFERENCE);
 	}
 
+	@Override
+	public void reset(OutputStream os, boolean buffered) throws EXIException,
+			IOException {
+		entityReferenceRange = false;
+		dtdRange = false;
+		docTypeName = null;
+		docTypePublicID = null;
+		docTypeSystemID = null;
+		docTypeText = null;
+		super.reset(os, buffered);
+	}
+
 	@Override
 	public void startDocument() throws SAXException {
 		// init
@@ -127,6 +142,7 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 		} else {
 			if (preserveComment) {
 				try {
+					checkPendingChars();
 					encoder.encodeComment(ch, start, length);
 				} catch (Exception e) {
 					throw new SAXException("comment", e);
@@ -144,6 +160,7 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 					this.docTypeText += "<?" + target + " " + data + "?>";
 				}
 			} else {
+				checkPendingChars();
 				encoder.encodeProcessingInstruction(target, data);
 			}
 		} catch (Exception e) {
@@ -182,6 +199,7 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 	public void endDTD() throws SAXException {
 		try {
 			if (preserveDTD) {
+				checkPendingChars();
 				encoder.encodeDocType(docTypeName, docTypePublicID,
 						docTypeSystemID, docTypeText);
 				// System.out.println("DAPE encode DTD text = " + docTypeText);
@@ -219,6 +237,7 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 					if (name.startsWith("%") || name.equals("[dtd]")) {
 						// do nothing
 					} else {
+						checkPendingChars();
 						encoder.encodeEntityReference(name);
 					}
 				}
@@ -233,6 +252,7 @@ public class SAXEncoderExtendedHandler extends SAXEncoder {
 	public void skippedEntity(String name) throws SAXException {
 		try {
 			if (preserveDTD) {
+				checkPendingChars();
 				encoder.encodeEntityReference(name);
 			}
 		} catch (Exception e) {
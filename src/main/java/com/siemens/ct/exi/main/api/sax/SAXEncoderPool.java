@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.main.util.EXIFactoryPool;
+
+/**
+ * Pool of re-usable SAX encoders. Returned encoders release their output
+ * stream, a new one has to be set after each borrow.
+ * 
+ * <pre>
+ * SAXEncoder encoder = pool.borrow(exiFactory, os);
+ * try {
+ * 	xmlReader.setContentHandler(encoder);
+ * 	xmlReader.parse(input);
+ * } finally {
+ * 	pool.release(encoder);
+ * }
+ * </pre>
+ */
+
+public class SAXEncoderPool extends EXIFactoryPool<SAXEncoder> {
+
+	public SAXEncoderPool() {
+		super();
+	}
+
+	public SAXEncoderPool(int maxIdle) {
+		super(maxIdle);
+	}
+
+	@Override
+	protected SAXEncoder create(EXIFactory factory) throws EXIException {
+		return new SAXFactory(factory).createEXIWriter();
+	}
+
+	@Override
+	protected void passivate(SAXEncoder encoder) {
+		encoder.reset();
+	}
+
+	/**
+	 * Borrows an encoder and resets it to the given output stream.
+	 * 
+	 * @param factory
+	 *            EXI factory
+	 * @param os
+	 *            output stream for the EXI document
+	 * @return encoder ready for a new document
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public SAXEncoder borrow(EXIFactory factory, OutputStream os)
+			throws EXIException, IOException {
+		SAXEncoder encoder = borrow(factory);
+		try {
+			encoder.reset(os);
+		} catch (EXIException e) {
+			invalidate(encoder);
+			throw e;
+		} catch (IOException e) {
+			invalidate(encoder);
+			throw e;
+		}
+		return encoder;
+	}
+
+}
@@ -54,4 +54,22 @@ public class SAXFactory {
 		}
 	}
 
+	/**
+	 * Returns a <code>SAXEncoder</code> that parses and encodes on two
+	 * threads.
+	 * 
+	 * <p>
+	 * Note that the output stream MUST be set and that
+	 * {@link PipelinedSAXEncoder#abort()} MUST be called if parsing fails.
+	 * </p>
+	 * 
+	 * @return pipelined writer using the previously set coding options.
+	 * @throws EXIException
+	 *             EXI exception
+	 * @see PipelinedSAXEncoder
+	 */
+	public PipelinedSAXEncoder createPipelinedEXIWriter() throws EXIException {
+		return new PipelinedSAXEncoder(exiFactory);
+	}
+
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+
+import org.xml.sax.SAXException;
+
+import com.siemens.ct.exi.core.types.DateTimeType;
+
+/**
+ * Extension of <code>ContentHandler</code> for reporting character content as
+ * native (typed) values.
+ * 
+ * <p>
+ * Instead of formatting a value as text for <code>characters()</code>,
+ * which the schema-informed EXI encoder parses again, the value is passed on
+ * as is. A typed value is reported in place of a <code>characters()</code>
+ * call, e.g. between <code>startElement</code> and <code>endElement</code>
+ * of a simple-typed element or right after it. If the value does not match
+ * the expected datatype the encoder falls back to its string representation.
+ * </p>
+ * 
+ * <p>
+ * An encoder implementing this interface can also be registered as
+ * {@link TypedValueHandler} with <code>SAXDecoder</code>, so that decoded
+ * values are re-encoded without a detour through characters.
+ * </p>
+ */
+
+public interface TypedContentHandler extends TypedValueHandler {
+
+	public void typedValue(boolean b) throws SAXException;
+
+	public void typedValue(long l) throws SAXException;
+
+	public void typedValue(double d) throws SAXException;
+
+	public void typedValue(BigDecimal decimal) throws SAXException;
+
+	/**
+	 * Reports binary data (base64Binary or hexBinary).
+	 * 
+	 * @param b
+	 *            byte array
+	 * @param off
+	 *            offset
+	 * @param len
+	 *            number of bytes
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void typedValue(byte[] b, int off, int len) throws SAXException;
+
+	/**
+	 * Reports a date-time value of the given type (e.g. date, dateTime,
+	 * gYear). The time-zone of the calendar is included.
+	 * 
+	 * @param cal
+	 *            calendar
+	 * @param type
+	 *            date-time type
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void typedDateTime(Calendar cal, DateTimeType type)
+			throws SAXException;
+
+}
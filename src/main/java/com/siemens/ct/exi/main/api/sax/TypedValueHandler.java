@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import org.xml.sax.SAXException;
+
+import com.siemens.ct.exi.core.values.Value;
+
+/**
+ * Receives decoded character content as EXI values.
+ * 
+ * <p>
+ * A handler registered with <code>SAXDecoder</code> via the property
+ * {@link #PROPERTY} receives all non-string character values by means of
+ * {@link #typedValue(Value)} instead of <code>characters()</code>. String
+ * values are still reported to the <code>ContentHandler</code>. List values
+ * are reported as <code>ListValue</code>, the items can be obtained as one
+ * primitive array by means of <code>TypedValues</code> (e.g.
+ * <code>TypedValues.toLongArray(list)</code>).
+ * </p>
+ */
+
+public interface TypedValueHandler {
+
+	/**
+	 * SAX property for registering a typed value handler with an EXI
+	 * <code>XMLReader</code>.
+	 */
+	public static final String PROPERTY = "http://www.siemens.com/exi/properties/typed-content-handler";
+
+	/**
+	 * Reports an EXI value (e.g. <code>IntegerValue</code>,
+	 * <code>FloatValue</code>, <code>ListValue</code>).
+	 * 
+	 * @param value
+	 *            immutable value
+	 * @throws SAXException
+	 *             SAX exception
+	 */
+	public void typedValue(Value value) throws SAXException;
+
+}
@@ -0,0 +1,914 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.EndElement;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.container.NamespaceDeclaration;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.values.Value;
+
+/**
+ * StAX event reader for EXI streams.
+ * 
+ * <p>
+ * Events are created directly from a <code>StAXDecoder</code> and not by
+ * wrapping the decoder with
+ * <code>XMLInputFactory.createXMLEventReader()</code>.
+ * </p>
+ * 
+ * <p>
+ * By default each event is a new immutable object that can be kept by the
+ * consumer. In flyweight mode the reader alternates between two mutable
+ * <code>StartElement</code>, <code>EndElement</code> and
+ * <code>Characters</code> instances. Such an event is valid until the
+ * second next event of the same kind is read, so it can be held across one
+ * <code>peek()</code>. The namespace context of a flyweight start element
+ * is the one of the reader. Flyweight characters events provide the text
+ * without creating a String, see {@link FlyweightCharacters}.
+ * </p>
+ */
+
+public class EXIEventReader implements XMLEventReader {
+
+	protected final StAXDecoder reader;
+	protected final boolean flyweight;
+	protected final XMLEventFactory eventFactory;
+
+	/* current event of reader not reported yet (e.g., start document) */
+	protected boolean pending;
+	/* event read by peek() */
+	protected XMLEvent peeked;
+	/* type of the last event returned */
+	protected int lastEventType = -1;
+
+	/* flyweight events, two instances per kind used in turn */
+	protected FlyweightStartElement[] startElements;
+	protected FlyweightEndElement[] endElements;
+	protected FlyweightCharacters[] characters;
+	protected int startElementIndex;
+	protected int endElementIndex;
+	protected int charactersIndex;
+
+	public EXIEventReader(EXIFactory noOptionsFactory) throws EXIException {
+		this(noOptionsFactory, false);
+	}
+
+	public EXIEventReader(EXIFactory noOptionsFactory, boolean flyweight)
+			throws EXIException {
+		this(new StAXDecoder(noOptionsFactory), flyweight);
+	}
+
+	/**
+	 * Creates an event reader on top of the given stream reader. The current
+	 * event of the stream reader is the first event returned.
+	 * 
+	 * @param reader
+	 *            EXI stream reader
+	 * @param flyweight
+	 *            re-use event instances
+	 */
+	public EXIEventReader(StAXDecoder reader, boolean flyweight) {
+		this.reader = reader;
+		this.flyweight = flyweight;
+		this.eventFactory = XMLEventFactory.newInstance();
+		this.pending = reader.decoder != null;
+		if (flyweight) {
+			startElements = new FlyweightStartElement[] {
+					new FlyweightStartElement(), new FlyweightStartElement() };
+			endElements = new FlyweightEndElement[] {
+					new FlyweightEndElement(), new FlyweightEndElement() };
+			characters = new FlyweightCharacters[] {
+					new FlyweightCharacters(), new FlyweightCharacters() };
+		}
+	}
+
+	public void setInputStream(InputStream is) throws EXIException,
+			IOException, XMLStreamException {
+		reader.setInputStream(is);
+		pending = true;
+		peeked = null;
+		lastEventType = -1;
+	}
+
+	public boolean isFlyweight() {
+		return flyweight;
+	}
+
+	public boolean hasNext() {
+		try {
+			return peeked != null || pending
+					|| (reader.decoder != null && reader.hasNext());
+		} catch (XMLStreamException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public XMLEvent nextEvent() throws XMLStreamException {
+		XMLEvent event;
+		if (peeked != null) {
+			event = peeked;
+			peeked = null;
+		} else if (hasNext()) {
+			event = readEvent();
+		} else {
+			throw new NoSuchElementException();
+		}
+		lastEventType = event.getEventType();
+		return event;
+	}
+
+	public Object next() {
+		try {
+			return nextEvent();
+		} catch (XMLStreamException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public XMLEvent peek() throws XMLStreamException {
+		if (peeked == null && hasNext()) {
+			peeked = readEvent();
+		}
+		return peeked;
+	}
+
+	public String getElementText() throws XMLStreamException {
+		if (lastEventType != XMLStreamConstants.START_ELEMENT) {
+			throw new XMLStreamException(
+					"parser must be on START_ELEMENT to read next text");
+		}
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			XMLEvent event = nextEvent();
+			switch (event.getEventType()) {
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if (event instanceof FlyweightCharacters) {
+					FlyweightCharacters ch = (FlyweightCharacters) event;
+					sb.append(ch.getTextCharacters(), ch.getTextStart(),
+							ch.getTextLength());
+				} else {
+					sb.append(event.asCharacters().getData());
+				}
+				break;
+			case XMLStreamConstants.PROCESSING_INSTRUCTION:
+			case XMLStreamConstants.COMMENT:
+				// skipping
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				return sb.toString();
+			case XMLStreamConstants.END_DOCUMENT:
+				throw new XMLStreamException(
+						"unexpected end of document when reading element text content");
+			case XMLStreamConstants.START_ELEMENT:
+				throw new XMLStreamException(
+						"element text content may not contain START_ELEMENT");
+			default:
+				throw new XMLStreamException("Unexpected event type "
+						+ event.getEventType());
+			}
+		}
+	}
+
+	public XMLEvent nextTag() throws XMLStreamException {
+		while (true) {
+			XMLEvent event = nextEvent();
+			switch (event.getEventType()) {
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if (!event.asCharacters().isWhiteSpace()) {
+					throw new XMLStreamException(
+							"found non-whitespace characters");
+				}
+				break;
+			case XMLStreamConstants.PROCESSING_INSTRUCTION:
+			case XMLStreamConstants.COMMENT:
+				// skipping
+				break;
+			case XMLStreamConstants.START_ELEMENT:
+			case XMLStreamConstants.END_ELEMENT:
+				return event;
+			default:
+				throw new XMLStreamException("expected start or end tag");
+			}
+		}
+	}
+
+	public Object getProperty(String name) throws IllegalArgumentException {
+		return reader.getProperty(name);
+	}
+
+	public void close() throws XMLStreamException {
+		reader.close();
+		pending = false;
+		peeked = null;
+		if (flyweight) {
+			// do not retain decoded values
+			for (int i = 0; i < 2; i++) {
+				startElements[i].clear();
+				endElements[i].clear();
+				characters[i].clear();
+			}
+		}
+	}
+
+	protected XMLEvent readEvent() throws XMLStreamException {
+		int ev;
+		if (pending) {
+			pending = false;
+			ev = reader.getEventType();
+		} else {
+			ev = reader.next();
+		}
+		return createEvent(ev);
+	}
+
+	protected XMLEvent createEvent(int ev) throws XMLStreamException {
+		switch (ev) {
+		case XMLStreamConstants.START_DOCUMENT:
+			return eventFactory.createStartDocument();
+		case XMLStreamConstants.END_DOCUMENT:
+			return eventFactory.createEndDocument();
+		case XMLStreamConstants.START_ELEMENT:
+			if (flyweight) {
+				startElementIndex ^= 1;
+				FlyweightStartElement se = startElements[startElementIndex];
+				se.set(reader);
+				return se;
+			} else {
+				return createStartElement();
+			}
+		case XMLStreamConstants.END_ELEMENT:
+			if (flyweight) {
+				endElementIndex ^= 1;
+				FlyweightEndElement ee = endElements[endElementIndex];
+				ee.set(reader);
+				return ee;
+			} else {
+				QName name = reader.getName();
+				return eventFactory.createEndElement(name.getPrefix(),
+						name.getNamespaceURI(), name.getLocalPart(),
+						createNamespaces().iterator());
+			}
+		case XMLStreamConstants.CHARACTERS:
+		case XMLStreamConstants.SPACE:
+			if (flyweight) {
+				charactersIndex ^= 1;
+				FlyweightCharacters ch = characters[charactersIndex];
+				ch.set(reader);
+				return ch;
+			} else {
+				return eventFactory.createCharacters(reader.getText());
+			}
+		case XMLStreamConstants.COMMENT:
+			return eventFactory.createComment(reader.getText());
+		case XMLStreamConstants.PROCESSING_INSTRUCTION:
+			return eventFactory.createProcessingInstruction(
+					reader.getPITarget(), reader.getPIData());
+		case XMLStreamConstants.DTD:
+			return eventFactory.createDTD(reader.getText());
+		case XMLStreamConstants.ENTITY_REFERENCE:
+			return eventFactory.createEntityReference(reader.getText(), null);
+		default:
+			throw new XMLStreamException("Unexpected event, id=" + ev);
+		}
+	}
+
+	protected StartElement createStartElement() {
+		int atCnt = reader.getAttributeCount();
+		List<Attribute> atts;
+		if (atCnt == 0) {
+			atts = Collections.emptyList();
+		} else {
+			atts = new ArrayList<Attribute>(atCnt);
+			for (int i = 0; i < atCnt; i++) {
+				QName at = reader.getAttributeName(i);
+				atts.add(eventFactory.createAttribute(at.getPrefix(),
+						at.getNamespaceURI(), at.getLocalPart(),
+						reader.getAttributeValue(i)));
+			}
+		}
+
+		QName name = reader.getName();
+		return eventFactory.createStartElement(name.getPrefix(),
+				name.getNamespaceURI(), name.getLocalPart(), atts.iterator(),
+				createNamespaces().iterator(), new NamespaceContextSnapshot(
+						reader.nsContext._nsDecls));
+	}
+
+	protected List<Namespace> createNamespaces() {
+		int nsCnt = reader.getNamespaceCount();
+		if (nsCnt == 0) {
+			return Collections.emptyList();
+		}
+		List<Namespace> nss = new ArrayList<Namespace>(nsCnt);
+		for (int i = 0; i < nsCnt; i++) {
+			String prefix = reader.getNamespacePrefix(i);
+			String uri = reader.getNamespaceURI(i);
+			if (prefix == null || prefix.length() == 0) {
+				nss.add(eventFactory.createNamespace(uri));
+			} else {
+				nss.add(eventFactory.createNamespace(prefix, uri));
+			}
+		}
+		return nss;
+	}
+
+	/*
+	 * In-scope namespace declarations at the time of a start element (inner
+	 * declarations first)
+	 */
+	static final class NamespaceContextSnapshot implements NamespaceContext {
+		final List<NamespaceDeclaration> nsDecls;
+
+		NamespaceContextSnapshot(List<List<NamespaceDeclaration>> stack) {
+			nsDecls = new ArrayList<NamespaceDeclaration>();
+			for (int k = stack.size() - 1; k >= 0; k--) {
+				List<NamespaceDeclaration> decls = stack.get(k);
+				if (decls != null) {
+					nsDecls.addAll(decls);
+				}
+			}
+		}
+
+		public String getNamespaceURI(String prefix) {
+			if (prefix == null) {
+				throw new IllegalArgumentException("Prefix must not be null");
+			} else if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+				return XMLConstants.XML_NS_URI;
+			} else if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+				return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+			}
+			for (int i = 0; i < nsDecls.size(); i++) {
+				NamespaceDeclaration nsDecl = nsDecls.get(i);
+				if (nsDecl.prefix.equals(prefix)) {
+					return nsDecl.namespaceURI;
+				}
+			}
+			return null;
+		}
+
+		public String getPrefix(String namespaceURI) {
+			if (namespaceURI == null) {
+				throw new IllegalArgumentException(
+						"Namespace URI must not be null");
+			} else if (XMLConstants.XML_NS_URI.equals(namespaceURI)) {
+				return XMLConstants.XML_NS_PREFIX;
+			} else if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespaceURI)) {
+				return XMLConstants.XMLNS_ATTRIBUTE;
+			}
+			for (int i = 0; i < nsDecls.size(); i++) {
+				NamespaceDeclaration nsDecl = nsDecls.get(i);
+				if (nsDecl.namespaceURI.equals(namespaceURI)) {
+					return nsDecl.prefix;
+				}
+			}
+			return null;
+		}
+
+		@SuppressWarnings("rawtypes")
+		public Iterator getPrefixes(String namespaceURI) {
+			if (namespaceURI == null) {
+				throw new IllegalArgumentException(
+						"Namespace URI must not be null");
+			} else if (XMLConstants.XML_NS_URI.equals(namespaceURI)
+					|| XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespaceURI)) {
+				return Collections.singletonList(getPrefix(namespaceURI))
+						.iterator();
+			}
+			List<String> prefixes = new ArrayList<String>();
+			for (int i = 0; i < nsDecls.size(); i++) {
+				NamespaceDeclaration nsDecl = nsDecls.get(i);
+				if (nsDecl.namespaceURI.equals(namespaceURI)) {
+					prefixes.add(nsDecl.prefix);
+				}
+			}
+			return prefixes.iterator();
+		}
+	}
+
+	/*
+	 * Flyweight events
+	 */
+	abstract static class FlyweightEvent implements XMLEvent {
+
+		public Location getLocation() {
+			return EmptyLocation.getInstance();
+		}
+
+		public boolean isStartElement() {
+			return getEventType() == XMLStreamConstants.START_ELEMENT;
+		}
+
+		public boolean isAttribute() {
+			return getEventType() == XMLStreamConstants.ATTRIBUTE;
+		}
+
+		public boolean isNamespace() {
+			return getEventType() == XMLStreamConstants.NAMESPACE;
+		}
+
+		public boolean isEndElement() {
+			return getEventType() == XMLStreamConstants.END_ELEMENT;
+		}
+
+		public boolean isEntityReference() {
+			return false;
+		}
+
+		public boolean isProcessingInstruction() {
+			return false;
+		}
+
+		public boolean isCharacters() {
+			return getEventType() == XMLStreamConstants.CHARACTERS;
+		}
+
+		public boolean isStartDocument() {
+			return false;
+		}
+
+		public boolean isEndDocument() {
+			return false;
+		}
+
+		public StartElement asStartElement() {
+			return (StartElement) this;
+		}
+
+		public EndElement asEndElement() {
+			return (EndElement) this;
+		}
+
+		public Characters asCharacters() {
+			return (Characters) this;
+		}
+
+		public QName getSchemaType() {
+			return null;
+		}
+
+		static void writeQName(QName qn, Writer writer) throws IOException {
+			String prefix = qn.getPrefix();
+			if (prefix != null && prefix.length() > 0) {
+				writer.write(prefix);
+				writer.write(':');
+			}
+			writer.write(qn.getLocalPart());
+		}
+
+		static void writeEscaped(char[] ch, int start, int length,
+				boolean attribute, Writer writer) throws IOException {
+			int end = start + length;
+			for (int i = start; i < end; i++) {
+				char c = ch[i];
+				switch (c) {
+				case '&':
+					writer.write("&amp;");
+					break;
+				case '<':
+					writer.write("&lt;");
+					break;
+				case '>':
+					writer.write("&gt;");
+					break;
+				case '"':
+					if (attribute) {
+						writer.write("&quot;");
+					} else {
+						writer.write(c);
+					}
+					break;
+				default:
+					writer.write(c);
+				}
+			}
+		}
+
+		static void writeEscaped(String s, boolean attribute, Writer writer)
+				throws IOException {
+			writeEscaped(s.toCharArray(), 0, s.length(), attribute, writer);
+		}
+	}
+
+	static class FlyweightAttribute extends FlyweightEvent implements
+			Attribute {
+		QName name;
+		Value value;
+		String sValue;
+
+		void set(QName name, Value value) {
+			this.name = name;
+			this.value = value;
+			this.sValue = null;
+		}
+
+		public int getEventType() {
+			return XMLStreamConstants.ATTRIBUTE;
+		}
+
+		public QName getName() {
+			return name;
+		}
+
+		public String getValue() {
+			if (sValue == null) {
+				sValue = value.toString();
+			}
+			return sValue;
+		}
+
+		public String getDTDType() {
+			return "CDATA";
+		}
+
+		public boolean isSpecified() {
+			return true;
+		}
+
+		public void writeAsEncodedUnicode(Writer writer)
+				throws XMLStreamException {
+			try {
+				writeQName(name, writer);
+				writer.write("=\"");
+				writeEscaped(getValue(), true, writer);
+				writer.write('"');
+			} catch (IOException e) {
+				throw new XMLStreamException(e);
+			}
+		}
+	}
+
+	static class FlyweightNamespace extends FlyweightEvent implements
+			Namespace {
+		String prefix;
+		String namespaceURI;
+
+		void set(String prefix, String namespaceURI) {
+			this.prefix = prefix == null ? XMLConstants.DEFAULT_NS_PREFIX
+					: prefix;
+			this.namespaceURI = namespaceURI;
+		}
+
+		public int getEventType() {
+			return XMLStreamConstants.NAMESPACE;
+		}
+
+		public QName getName() {
+			if (isDefaultNamespaceDeclaration()) {
+				return new QName(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+						XMLConstants.XMLNS_ATTRIBUTE);
+			} else {
+				return new QName(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, prefix,
+						XMLConstants.XMLNS_ATTRIBUTE);
+			}
+		}
+
+		public String getValue() {
+			return namespaceURI;
+		}
+
+		public String getDTDType() {
+			return "CDATA";
+		}
+
+		public boolean isSpecified() {
+			return true;
+		}
+
+		public String getPrefix() {
+			return prefix;
+		}
+
+		public String getNamespaceURI() {
+			return namespaceURI;
+		}
+
+		public boolean isDefaultNamespaceDeclaration() {
+			return prefix.length() == 0;
+		}
+
+		public void writeAsEncodedUnicode(Writer writer)
+				throws XMLStreamException {
+			try {
+				writer.write(XMLConstants.XMLNS_ATTRIBUTE);
+				if (!isDefaultNamespaceDeclaration()) {
+					writer.write(':');
+					writer.write(prefix);
+				}
+				writer.write("=\"");
+				writeEscaped(namespaceURI, true, writer);
+				writer.write('"');
+			} catch (IOException e) {
+				throw new XMLStreamException(e);
+			}
+		}
+	}
+
+	/*
+	 * Iterates over the first length items of an array
+	 */
+	static final class ArrayIterator<T> implements Iterator<T> {
+		final T[] items;
+		final int length;
+		int pos;
+
+		ArrayIterator(T[] items, int length) {
+			this.items = items;
+			this.length = length;
+		}
+
+		public boolean hasNext() {
+			return pos < length;
+		}
+
+		public T next() {
+			if (pos >= length) {
+				throw new NoSuchElementException();
+			}
+			return items[pos++];
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/*
+	 * Namespace declarations of start and end elements
+	 */
+	abstract static class FlyweightElement extends FlyweightEvent {
+		QName name;
+		FlyweightNamespace[] namespaces = new FlyweightNamespace[0];
+		int nsLength;
+
+		void setNamespaces(StAXDecoder reader) {
+			nsLength = reader.getNamespaceCount();
+			if (nsLength > namespaces.length) {
+				FlyweightNamespace[] newNamespaces = new FlyweightNamespace[nsLength];
+				System.arraycopy(namespaces, 0, newNamespaces, 0,
+						namespaces.length);
+				for (int i = namespaces.length; i < nsLength; i++) {
+					newNamespaces[i] = new FlyweightNamespace();
+				}
+				namespaces = newNamespaces;
+			}
+			for (int i = 0; i < nsLength; i++) {
+				namespaces[i].set(reader.getNamespacePrefix(i),
+						reader.getNamespaceURI(i));
+			}
+		}
+
+		void clear() {
+			name = null;
+			nsLength = 0;
+		}
+
+		public QName getName() {
+			return name;
+		}
+
+		@SuppressWarnings("rawtypes")
+		public Iterator getNamespaces() {
+			return new ArrayIterator<FlyweightNamespace>(namespaces, nsLength);
+		}
+	}
+
+	static final class FlyweightStartElement extends FlyweightElement
+			implements StartElement {
+		FlyweightAttribute[] attributes = new FlyweightAttribute[0];
+		int atLength;
+		NamespaceContext nsContext;
+
+		void set(StAXDecoder reader) {
+			name = reader.getName();
+			setNamespaces(reader);
+			nsContext = reader.getNamespaceContext();
+
+			atLength = reader.getAttributeCount();
+			if (atLength > attributes.length) {
+				FlyweightAttribute[] newAttributes = new FlyweightAttribute[atLength];
+				System.arraycopy(attributes, 0, newAttributes, 0,
+						attributes.length);
+				for (int i = attributes.length; i < atLength; i++) {
+					newAttributes[i] = new FlyweightAttribute();
+				}
+				attributes = newAttributes;
+			}
+			for (int i = 0; i < atLength; i++) {
+				attributes[i].set(reader.getAttributeName(i),
+						reader.attributes.getValue(i));
+			}
+		}
+
+		@Override
+		void clear() {
+			super.clear();
+			for (int i = 0; i < atLength; i++) {
+				attributes[i].set(null, null);
+			}
+			atLength = 0;
+			nsContext = null;
+		}
+
+		public int getEventType() {
+			return XMLStreamConstants.START_ELEMENT;
+		}
+
+		@SuppressWarnings("rawtypes")
+		public Iterator getAttributes() {
+			return new ArrayIterator<FlyweightAttribute>(attributes, atLength);
+		}
+
+		public Attribute getAttributeByName(QName name) {
+			for (int i = 0; i < atLength; i++) {
+				if (attributes[i].name.equals(name)) {
+					return attributes[i];
+				}
+			}
+			return null;
+		}
+
+		public NamespaceContext getNamespaceContext() {
+			return nsContext;
+		}
+
+		public String getNamespaceURI(String prefix) {
+			return nsContext.getNamespaceURI(prefix);
+		}
+
+		public void writeAsEncodedUnicode(Writer writer)
+				throws XMLStreamException {
+			try {
+				writer.write('<');
+				writeQName(name, writer);
+				for (int i = 0; i < nsLength; i++) {
+					writer.write(' ');
+					namespaces[i].writeAsEncodedUnicode(writer);
+				}
+				for (int i = 0; i < atLength; i++) {
+					writer.write(' ');
+					attributes[i].writeAsEncodedUnicode(writer);
+				}
+				writer.write('>');
+			} catch (IOException e) {
+				throw new XMLStreamException(e);
+			}
+		}
+	}
+
+	static final class FlyweightEndElement extends FlyweightElement
+			implements EndElement {
+
+		void set(StAXDecoder reader) {
+			name = reader.getName();
+			setNamespaces(reader);
+		}
+
+		public int getEventType() {
+			return XMLStreamConstants.END_ELEMENT;
+		}
+
+		public void writeAsEncodedUnicode(Writer writer)
+				throws XMLStreamException {
+			try {
+				writer.write("</");
+				writeQName(name, writer);
+				writer.write('>');
+			} catch (IOException e) {
+				throw new XMLStreamException(e);
+			}
+		}
+	}
+
+	/**
+	 * Re-used characters event. The text is available as a region of a
+	 * character array, like for <code>XMLStreamReader</code>, without
+	 * creating a String.
+	 */
+	public static final class FlyweightCharacters extends FlyweightEvent
+			implements Characters {
+		char[] ch = new char[64];
+		int length;
+		String data;
+
+		FlyweightCharacters() {
+		}
+
+		void set(StAXDecoder reader) {
+			length = reader.getTextLength();
+			if (length > ch.length) {
+				ch = new char[Math.max(length, ch.length << 1)];
+			}
+			System.arraycopy(reader.getTextCharacters(),
+					reader.getTextStart(), ch, 0, length);
+			data = null;
+		}
+
+		void clear() {
+			length = 0;
+			data = null;
+		}
+
+		public char[] getTextCharacters() {
+			return ch;
+		}
+
+		public int getTextStart() {
+			return 0;
+		}
+
+		public int getTextLength() {
+			return length;
+		}
+
+		public int getEventType() {
+			return XMLStreamConstants.CHARACTERS;
+		}
+
+		public String getData() {
+			if (data == null) {
+				data = new String(ch, 0, length);
+			}
+			return data;
+		}
+
+		public boolean isWhiteSpace() {
+			for (int i = 0; i < length; i++) {
+				if (ch[i] > ' ') {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public boolean isCData() {
+			return false;
+		}
+
+		public boolean isIgnorableWhiteSpace() {
+			return false;
+		}
+
+		public void writeAsEncodedUnicode(Writer writer)
+				throws XMLStreamException {
+			try {
+				writeEscaped(ch, 0, length, false, writer);
+			} catch (IOException e) {
+				throw new XMLStreamException(e);
+			}
+		}
+	}
+
+}
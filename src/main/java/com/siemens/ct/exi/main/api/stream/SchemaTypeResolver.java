@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.stream;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import com.siemens.ct.exi.core.context.GrammarContext;
+import com.siemens.ct.exi.core.context.GrammarUriContext;
+import com.siemens.ct.exi.core.context.QNameContext;
+import com.siemens.ct.exi.core.datatype.Datatype;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.core.grammars.event.DatatypeEvent;
+import com.siemens.ct.exi.core.grammars.event.Event;
+import com.siemens.ct.exi.core.grammars.event.EventType;
+import com.siemens.ct.exi.core.grammars.event.StartElement;
+import com.siemens.ct.exi.core.grammars.grammar.Grammar;
+import com.siemens.ct.exi.core.grammars.production.Production;
+
+/**
+ * Guesses the datatype schema-informed grammars expect for the character
+ * content of the current element.
+ * 
+ * <p>
+ * The result is a best-effort guess: the grammar state is re-derived in
+ * parallel to the EXI encoder, not taken from it. Elements are followed by
+ * means of the declared start element events (local elements) and global
+ * element declarations (root and wildcard content) as well as
+ * <code>xsi:type</code> casts. The content model of an element is not
+ * tracked in detail, the datatype is the one of the characters event
+ * reachable from its start tag grammar. The encoder still checks each value
+ * against the datatype it actually expects and falls back to strings if
+ * need be.
+ * </p>
+ */
+
+final class SchemaTypeResolver {
+
+	/* start element events and characters datatype of a grammar */
+	static final class GrammarInfo {
+		final Map<QNameContext, Grammar> elements = new HashMap<QNameContext, Grammar>();
+		Datatype characters;
+	}
+
+	final GrammarContext grammarContext;
+
+	final Map<Grammar, GrammarInfo> infos = new IdentityHashMap<Grammar, GrammarInfo>();
+
+	/* start tag grammars of open elements, null if not known */
+	final List<Grammar> elements = new ArrayList<Grammar>();
+
+	SchemaTypeResolver(Grammars grammars) {
+		this.grammarContext = grammars.getGrammarContext();
+	}
+
+	void reset() {
+		elements.clear();
+	}
+
+	QNameContext getQNameContext(String uri, String localName) {
+		GrammarUriContext guc = grammarContext.getGrammarUriContext(uri);
+		return guc == null ? null : guc.getQNameContext(localName);
+	}
+
+	void startElement(String uri, String localName) {
+		Grammar gr = null;
+		QNameContext qnc = getQNameContext(uri, localName);
+		if (qnc != null) {
+			int size = elements.size();
+			Grammar parent = size == 0 ? null : elements.get(size - 1);
+			if (parent != null) {
+				gr = getInfo(parent).elements.get(qnc);
+			}
+			if (gr == null && qnc.getGlobalStartElement() != null) {
+				gr = qnc.getGlobalStartElement().getGrammar();
+			}
+		}
+		elements.add(gr);
+	}
+
+	void xsiType(String uri, String localName) {
+		QNameContext qnc = getQNameContext(uri, localName);
+		int size = elements.size();
+		if (size > 0) {
+			elements.set(size - 1, qnc == null ? null : qnc.getTypeGrammar());
+		}
+	}
+
+	void endElement() {
+		elements.remove(elements.size() - 1);
+	}
+
+	/**
+	 * Returns the datatype of the character content of the current element
+	 * or <code>null</code> if not known.
+	 */
+	Datatype getCharactersDatatype() {
+		int size = elements.size();
+		Grammar gr = size == 0 ? null : elements.get(size - 1);
+		return gr == null ? null : getInfo(gr).characters;
+	}
+
+	GrammarInfo getInfo(Grammar startTag) {
+		GrammarInfo info = infos.get(startTag);
+		if (info == null) {
+			info = new GrammarInfo();
+			// grammars of the element content (child grammars excluded)
+			Map<Grammar, Boolean> visited = new IdentityHashMap<Grammar, Boolean>();
+			LinkedList<Grammar> queue = new LinkedList<Grammar>();
+			queue.add(startTag);
+			visited.put(startTag, Boolean.TRUE);
+			while (!queue.isEmpty()) {
+				Grammar gr = queue.removeFirst();
+				for (int i = 0; i < gr.getNumberOfEvents(); i++) {
+					Production p = gr.getProduction(i);
+					Event ev = p.getEvent();
+					if (ev.getEventType() == EventType.START_ELEMENT) {
+						StartElement se = (StartElement) ev;
+						if (!info.elements.containsKey(se.getQNameContext())) {
+							info.elements.put(se.getQNameContext(),
+									se.getGrammar());
+						}
+					} else if (ev.getEventType() == EventType.CHARACTERS
+							&& info.characters == null) {
+						info.characters = ((DatatypeEvent) ev).getDatatype();
+					}
+					Grammar next = p.getNextGrammar();
+					if (next != null && !visited.containsKey(next)) {
+						visited.put(next, Boolean.TRUE);
+						queue.add(next);
+					}
+				}
+			}
+			infos.put(startTag, info);
+		}
+		return info;
+	}
+
+}
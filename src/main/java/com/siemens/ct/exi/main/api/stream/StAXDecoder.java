@@ -41,6 +41,7 @@ import com.siemens.ct.exi.core.EXIBodyDecoder;
 import com.siemens.ct.exi.core.EXIFactory;
 import com.siemens.ct.exi.core.EXIStreamDecoder;
 import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.coder.AbstractEXIBodyCoder;
 import com.siemens.ct.exi.core.container.DocType;
 import com.siemens.ct.exi.core.container.NamespaceDeclaration;
 import com.siemens.ct.exi.core.container.ProcessingInstruction;
@@ -49,10 +50,24 @@ import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.grammars.event.EventType;
 import com.siemens.ct.exi.core.values.Value;
 import com.siemens.ct.exi.main.helpers.DefaultSchemaIdResolver;
+import com.siemens.ct.exi.main.util.DecodedAttributes;
 
 /**
  * De-Serializes EXI to StAX
  * 
+ * <p>
+ * A decoder can be used for any number of streams, one after the other.
+ * Setting a new input stream resets the internal state while the attribute
+ * list, the namespace context and the stream decoder are kept.
+ * {@link #close()} releases the current stream. A decoder must not be used
+ * by several threads at the same time (see <code>StAXDecoderPool</code>).
+ * </p>
+ * 
+ * <p>
+ * Typed access to decoded values (Stax2 API) is offered by
+ * <code>TypedStAXDecoder</code>.
+ * </p>
+ * 
  * @author Daniel.Peintner.EXT@siemens.com
  * @author Richard.Kuntschke@siemens.com
  * 
@@ -71,8 +86,11 @@ public class StAXDecoder implements XMLStreamReader
 	protected boolean exiBodyOnly = false;
 
 	protected QNameContext element;
-	protected List<AttributeContainer> attributes;
+	protected DecodedAttributes attributes;
 	protected Value characters;
+	/* re-used buffer holding the text of the current characters event */
+	protected char[] cbuffer = new char[64];
+	protected boolean cbufferFilled;
 	protected DocType docType;
 	protected char[] entityReference;
 	protected char[] comment;
@@ -88,17 +106,8 @@ public class StAXDecoder implements XMLStreamReader
 	/* namespace context */
 	protected EXINamespaceContext nsContext;
 
-	static class AttributeContainer {
-		final QNameContext qname;
-		final Value value;
-		final String prefix;
-
-		public AttributeContainer(QNameContext qname, Value value, String prefix) {
-			this.qname = qname;
-			this.value = value;
-			this.prefix = prefix;
-		}
-	}
+	/* QName objects per QNameContext and prefix */
+	final StAXDecoderNameCache nameCache = new StAXDecoderNameCache();
 
 	public StAXDecoder(EXIFactory noOptionsFactory) throws EXIException {
 		this.noOptionsFactory = noOptionsFactory;
@@ -107,7 +116,7 @@ public class StAXDecoder implements XMLStreamReader
 			noOptionsFactory.setSchemaIdResolver(new DefaultSchemaIdResolver());
 		}
 		this.exiStream = noOptionsFactory.createEXIStreamDecoder();
-		this.attributes = new ArrayList<AttributeContainer>();
+		this.attributes = new DecodedAttributes();
 		this.nsContext = new EXINamespaceContext();
 
 	}
@@ -121,6 +130,8 @@ public class StAXDecoder implements XMLStreamReader
 		eventType = null;
 		preReadEventType = null;
 		attributes.clear();
+		nsContext.reset();
+		clearValues();
 
 		if (noOptionsFactory.getFidelityOptions().isFidelityEnabled(
 				FidelityOptions.FEATURE_PREFIX)) {
@@ -143,6 +154,7 @@ public class StAXDecoder implements XMLStreamReader
 		} else {
 			// read header (default)
 			decoder = exiStream.decodeHeader(is);
+			checkStreamDecoder(decoder);
 		}
 
 		// init
@@ -153,6 +165,30 @@ public class StAXDecoder implements XMLStreamReader
 		decoder.decodeStartDocument();
 	}
 
+	/*
+	 * The stream decoder keeps a body decoder created for EXI options found in
+	 * a header for all following streams. Renew it in that case.
+	 */
+	protected void checkStreamDecoder(EXIBodyDecoder decoder)
+			throws EXIException {
+		if (decoder instanceof AbstractEXIBodyCoder
+				&& ((AbstractEXIBodyCoder) decoder).exiFactory != noOptionsFactory) {
+			exiStream = noOptionsFactory.createEXIStreamDecoder();
+		}
+	}
+
+	protected void clearValues() {
+		element = null;
+		characters = null;
+		cbufferFilled = false;
+		docType = null;
+		entityReference = null;
+		comment = null;
+		processingInstruction = null;
+		endElementPrefix = null;
+		eePrefixes = null;
+	}
+
 	public int getEventType() {
 		return getEventType(this.eventType);
 	}
@@ -251,14 +287,12 @@ public class StAXDecoder implements XMLStreamReader
 			break;
 		/* ATTRIBUTES */
 		case ATTRIBUTE_XSI_NIL:
-			attributes.add(new AttributeContainer(decoder
-					.decodeAttributeXsiNil(), decoder.getAttributeValue(),
-					decoder.getAttributePrefix()));
+			attributes.add(decoder.decodeAttributeXsiNil(),
+					decoder.getAttributePrefix(), decoder.getAttributeValue());
 			break;
 		case ATTRIBUTE_XSI_TYPE:
-			attributes.add(new AttributeContainer(decoder
-					.decodeAttributeXsiType(), decoder.getAttributeValue(),
-					decoder.getAttributePrefix()));
+			attributes.add(decoder.decodeAttributeXsiType(),
+					decoder.getAttributePrefix(), decoder.getAttributeValue());
 			break;
 		case ATTRIBUTE:
 		case ATTRIBUTE_NS:
@@ -266,8 +300,8 @@ public class StAXDecoder implements XMLStreamReader
 		case ATTRIBUTE_GENERIC_UNDECLARED:
 		case ATTRIBUTE_INVALID_VALUE:
 		case ATTRIBUTE_ANY_INVALID_VALUE:
-			attributes.add(new AttributeContainer(decoder.decodeAttribute(),
-					decoder.getAttributeValue(), decoder.getAttributePrefix()));
+			attributes.add(decoder.decodeAttribute(),
+					decoder.getAttributePrefix(), decoder.getAttributeValue());
 			break;
 		/* NAMESPACE DECLARATION */
 		case NAMESPACE_DECLARATION:
@@ -305,6 +339,7 @@ public class StAXDecoder implements XMLStreamReader
 		case CHARACTERS_GENERIC:
 		case CHARACTERS_GENERIC_UNDECLARED:
 			characters = decoder.decodeCharacters();
+			cbufferFilled = false;
 			break;
 		/* MISC */
 		case DOC_TYPE:
@@ -328,6 +363,11 @@ public class StAXDecoder implements XMLStreamReader
 	}
 
 	public void close() throws XMLStreamException {
+		// release stream and decoded values
+		decoder = null;
+		attributes.clear();
+		nsContext.reset();
+		clearValues();
 	}
 
 	protected void handleAttributes() throws EXIException, IOException {
@@ -354,23 +394,24 @@ public class StAXDecoder implements XMLStreamReader
 	}
 
 	public int getAttributeCount() {
-		return this.attributes.size();
+		return this.attributes.getLength();
 	}
 
 	public String getAttributeLocalName(int index) {
-		return attributes.get(index).qname.getLocalName();
+		return attributes.getLocalName(index);
 	}
 
 	public QName getAttributeName(int index) {
-		return attributes.get(index).qname.getQName();
+		return nameCache.get(attributes.getQNameContext(index),
+				attributes.getPrefix(index));
 	}
 
 	public String getAttributeNamespace(int index) {
-		return attributes.get(index).qname.getNamespaceUri();
+		return attributes.getNamespaceURI(index);
 	}
 
 	public String getAttributePrefix(int index) {
-		return attributes.get(index).prefix;
+		return attributes.getPrefix(index);
 	}
 
 	public String getAttributeType(int index) {
@@ -380,23 +421,14 @@ public class StAXDecoder implements XMLStreamReader
 	}
 
 	public String getAttributeValue(int index) {
-		return attributes.get(index).value.toString();
+		return attributes.getValueAsString(index);
 	}
 
 	public String getAttributeValue(String namespaceURI, String localName) {
 		// Returns the normalized attribute value of the attribute with the
 		// namespace and localName
 		// If the namespaceURI is null the namespace is not checked for equality
-		for (AttributeContainer ac : attributes) {
-			if (ac.qname.getLocalName().equals(localName)) {
-				if (namespaceURI == null) {
-					return ac.value.toString();
-				} else if (ac.qname.getNamespaceUri().equals(namespaceURI)) {
-					return ac.value.toString();
-				}
-			}
-		}
-		return null;
+		return attributes.getValueAsString(namespaceURI, localName);
 	}
 
 	public String getCharacterEncodingScheme() {
@@ -461,9 +493,7 @@ public class StAXDecoder implements XMLStreamReader
 	 */
 	public QName getName() {
 		// Returns a QName for the current START_ELEMENT or END_ELEMENT event
-		QName qn = new QName(element.getNamespaceUri(), element.getLocalName(),
-				this.getPrefix());
-		return qn;
+		return nameCache.get(element, this.getPrefix());
 	}
 
 	List<NamespaceDeclaration> getNamespaceDeclarations() {
@@ -647,7 +677,7 @@ public class StAXDecoder implements XMLStreamReader
 		switch (getEventType()) {
 		case XMLStreamConstants.CHARACTERS:
 		case XMLStreamConstants.SPACE:
-			return characters.toString().toCharArray();
+			return getCharactersBuffer();
 		case XMLStreamConstants.COMMENT:
 			return comment;
 		case XMLStreamConstants.ENTITY_REFERENCE:
@@ -681,40 +711,41 @@ public class StAXDecoder implements XMLStreamReader
 		 * "targetStart + length" must be less than or equal to length of
 		 * "target".
 		 */
-		// arraycopy(Object source, int sourcePosition, Object destination, int
-		// destinationPosition, int numberOfElements)
-		if (this.getTextLength() > (target.length - targetStart)) {
-			throw new RuntimeException("Buffer too small!");
+		if (targetStart < 0 || targetStart > target.length) {
+			throw new IndexOutOfBoundsException("targetStart " + targetStart);
+		}
+		if (length < 0 || targetStart + length > target.length) {
+			throw new IndexOutOfBoundsException("length " + length);
 		}
 
-		switch (getEventType()) {
-		case XMLStreamConstants.CHARACTERS:
-		case XMLStreamConstants.SPACE:
-			this.characters.getCharacters(target, targetStart);
-
-			// //System.arraycopy(this.characters, sourceStart, target,
-			// targetStart, length);
-			// char[] ch = this.characters.getCharacters(target, targetStart);
-			// if (ch != target) {
-			// System.arraycopy(ch, sourceStart, target, targetStart, length);
-			// }
-			return length;
-		case XMLStreamConstants.COMMENT:
-			System.arraycopy(this.comment, sourceStart, target, targetStart,
-					length);
-			return length;
-		case XMLStreamConstants.ENTITY_REFERENCE:
-			System.arraycopy(this.entityReference, sourceStart, target,
-					targetStart, length);
-			return length;
-		case XMLStreamConstants.DTD:
-			char[] dt = getDocTypeString().toCharArray();
-			System.arraycopy(dt, sourceStart, target, targetStart, length);
-			return length;
-		default:
-			throw new RuntimeException("Unexpected event, id=" + getEventType());
+		// text of the event starts at 0 in each case
+		char[] text = getTextCharacters();
+		int textLength = getEventType() == XMLStreamConstants.DTD ? text.length
+				: getTextLength();
+		if (sourceStart < 0 || sourceStart > textLength) {
+			throw new IndexOutOfBoundsException("sourceStart " + sourceStart);
 		}
 
+		// copy what is left, may be less than length
+		int n = Math.min(length, textLength - sourceStart);
+		System.arraycopy(text, sourceStart, target, targetStart, n);
+		return n;
+	}
+
+	/*
+	 * Fills the re-used buffer once per characters event and returns it. The
+	 * text starts at 0 and has getTextLength() characters.
+	 */
+	protected char[] getCharactersBuffer() {
+		if (!cbufferFilled) {
+			int len = characters.getCharactersLength();
+			if (len > cbuffer.length) {
+				cbuffer = new char[Math.max(len, cbuffer.length << 1)];
+			}
+			characters.getCharacters(cbuffer, 0);
+			cbufferFilled = true;
+		}
+		return cbuffer;
 	}
 
 	public int getTextLength() {
@@ -817,7 +848,14 @@ public class StAXDecoder implements XMLStreamReader
 	public boolean isWhiteSpace() {
 		switch (getEventType()) {
 		case XMLStreamConstants.CHARACTERS:
-			return this.characters.toString().trim().length() == 0;
+			char[] ch = getCharactersBuffer();
+			int len = getTextLength();
+			for (int i = 0; i < len; i++) {
+				if (ch[i] > ' ') {
+					return false;
+				}
+			}
+			return true;
 		case XMLStreamConstants.CDATA:
 			return false;
 		case XMLStreamConstants.COMMENT:
@@ -914,6 +952,10 @@ public class StAXDecoder implements XMLStreamReader
 			this._nsDecls = new ArrayList<List<NamespaceDeclaration>>();
 		}
 
+		protected void reset() {
+			this._nsDecls.clear();
+		}
+
 		// protected void setNamespaceDeclarations(List<NamespaceDeclaration>
 		// nsDecls) {
 		// _nsDecls = nsDecls;
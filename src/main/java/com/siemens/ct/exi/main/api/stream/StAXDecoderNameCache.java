@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.stream;
+
+import javax.xml.namespace.QName;
+
+import com.siemens.ct.exi.core.context.QNameContext;
+
+/**
+ * Caches the <code>QName</code> objects returned by the StAX decoder.
+ * 
+ * <p>
+ * Names without prefix are taken from the <code>QNameContext</code> itself.
+ * For names with prefix a <code>QName</code> is created once per
+ * <code>QNameContext</code> and prefix so that name accessors do not
+ * allocate for each event.
+ * </p>
+ * 
+ * <p>
+ * The cache is kept across documents and is cleared once it holds more than
+ * <code>maxEntries</code> entries.
+ * </p>
+ */
+
+final class StAXDecoderNameCache {
+
+	static final int DEFAULT_MAX_ENTRIES = 4096;
+
+	static final class Entry {
+		final QNameContext qnc;
+		/* qualified names per prefix */
+		String[] prefixes;
+		QName[] qnames;
+		int size;
+		Entry next;
+
+		Entry(QNameContext qnc, Entry next) {
+			this.qnc = qnc;
+			this.next = next;
+		}
+	}
+
+	final int maxEntries;
+
+	Entry[] entries;
+	int entriesSize;
+
+	StAXDecoderNameCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	StAXDecoderNameCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+		entries = new Entry[64];
+	}
+
+	static int hash(QNameContext qnc) {
+		int h = System.identityHashCode(qnc);
+		// spread bits
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the qualified name for the given prefix.
+	 */
+	QName get(QNameContext qnc, String prefix) {
+		QName qn = qnc.getQName();
+		if (prefix == null || prefix.equals(qn.getPrefix())) {
+			return qn;
+		}
+
+		Entry e = getEntry(qnc);
+		for (int i = 0; i < e.size; i++) {
+			if (e.prefixes[i] == prefix) {
+				return e.qnames[i];
+			}
+		}
+		for (int i = 0; i < e.size; i++) {
+			if (e.prefixes[i].equals(prefix)) {
+				return e.qnames[i];
+			}
+		}
+
+		qn = new QName(qn.getNamespaceURI(), qn.getLocalPart(), prefix);
+		if (e.prefixes == null) {
+			e.prefixes = new String[2];
+			e.qnames = new QName[2];
+		} else if (e.size == e.prefixes.length) {
+			String[] newPrefixes = new String[e.size << 1];
+			System.arraycopy(e.prefixes, 0, newPrefixes, 0, e.size);
+			e.prefixes = newPrefixes;
+			QName[] newQNames = new QName[e.size << 1];
+			System.arraycopy(e.qnames, 0, newQNames, 0, e.size);
+			e.qnames = newQNames;
+		}
+		e.prefixes[e.size] = prefix;
+		e.qnames[e.size] = qn;
+		e.size++;
+		return qn;
+	}
+
+	Entry getEntry(QNameContext qnc) {
+		Entry[] tab = entries;
+		int h = hash(qnc);
+		for (Entry e = tab[h & (tab.length - 1)]; e != null; e = e.next) {
+			if (e.qnc == qnc) {
+				return e;
+			}
+		}
+
+		if (entriesSize >= maxEntries) {
+			entries = tab = new Entry[64];
+			entriesSize = 0;
+		} else if (entriesSize >= (tab.length >> 1) + (tab.length >> 2)) {
+			entries = tab = resize(tab);
+		}
+		int idx = h & (tab.length - 1);
+		Entry e = new Entry(qnc, tab[idx]);
+		tab[idx] = e;
+		entriesSize++;
+		return e;
+	}
+
+	static Entry[] resize(Entry[] tab) {
+		Entry[] newTab = new Entry[tab.length << 1];
+		int mask = newTab.length - 1;
+		for (int i = 0; i < tab.length; i++) {
+			Entry e = tab[i];
+			while (e != null) {
+				Entry next = e.next;
+				int idx = hash(e.qnc) & mask;
+				e.next = newTab[idx];
+				newTab[idx] = e;
+				e = next;
+			}
+		}
+		return newTab;
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.main.util.EXIFactoryPool;
+
+/**
+ * Pool of re-usable StAX decoders.
+ * 
+ * <pre>
+ * StAXDecoder decoder = pool.borrow(exiFactory, is);
+ * try {
+ * 	while (decoder.hasNext()) {
+ * 		decoder.next();
+ * 	}
+ * } finally {
+ * 	pool.release(decoder);
+ * }
+ * </pre>
+ */
+
+public class StAXDecoderPool extends EXIFactoryPool<StAXDecoder> {
+
+	public StAXDecoderPool() {
+		super();
+	}
+
+	public StAXDecoderPool(int maxIdle) {
+		super(maxIdle);
+	}
+
+	@Override
+	protected StAXDecoder create(EXIFactory factory) throws EXIException {
+		return new StAXDecoder(factory);
+	}
+
+	@Override
+	protected void passivate(StAXDecoder decoder) {
+		try {
+			decoder.close();
+		} catch (XMLStreamException e) {
+			// nothing to release
+		}
+	}
+
+	/**
+	 * Borrows a decoder and sets the input stream. The decoder is positioned
+	 * at the start of the document.
+	 * 
+	 * @param factory
+	 *            EXI factory
+	 * @param is
+	 *            EXI input stream
+	 * @return decoder ready to read the document
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 * @throws XMLStreamException
+	 *             StAX exception
+	 */
+	public StAXDecoder borrow(EXIFactory factory, InputStream is)
+			throws EXIException, IOException, XMLStreamException {
+		StAXDecoder decoder = borrow(factory);
+		try {
+			decoder.setInputStream(is);
+		} catch (EXIException e) {
+			invalidate(decoder);
+			throw e;
+		} catch (IOException e) {
+			invalidate(decoder);
+			throw e;
+		} catch (XMLStreamException e) {
+			invalidate(decoder);
+			throw e;
+		}
+		return decoder;
+	}
+
+}
@@ -25,6 +25,7 @@ package com.siemens.ct.exi.main.api.stream;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -56,9 +57,14 @@ import com.siemens.ct.exi.core.FidelityOptions;
 import com.siemens.ct.exi.core.attributes.AttributeFactory;
 import com.siemens.ct.exi.core.attributes.AttributeList;
 import com.siemens.ct.exi.core.container.NamespaceDeclaration;
+import com.siemens.ct.exi.core.datatype.Datatype;
 import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.Grammars;
 import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.core.values.Value;
+import com.siemens.ct.exi.main.util.ChannelOutputStream;
 import com.siemens.ct.exi.main.util.SimpleDocTypeParser;
+import com.siemens.ct.exi.main.util.WhiteSpaceFilter;
 
 /**
  * Serializes StAX to EXI
@@ -70,6 +76,9 @@ import com.siemens.ct.exi.main.util.SimpleDocTypeParser;
 
 public class StAXEncoder implements XMLStreamWriter {
 
+	/* Stax2 API on the class path */
+	static final boolean STAX2_AVAILABLE = isClassAvailable("org.codehaus.stax2.typed.TypedXMLStreamReader");
+
 	protected EXIBodyEncoder encoder;
 	protected EXIStreamEncoder exiStream;
 
@@ -79,6 +88,7 @@ public class StAXEncoder implements XMLStreamWriter {
 	protected final boolean preserveDTD;
 	protected final boolean preserveComment;
 	protected final boolean preservePI;
+	protected final boolean preserveLexicalValues;
 
 	// AT or NS Events pending
 	protected boolean pendingATs;
@@ -89,6 +99,14 @@ public class StAXEncoder implements XMLStreamWriter {
 	// namespaces
 	protected EncoderNamespaceContext nsContext;
 
+	// insignificant whitespace
+	protected final WhiteSpaceFilter whiteSpaceFilter;
+
+	// typed transcoding of Stax2 readers
+	protected final Grammars grammars;
+	protected boolean typedTranscoding;
+	protected SchemaTypeResolver typeResolver;
+
 	public StAXEncoder(EXIFactory factory) throws EXIException {
 		// attribute list & NS
 		AttributeFactory attFactory = AttributeFactory.newInstance();
@@ -101,6 +119,73 @@ public class StAXEncoder implements XMLStreamWriter {
 		preserveDTD = fo.isFidelityEnabled(FidelityOptions.FEATURE_DTD);
 		preserveComment = fo.isFidelityEnabled(FidelityOptions.FEATURE_COMMENT);
 		preservePI = fo.isFidelityEnabled(FidelityOptions.FEATURE_PI);
+		preserveLexicalValues = fo
+				.isFidelityEnabled(FidelityOptions.FEATURE_LEXICAL_VALUE);
+		whiteSpaceFilter = new WhiteSpaceFilter(factory);
+		grammars = factory.getGrammars();
+	}
+
+	static boolean isClassAvailable(String className) {
+		try {
+			Class.forName(className);
+			return true;
+		} catch (Throwable t) {
+			return false;
+		}
+	}
+
+	/**
+	 * Enables typed transcoding in <code>encode(XMLStreamReader)</code>.
+	 * 
+	 * <p>
+	 * If the reader implements the Stax2
+	 * <code>TypedXMLStreamReader</code> interface (e.g. Woodstox) and the
+	 * schema expects a boolean, integer or base64Binary value for an element,
+	 * its content is pulled as typed value instead of characters. Applies to
+	 * schema-informed grammars only, not if comments, processing
+	 * instructions or lexical values are preserved and requires that such
+	 * elements have text-only content.
+	 * </p>
+	 * 
+	 * @param typedTranscoding
+	 *            typed transcoding
+	 */
+	public void setTypedTranscoding(boolean typedTranscoding) {
+		this.typedTranscoding = typedTranscoding;
+	}
+
+	public boolean isTypedTranscoding() {
+		return typedTranscoding;
+	}
+
+	protected boolean useTypedTranscoding(XMLStreamReader xmlStream) {
+		return typedTranscoding && STAX2_AVAILABLE
+				&& grammars.isSchemaInformed() && !preserveComment
+				&& !preservePI && !preserveLexicalValues
+				&& Stax2TypedReader.isTypedReader(xmlStream);
+	}
+
+	/*
+	 * Datatype of a simple value the schema expects for the current element
+	 * (if any)
+	 */
+	protected Datatype getTypedDatatype() {
+		Datatype dt = typeResolver.getCharactersDatatype();
+		if (dt != null) {
+			switch (dt.getBuiltInType()) {
+			case BOOLEAN:
+			case BINARY_BASE64:
+			case NBIT_UNSIGNED_INTEGER:
+			case UNSIGNED_INTEGER:
+			case INTEGER:
+				return dt;
+			default:
+				// float, decimal, date-time et cetera are parsed from
+				// characters by the encoder anyway
+				break;
+			}
+		}
+		return null;
 	}
 
 	public void setOutputStream(OutputStream os) throws EXIException,
@@ -109,10 +194,27 @@ public class StAXEncoder implements XMLStreamWriter {
 		this.encoder = exiStream.encodeHeader(os);
 	}
 
+	/**
+	 * Sets a NIO channel as output, buffered by a
+	 * {@link ChannelOutputStream} of default size.
+	 * 
+	 * @param channel
+	 *            output channel
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void setOutputChannel(WritableByteChannel channel)
+			throws EXIException, IOException {
+		setOutputStream(new ChannelOutputStream(channel));
+	}
+
 	protected void init() {
 		pendingATs = false;
 		exiAttributes.clear();
 		nsContext.reset();
+		whiteSpaceFilter.startDocument();
 	}
 
 	protected SimpleDocTypeParser getDtdParser() throws SAXException {
@@ -207,6 +309,14 @@ public class StAXEncoder implements XMLStreamWriter {
 
 		writeStartDocument();
 
+		boolean typed = useTypedTranscoding(xmlStream);
+		if (typed) {
+			if (typeResolver == null) {
+				typeResolver = new SchemaTypeResolver(grammars);
+			}
+			typeResolver.reset();
+		}
+
 		while (xmlStream.hasNext()) {
 			int event = xmlStream.next();
 			switch (event) {
@@ -238,9 +348,15 @@ public class StAXEncoder implements XMLStreamWriter {
 							xmlStream.getAttributeValue(i));
 				}
 
+				if (typed) {
+					encodeTyped(xmlStream, qn);
+				}
 				break;
 			case XMLStreamConstants.END_ELEMENT:
 				writeEndElement();
+				if (typed) {
+					typeResolver.endElement();
+				}
 				break;
 			case XMLStreamConstants.NAMESPACE:
 				break;
@@ -278,6 +394,46 @@ public class StAXEncoder implements XMLStreamWriter {
 		// this.flush();
 	}
 
+	/*
+	 * Follows the element in the schema and, if a typed value is expected,
+	 * consumes the element content including its end tag
+	 */
+	protected void encodeTyped(XMLStreamReader xmlStream, QName qn)
+			throws XMLStreamException {
+		typeResolver.startElement(qn.getNamespaceURI(), qn.getLocalPart());
+		String xsiType = xmlStream.getAttributeValue(
+				Constants.XML_SCHEMA_INSTANCE_NS_URI,
+				Constants.XSI_TYPE);
+		if (xsiType != null) {
+			xsiType = xsiType.trim();
+			int colon = xsiType.indexOf(':');
+			String typePfx = colon < 0 ? Constants.XML_DEFAULT_NS_PREFIX
+					: xsiType.substring(0, colon);
+			String typeUri = xmlStream.getNamespaceURI(typePfx);
+			typeResolver.xsiType(typeUri == null ? Constants.XML_NULL_NS_URI
+					: typeUri, xsiType.substring(colon + 1));
+		}
+
+		Datatype dt = getTypedDatatype();
+		if (dt != null) {
+			try {
+				checkPendingATEvents();
+				Value value = Stax2TypedReader.readElementValue(xmlStream, dt);
+				if (value != null) {
+					whiteSpaceFilter.passOn(encoder);
+					encoder.encodeCharacters(value);
+				}
+			} catch (XMLStreamException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new XMLStreamException(e.getLocalizedMessage(), e);
+			}
+			// reader is positioned on the end tag
+			writeEndElement();
+			typeResolver.endElement();
+		}
+	}
+
 	protected void checkPendingATEvents() throws EXIException, IOException {
 		// NS first & ATs
 		if (pendingATs) {
@@ -302,6 +458,7 @@ public class StAXEncoder implements XMLStreamWriter {
 		try {
 			this.exiAttributes.addAttribute(namespaceURI, localName, prefix,
 					value);
+			whiteSpaceFilter.attribute(namespaceURI, value);
 		} catch (Exception e) {
 			throw new XMLStreamException(e.getLocalizedMessage(), e);
 		}
@@ -334,7 +491,13 @@ public class StAXEncoder implements XMLStreamWriter {
 	public void writeCharacters(String text) throws XMLStreamException {
 		try {
 			this.checkPendingATEvents();
-			encoder.encodeCharacters(new StringValue(text));
+			if (whiteSpaceFilter.isIgnorable(text)) {
+				// dropped unless followed by other characters
+				whiteSpaceFilter.defer(text);
+			} else {
+				whiteSpaceFilter.passOn(encoder);
+				encoder.encodeCharacters(new StringValue(text));
+			}
 		} catch (Exception e) {
 			throw new XMLStreamException(e.getLocalizedMessage(), e);
 		}
@@ -349,7 +512,19 @@ public class StAXEncoder implements XMLStreamWriter {
 	 */
 	public void writeCharacters(char[] text, int start, int len)
 			throws XMLStreamException {
-		this.writeCharacters(new String(text, start, len));
+		try {
+			this.checkPendingATEvents();
+			if (whiteSpaceFilter.isIgnorable(text, start, len)) {
+				// dropped unless followed by other characters
+				whiteSpaceFilter.defer(text, start, len);
+			} else {
+				whiteSpaceFilter.passOn(encoder);
+				encoder.encodeCharacters(new StringValue(new String(text,
+						start, len)));
+			}
+		} catch (Exception e) {
+			throw new XMLStreamException(e.getLocalizedMessage(), e);
+		}
 	}
 
 	/*
@@ -366,6 +541,7 @@ public class StAXEncoder implements XMLStreamWriter {
 				// TODO improve EXI API
 				char[] chars = data.toCharArray();
 				encoder.encodeComment(chars, 0, chars.length);
+				whiteSpaceFilter.endOfText();
 			} catch (Exception e) {
 				throw new XMLStreamException(e.getLocalizedMessage(), e);
 			}
@@ -388,6 +564,7 @@ public class StAXEncoder implements XMLStreamWriter {
 
 				encoder.encodeDocType(dtdParser.name, dtdParser.publicID,
 						dtdParser.systemID, dtdParser.text);
+				whiteSpaceFilter.endOfText();
 			} catch (Exception e) {
 				throw new XMLStreamException(e.getLocalizedMessage(), e);
 			}
@@ -404,6 +581,7 @@ public class StAXEncoder implements XMLStreamWriter {
 	public void writeEndDocument() throws XMLStreamException {
 		try {
 			checkPendingATEvents();
+			whiteSpaceFilter.endOfText();
 			encoder.encodeEndDocument();
 			encoder.flush();
 		} catch (Exception e) {
@@ -423,6 +601,7 @@ public class StAXEncoder implements XMLStreamWriter {
 		try {
 			this.checkPendingATEvents();
 			encoder.encodeEndElement();
+			whiteSpaceFilter.endElement();
 		} catch (Exception e) {
 			throw new XMLStreamException(e.getLocalizedMessage(), e);
 		}
@@ -440,6 +619,7 @@ public class StAXEncoder implements XMLStreamWriter {
 			try {
 				this.checkPendingATEvents();
 				encoder.encodeEntityReference(name);
+				whiteSpaceFilter.endOfText();
 			} catch (Exception e) {
 				throw new XMLStreamException(e.getLocalizedMessage(), e);
 			}
@@ -495,6 +675,7 @@ public class StAXEncoder implements XMLStreamWriter {
 			try {
 				this.checkPendingATEvents();
 				encoder.encodeProcessingInstruction(target, data);
+				whiteSpaceFilter.endOfText();
 			} catch (Exception e) {
 				throw new XMLStreamException(e.getLocalizedMessage(), e);
 			}
@@ -533,6 +714,7 @@ public class StAXEncoder implements XMLStreamWriter {
 			// System.out.println("> SE " + localName);
 			checkPendingATEvents();
 			encoder.encodeStartElement(namespaceURI, localName, prefix);
+			whiteSpaceFilter.startElement();
 			pendingATs = true;
 		} catch (Exception e) {
 			throw new XMLStreamException(e.getLocalizedMessage(), e);
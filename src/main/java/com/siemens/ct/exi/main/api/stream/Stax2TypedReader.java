@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.stream;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.stax2.typed.TypedXMLStreamException;
+import org.codehaus.stax2.typed.TypedXMLStreamReader;
+
+import com.siemens.ct.exi.core.datatype.Datatype;
+import com.siemens.ct.exi.core.values.BinaryBase64Value;
+import com.siemens.ct.exi.core.values.BooleanValue;
+import com.siemens.ct.exi.core.values.IntegerValue;
+import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.core.values.Value;
+
+/**
+ * Reads element content typed from a Stax2 <code>TypedXMLStreamReader</code>
+ * (e.g. Woodstox).
+ * 
+ * <p>
+ * Only referenced if the Stax2 API is on the class path.
+ * </p>
+ */
+
+final class Stax2TypedReader {
+
+	private Stax2TypedReader() {
+	}
+
+	static boolean isTypedReader(XMLStreamReader xmlStream) {
+		return xmlStream instanceof TypedXMLStreamReader;
+	}
+
+	/**
+	 * Reads the text-only content of the current start element according to
+	 * the given datatype. Afterwards the reader is positioned on the matching
+	 * end element.
+	 * 
+	 * @return value or <code>null</code> if the element is empty
+	 */
+	static Value readElementValue(XMLStreamReader xmlStream, Datatype datatype)
+			throws XMLStreamException {
+		TypedXMLStreamReader tr = (TypedXMLStreamReader) xmlStream;
+		try {
+			switch (datatype.getBuiltInType()) {
+			case BOOLEAN:
+				return BooleanValue.getBooleanValue(tr.getElementAsBoolean());
+			case BINARY_BASE64:
+				byte[] bytes = tr.getElementAsBinary();
+				return bytes.length == 0 ? null : new BinaryBase64Value(bytes);
+			case NBIT_UNSIGNED_INTEGER:
+			case UNSIGNED_INTEGER:
+			case INTEGER:
+				return IntegerValue.valueOf(tr.getElementAsInteger());
+			default:
+				String s = xmlStream.getElementText();
+				return s.length() == 0 ? null : new StringValue(s);
+			}
+		} catch (TypedXMLStreamException e) {
+			// not a valid lexical value, let the encoder deal with it
+			String s = e.getLexical();
+			return s == null || s.length() == 0 ? null : new StringValue(s);
+		}
+	}
+
+}
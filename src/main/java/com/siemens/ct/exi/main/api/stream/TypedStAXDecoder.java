@@ -0,0 +1,594 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.stream;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+import org.codehaus.stax2.ri.typed.StringBase64Decoder;
+import org.codehaus.stax2.ri.typed.ValueDecoderFactory;
+import org.codehaus.stax2.typed.Base64Variant;
+import org.codehaus.stax2.typed.Base64Variants;
+import org.codehaus.stax2.typed.TypedArrayDecoder;
+import org.codehaus.stax2.typed.TypedValueDecoder;
+import org.codehaus.stax2.typed.TypedXMLStreamException;
+import org.codehaus.stax2.typed.TypedXMLStreamReader;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.values.BinaryBase64Value;
+import com.siemens.ct.exi.core.values.BooleanValue;
+import com.siemens.ct.exi.core.values.DecimalValue;
+import com.siemens.ct.exi.core.values.FloatValue;
+import com.siemens.ct.exi.core.values.IntegerValue;
+import com.siemens.ct.exi.core.values.IntegerValueType;
+import com.siemens.ct.exi.core.values.ListValue;
+import com.siemens.ct.exi.core.values.QNameValue;
+import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.core.values.Value;
+
+/**
+ * StAX decoder offering the Stax2 typed access API.
+ * 
+ * <p>
+ * Element content and attribute values are taken from the decoded EXI values
+ * (e.g., <code>IntegerValue</code>, <code>FloatValue</code>,
+ * <code>DecimalValue</code> or <code>BinaryBase64Value</code>) without
+ * printing them to characters first. Values of other types, e.g. strings in
+ * schema-less mode or date-time values for custom decoders, are parsed from
+ * their lexical form like any other Stax2 reader does.
+ * </p>
+ * 
+ * <p>
+ * Requires the Stax2 API on the class path.
+ * </p>
+ */
+
+public class TypedStAXDecoder extends StAXDecoder implements
+		TypedXMLStreamReader {
+
+	/* lexical decoders, lazily created */
+	protected ValueDecoderFactory decoderFactory;
+	protected StringBase64Decoder base64Decoder;
+
+	/* element content of chunked binary and array reads */
+	protected byte[] pendingBinary;
+	protected int pendingBinaryOffset;
+	protected Value[] pendingItems;
+	protected int pendingItemsOffset;
+
+	public TypedStAXDecoder(EXIFactory noOptionsFactory) throws EXIException {
+		super(noOptionsFactory);
+	}
+
+	@Override
+	protected void initForEachRun() {
+		super.initForEachRun();
+		clearPending();
+	}
+
+	protected void clearPending() {
+		pendingBinary = null;
+		pendingItems = null;
+	}
+
+	@Override
+	public int next() throws XMLStreamException {
+		clearPending();
+		return super.next();
+	}
+
+	protected ValueDecoderFactory getDecoderFactory() {
+		if (decoderFactory == null) {
+			decoderFactory = new ValueDecoderFactory();
+		}
+		return decoderFactory;
+	}
+
+	/*
+	 * Reads the text-only content of the current start element and moves to
+	 * the end element. Returns null for empty content.
+	 */
+	protected Value readElementValue() throws XMLStreamException {
+		if (getEventType() != XMLStreamConstants.START_ELEMENT) {
+			throw new IllegalStateException(
+					"parser must be on START_ELEMENT to read typed content");
+		}
+		Value value = null;
+		StringBuilder sb = null;
+		int ev;
+		while ((ev = super.next()) != XMLStreamConstants.END_ELEMENT) {
+			switch (ev) {
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if (value == null) {
+					// typically a single characters event
+					value = characters;
+				} else {
+					if (sb == null) {
+						sb = new StringBuilder(value.toString());
+					}
+					sb.append(characters.toString());
+				}
+				break;
+			case XMLStreamConstants.ENTITY_REFERENCE:
+				if (sb == null) {
+					sb = new StringBuilder(value == null ? "" : value
+							.toString());
+				}
+				sb.append(getText());
+				break;
+			case XMLStreamConstants.PROCESSING_INSTRUCTION:
+			case XMLStreamConstants.COMMENT:
+				// skipping
+				break;
+			case XMLStreamConstants.START_ELEMENT:
+				throw new XMLStreamException(
+						"element text content may not contain START_ELEMENT",
+						getLocation());
+			default:
+				throw new XMLStreamException("Unexpected event type " + ev,
+						getLocation());
+			}
+		}
+		return sb == null ? value : new StringValue(sb.toString());
+	}
+
+	/*
+	 * Decodes a value from its lexical form
+	 */
+	protected void decodeLexical(Value value, TypedValueDecoder tvd)
+			throws XMLStreamException {
+		String lexical = value == null ? "" : value.toString().trim();
+		try {
+			if (lexical.length() == 0) {
+				tvd.handleEmptyValue();
+			} else {
+				tvd.decode(lexical);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new TypedXMLStreamException(lexical, e.getMessage(),
+					getLocation(), e);
+		}
+	}
+
+	protected static boolean isLong(IntegerValue iv) {
+		return iv.getIntegerValueType() != IntegerValueType.BIG
+				|| iv.bigIntegerValue().bitLength() < 64;
+	}
+
+	protected static boolean isInt(IntegerValue iv) {
+		if (iv.getIntegerValueType() == IntegerValueType.INT) {
+			return true;
+		}
+		if (isLong(iv)) {
+			long l = iv.longValue();
+			return l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE;
+		}
+		return false;
+	}
+
+	protected boolean toBoolean(Value value) throws XMLStreamException {
+		if (value instanceof BooleanValue) {
+			return ((BooleanValue) value).toBoolean();
+		}
+		ValueDecoderFactory.BooleanDecoder dec = getDecoderFactory()
+				.getBooleanDecoder();
+		decodeLexical(value, dec);
+		return dec.getValue();
+	}
+
+	protected int toInt(Value value) throws XMLStreamException {
+		if (value instanceof IntegerValue && isInt((IntegerValue) value)) {
+			return ((IntegerValue) value).intValue();
+		}
+		ValueDecoderFactory.IntDecoder dec = getDecoderFactory()
+				.getIntDecoder();
+		decodeLexical(value, dec);
+		return dec.getValue();
+	}
+
+	protected long toLong(Value value) throws XMLStreamException {
+		if (value instanceof IntegerValue && isLong((IntegerValue) value)) {
+			return ((IntegerValue) value).longValue();
+		}
+		ValueDecoderFactory.LongDecoder dec = getDecoderFactory()
+				.getLongDecoder();
+		decodeLexical(value, dec);
+		return dec.getValue();
+	}
+
+	protected float toFloat(Value value) throws XMLStreamException {
+		if (value instanceof FloatValue) {
+			return ((FloatValue) value).toFloat();
+		}
+		ValueDecoderFactory.FloatDecoder dec = getDecoderFactory()
+				.getFloatDecoder();
+		decodeLexical(value, dec);
+		return dec.getValue();
+	}
+
+	protected double toDouble(Value value) throws XMLStreamException {
+		if (value instanceof FloatValue) {
+			return ((FloatValue) value).toDouble();
+		}
+		ValueDecoderFactory.DoubleDecoder dec = getDecoderFactory()
+				.getDoubleDecoder();
+		decodeLexical(value, dec);
+		return dec.getValue();
+	}
+
+	protected BigInteger toInteger(Value value) throws XMLStreamException {
+		if (value instanceof IntegerValue) {
+			return ((IntegerValue) value).bigIntegerValue();
+		}
+		ValueDecoderFactory.IntegerDecoder dec = getDecoderFactory()
+				.getIntegerDecoder();
+		decodeLexical(value, dec);
+		return dec.getValue();
+	}
+
+	protected BigDecimal toDecimal(Value value) throws XMLStreamException {
+		if (value instanceof DecimalValue) {
+			return ((DecimalValue) value).toBigDecimal();
+		}
+		if (value instanceof IntegerValue) {
+			return new BigDecimal(((IntegerValue) value).bigIntegerValue());
+		}
+		ValueDecoderFactory.DecimalDecoder dec = getDecoderFactory()
+				.getDecimalDecoder();
+		decodeLexical(value, dec);
+		return dec.getValue();
+	}
+
+	protected QName toQName(Value value) throws XMLStreamException {
+		if (value instanceof QNameValue) {
+			QNameValue qv = (QNameValue) value;
+			String pfx = qv.getPrefix();
+			return new QName(qv.getNamespaceUri(), qv.getLocalName(),
+					pfx == null ? "" : pfx);
+		}
+		ValueDecoderFactory.QNameDecoder dec = getDecoderFactory()
+				.getQNameDecoder(getNamespaceContext());
+		decodeLexical(value, dec);
+		return dec.getValue();
+	}
+
+	protected byte[] toBinary(Value value, Base64Variant v)
+			throws XMLStreamException {
+		if (value instanceof BinaryBase64Value) {
+			return ((BinaryBase64Value) value).toBytes();
+		}
+		String lexical = value == null ? "" : value.toString().trim();
+		if (lexical.length() == 0) {
+			return new byte[0];
+		}
+		if (base64Decoder == null) {
+			base64Decoder = new StringBase64Decoder();
+		}
+		try {
+			base64Decoder.init(v, true, lexical);
+			return base64Decoder.decodeCompletely();
+		} catch (IllegalArgumentException e) {
+			throw new TypedXMLStreamException(lexical, e.getMessage(),
+					getLocation(), e);
+		}
+	}
+
+	/*
+	 * List items of a value, either typed or whitespace separated tokens
+	 */
+	protected static Value[] toItems(Value value) {
+		if (value == null) {
+			return new Value[0];
+		}
+		if (value instanceof ListValue) {
+			return ((ListValue) value).toValues();
+		}
+		String s = value.toString().trim();
+		if (s.length() == 0) {
+			return new Value[0];
+		}
+		String[] tokens = s.split("[ \t\n\r]+");
+		Value[] items = new Value[tokens.length];
+		for (int i = 0; i < tokens.length; i++) {
+			items[i] = new StringValue(tokens[i]);
+		}
+		return items;
+	}
+
+	/*
+	 * Number of pending list items of the current element, -1 if all of them
+	 * have been read
+	 */
+	protected int getPendingItems() throws XMLStreamException {
+		if (pendingItems == null) {
+			if (getEventType() == XMLStreamConstants.END_ELEMENT) {
+				return -1;
+			}
+			Value[] items = toItems(readElementValue());
+			pendingItems = items;
+			pendingItemsOffset = 0;
+		}
+		int n = pendingItems.length - pendingItemsOffset;
+		if (n <= 0) {
+			pendingItems = null;
+			return -1;
+		}
+		return n;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.codehaus.stax2.typed.TypedXMLStreamReader
+	 */
+
+	public boolean getElementAsBoolean() throws XMLStreamException {
+		return toBoolean(readElementValue());
+	}
+
+	public int getElementAsInt() throws XMLStreamException {
+		return toInt(readElementValue());
+	}
+
+	public long getElementAsLong() throws XMLStreamException {
+		return toLong(readElementValue());
+	}
+
+	public float getElementAsFloat() throws XMLStreamException {
+		return toFloat(readElementValue());
+	}
+
+	public double getElementAsDouble() throws XMLStreamException {
+		return toDouble(readElementValue());
+	}
+
+	public BigInteger getElementAsInteger() throws XMLStreamException {
+		return toInteger(readElementValue());
+	}
+
+	public BigDecimal getElementAsDecimal() throws XMLStreamException {
+		return toDecimal(readElementValue());
+	}
+
+	public QName getElementAsQName() throws XMLStreamException {
+		return toQName(readElementValue());
+	}
+
+	public byte[] getElementAsBinary() throws XMLStreamException {
+		return getElementAsBinary(Base64Variants.getDefaultVariant());
+	}
+
+	public byte[] getElementAsBinary(Base64Variant variant)
+			throws XMLStreamException {
+		return toBinary(readElementValue(), variant);
+	}
+
+	public void getElementAs(TypedValueDecoder tvd) throws XMLStreamException {
+		decodeLexical(readElementValue(), tvd);
+	}
+
+	public int readElementAsBinary(byte[] resultBuffer, int offset,
+			int maxLength, Base64Variant variant) throws XMLStreamException {
+		if (pendingBinary == null) {
+			if (getEventType() == XMLStreamConstants.END_ELEMENT) {
+				return -1;
+			}
+			byte[] bytes = toBinary(readElementValue(), variant);
+			pendingBinary = bytes;
+			pendingBinaryOffset = 0;
+		}
+		int n = Math.min(maxLength, pendingBinary.length - pendingBinaryOffset);
+		if (n <= 0) {
+			pendingBinary = null;
+			return -1;
+		}
+		System.arraycopy(pendingBinary, pendingBinaryOffset, resultBuffer,
+				offset, n);
+		pendingBinaryOffset += n;
+		return n;
+	}
+
+	public int readElementAsBinary(byte[] resultBuffer, int offset,
+			int maxLength) throws XMLStreamException {
+		return readElementAsBinary(resultBuffer, offset, maxLength,
+				Base64Variants.getDefaultVariant());
+	}
+
+	public int readElementAsIntArray(int[] resultBuffer, int offset,
+			int length) throws XMLStreamException {
+		int n = Math.min(length, getPendingItems());
+		for (int i = 0; i < n; i++) {
+			resultBuffer[offset + i] = toInt(pendingItems[pendingItemsOffset++]);
+		}
+		return n;
+	}
+
+	public int readElementAsLongArray(long[] resultBuffer, int offset,
+			int length) throws XMLStreamException {
+		int n = Math.min(length, getPendingItems());
+		for (int i = 0; i < n; i++) {
+			resultBuffer[offset + i] = toLong(pendingItems[pendingItemsOffset++]);
+		}
+		return n;
+	}
+
+	public int readElementAsFloatArray(float[] resultBuffer, int offset,
+			int length) throws XMLStreamException {
+		int n = Math.min(length, getPendingItems());
+		for (int i = 0; i < n; i++) {
+			resultBuffer[offset + i] = toFloat(pendingItems[pendingItemsOffset++]);
+		}
+		return n;
+	}
+
+	public int readElementAsDoubleArray(double[] resultBuffer, int offset,
+			int length) throws XMLStreamException {
+		int n = Math.min(length, getPendingItems());
+		for (int i = 0; i < n; i++) {
+			resultBuffer[offset + i] = toDouble(pendingItems[pendingItemsOffset++]);
+		}
+		return n;
+	}
+
+	public int readElementAsArray(TypedArrayDecoder tad)
+			throws XMLStreamException {
+		int n = getPendingItems();
+		if (n < 0) {
+			return -1;
+		}
+		int count = 0;
+		while (count < n && tad.hasRoom()) {
+			String lexical = pendingItems[pendingItemsOffset++].toString();
+			count++;
+			try {
+				if (tad.decodeValue(lexical)) {
+					// full
+					break;
+				}
+			} catch (IllegalArgumentException e) {
+				throw new TypedXMLStreamException(lexical, e.getMessage(),
+						getLocation(), e);
+			}
+		}
+		return count;
+	}
+
+	public int getAttributeIndex(String namespaceURI, String localName) {
+		return attributes.getIndex(namespaceURI, localName);
+	}
+
+	public boolean getAttributeAsBoolean(int index) throws XMLStreamException {
+		return toBoolean(attributes.getValue(index));
+	}
+
+	public int getAttributeAsInt(int index) throws XMLStreamException {
+		return toInt(attributes.getValue(index));
+	}
+
+	public long getAttributeAsLong(int index) throws XMLStreamException {
+		return toLong(attributes.getValue(index));
+	}
+
+	public float getAttributeAsFloat(int index) throws XMLStreamException {
+		return toFloat(attributes.getValue(index));
+	}
+
+	public double getAttributeAsDouble(int index) throws XMLStreamException {
+		return toDouble(attributes.getValue(index));
+	}
+
+	public BigInteger getAttributeAsInteger(int index)
+			throws XMLStreamException {
+		return toInteger(attributes.getValue(index));
+	}
+
+	public BigDecimal getAttributeAsDecimal(int index)
+			throws XMLStreamException {
+		return toDecimal(attributes.getValue(index));
+	}
+
+	public QName getAttributeAsQName(int index) throws XMLStreamException {
+		return toQName(attributes.getValue(index));
+	}
+
+	public void getAttributeAs(int index, TypedValueDecoder tvd)
+			throws XMLStreamException {
+		decodeLexical(attributes.getValue(index), tvd);
+	}
+
+	public byte[] getAttributeAsBinary(int index) throws XMLStreamException {
+		return getAttributeAsBinary(index, Base64Variants.getDefaultVariant());
+	}
+
+	public byte[] getAttributeAsBinary(int index, Base64Variant v)
+			throws XMLStreamException {
+		return toBinary(attributes.getValue(index), v);
+	}
+
+	public int[] getAttributeAsIntArray(int index) throws XMLStreamException {
+		Value[] items = toItems(attributes.getValue(index));
+		int[] values = new int[items.length];
+		for (int i = 0; i < items.length; i++) {
+			values[i] = toInt(items[i]);
+		}
+		return values;
+	}
+
+	public long[] getAttributeAsLongArray(int index) throws XMLStreamException {
+		Value[] items = toItems(attributes.getValue(index));
+		long[] values = new long[items.length];
+		for (int i = 0; i < items.length; i++) {
+			values[i] = toLong(items[i]);
+		}
+		return values;
+	}
+
+	public float[] getAttributeAsFloatArray(int index)
+			throws XMLStreamException {
+		Value[] items = toItems(attributes.getValue(index));
+		float[] values = new float[items.length];
+		for (int i = 0; i < items.length; i++) {
+			values[i] = toFloat(items[i]);
+		}
+		return values;
+	}
+
+	public double[] getAttributeAsDoubleArray(int index)
+			throws XMLStreamException {
+		Value[] items = toItems(attributes.getValue(index));
+		double[] values = new double[items.length];
+		for (int i = 0; i < items.length; i++) {
+			values[i] = toDouble(items[i]);
+		}
+		return values;
+	}
+
+	public int getAttributeAsArray(int index, TypedArrayDecoder tad)
+			throws XMLStreamException {
+		Value[] items = toItems(attributes.getValue(index));
+		int count = 0;
+		for (int i = 0; i < items.length; i++) {
+			String lexical = items[i].toString();
+			count++;
+			try {
+				if (tad.decodeValue(lexical)) {
+					// full
+					break;
+				}
+			} catch (IllegalArgumentException e) {
+				throw new TypedXMLStreamException(lexical, e.getMessage(),
+						getLocation(), e);
+			}
+		}
+		return count;
+	}
+
+}
@@ -34,7 +34,6 @@ package com.siemens.ct.exi.main.api.xmlpull;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
-import java.util.ArrayList;
 import java.util.List;
 
 import org.xmlpull.v1.XmlPullParser;
@@ -50,6 +49,7 @@ import com.siemens.ct.exi.core.context.QNameContext;
 import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.grammars.event.EventType;
 import com.siemens.ct.exi.core.values.Value;
+import com.siemens.ct.exi.main.util.DecodedAttributes;
 
 public class EXIPullParser implements XmlPullParser {
 
@@ -65,30 +65,18 @@ public class EXIPullParser implements XmlPullParser {
 	protected EventType preReadEventType;
 
 	protected QNameContext element;
-	protected List<AttributeContainer> attributes;
+	protected DecodedAttributes attributes;
 	protected Value characters;
 	protected DocType docType;
 	protected char[] entityReference;
 	protected char[] comment;
 	protected ProcessingInstruction processingInstruction;
 
-	static class AttributeContainer {
-		final QNameContext qname;
-		final Value value;
-		final String prefix;
-
-		public AttributeContainer(QNameContext qname, Value value, String prefix) {
-			this.qname = qname;
-			this.value = value;
-			this.prefix = prefix;
-		}
-	}
-
 	public EXIPullParser(EXIFactory factory) throws EXIException {
 		this.factory = factory;
 
 		exiStream = factory.createEXIStreamDecoder();
-		this.attributes = new ArrayList<AttributeContainer>();
+		this.attributes = new DecodedAttributes();
 		// this.nsContext = new EXINamespaceContext();
 	}
 
@@ -338,28 +326,28 @@ public class EXIPullParser implements XmlPullParser {
 	}
 
 	public int getAttributeCount() {
-		return attributes.size();
+		return attributes.getLength();
 	}
 
 	public String getAttributeNamespace(int index) {
-		if (index >= 0 && index < attributes.size()) {
-			return attributes.get(index).qname.getNamespaceUri();
+		if (index >= 0 && index < attributes.getLength()) {
+			return attributes.getNamespaceURI(index);
 		} else {
 			return null;
 		}
 	}
 
 	public String getAttributeName(int index) {
-		if (index >= 0 && index < attributes.size()) {
-			return attributes.get(index).qname.getLocalName();
+		if (index >= 0 && index < attributes.getLength()) {
+			return attributes.getLocalName(index);
 		} else {
 			return null;
 		}
 	}
 
 	public String getAttributePrefix(int index) {
-		if (index >= 0 && index < attributes.size()) {
-			return attributes.get(index).prefix;
+		if (index >= 0 && index < attributes.getLength()) {
+			return attributes.getPrefix(index);
 		} else {
 			return null;
 		}
@@ -374,8 +362,8 @@ public class EXIPullParser implements XmlPullParser {
 	}
 
 	public String getAttributeValue(int index) {
-		if (index >= 0 && index < attributes.size()) {
-			return attributes.get(index).value.toString();
+		if (index >= 0 && index < attributes.getLength()) {
+			return attributes.getValueAsString(index);
 		} else {
 			return null;
 		}
@@ -389,14 +377,7 @@ public class EXIPullParser implements XmlPullParser {
 			namespace = "";
 		}
 
-		for (int i = 0; i < attributes.size(); i++) {
-			if (attributes.get(i).qname.getNamespaceUri().equals(namespace)
-					&& attributes.get(i).qname.getLocalName().equals(name)) {
-				return attributes.get(i).value.toString();
-			}
-		}
-
-		return null;
+		return attributes.getValueAsString(namespace, name);
 	}
 
 	public int getEventType() throws XmlPullParserException {
@@ -472,14 +453,12 @@ public class EXIPullParser implements XmlPullParser {
 			break;
 		/* ATTRIBUTES */
 		case ATTRIBUTE_XSI_NIL:
-			attributes.add(new AttributeContainer(decoder
-					.decodeAttributeXsiNil(), decoder.getAttributeValue(),
-					decoder.getAttributePrefix()));
+			attributes.add(decoder.decodeAttributeXsiNil(),
+					decoder.getAttributePrefix(), decoder.getAttributeValue());
 			break;
 		case ATTRIBUTE_XSI_TYPE:
-			attributes.add(new AttributeContainer(decoder
-					.decodeAttributeXsiType(), decoder.getAttributeValue(),
-					decoder.getAttributePrefix()));
+			attributes.add(decoder.decodeAttributeXsiType(),
+					decoder.getAttributePrefix(), decoder.getAttributeValue());
 			break;
 		case ATTRIBUTE:
 		case ATTRIBUTE_NS:
@@ -487,8 +466,8 @@ public class EXIPullParser implements XmlPullParser {
 		case ATTRIBUTE_GENERIC_UNDECLARED:
 		case ATTRIBUTE_INVALID_VALUE:
 		case ATTRIBUTE_ANY_INVALID_VALUE:
-			attributes.add(new AttributeContainer(decoder.decodeAttribute(),
-					decoder.getAttributeValue(), decoder.getAttributePrefix()));
+			attributes.add(decoder.decodeAttribute(),
+					decoder.getAttributePrefix(), decoder.getAttributeValue());
 			break;
 		/* NAMESPACE DECLARATION */
 		case NAMESPACE_DECLARATION:
@@ -34,6 +34,7 @@ package com.siemens.ct.exi.main.api.xmlpull;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -47,6 +48,7 @@ import com.siemens.ct.exi.core.attributes.AttributeList;
 import com.siemens.ct.exi.core.container.NamespaceDeclaration;
 import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.main.util.ChannelOutputStream;
 
 public class EXISerializer implements XmlSerializer {
 
@@ -113,6 +115,22 @@ public class EXISerializer implements XmlSerializer {
 		}
 	}
 
+	/**
+	 * Sets a NIO channel as output, buffered by a
+	 * {@link ChannelOutputStream} of default size.
+	 * 
+	 * @param channel
+	 *            output channel
+	 * @throws IOException
+	 *             IO exception
+	 * @throws IllegalArgumentException
+	 *             if the EXI header cannot be written
+	 */
+	public void setOutput(WritableByteChannel channel) throws IOException,
+			IllegalArgumentException {
+		setOutput(new ChannelOutputStream(channel), null);
+	}
+
 	public void setOutput(Writer writer) throws IOException,
 			IllegalArgumentException, IllegalStateException {
 		throw new IllegalArgumentException(
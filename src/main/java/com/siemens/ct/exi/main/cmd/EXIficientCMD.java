@@ -27,17 +27,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.StringTokenizer;
 
 import javax.xml.namespace.QName;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.sax.SAXSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.xml.sax.DTDHandler;
 import org.xml.sax.InputSource;
@@ -53,7 +49,8 @@ import com.siemens.ct.exi.core.exceptions.EXIException;
 import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
 import com.siemens.ct.exi.grammars.GrammarFactory;
 import com.siemens.ct.exi.main.api.sax.EXIResult;
-import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.util.ByteBufferInputStream;
+import com.siemens.ct.exi.main.util.EXIToXMLWriter;
 import com.siemens.ct.exi.main.util.FragmentUtilities;
 import com.siemens.ct.exi.main.util.NoEntityResolver;
 import com.siemens.ct.exi.main.util.SkipRootElementXMLReader;
@@ -608,23 +605,22 @@ public class EXIficientCMD {
 
 	protected void decode(String input, EXIFactory exiFactory, String output)
 			throws EXIException, TransformerException, IOException {
-		OutputStream xmlOutput = new FileOutputStream(output);
-
-		TransformerFactory tf = TransformerFactory.newInstance();
-		Transformer transformer = tf.newTransformer();
-		SAXSource exiSource = new SAXSource(new InputSource(
-				new FileInputStream(input)));
-		exiSource.setXMLReader(new SAXFactory(exiFactory).createEXIReader());
-
-		if (exiFactory.isFragment()) {
-			transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION,
-					"yes");
+		// large files are memory-mapped
+		InputStream exiInput = ByteBufferInputStream.open(new File(input));
+		try {
+			OutputStream xmlOutput = new FileOutputStream(output);
+			try {
+				// EXI events are written as XML text without SAX/TrAX in
+				// between
+				EXIToXMLWriter xmlWriter = new EXIToXMLWriter(exiFactory);
+				xmlWriter.write(exiInput, xmlOutput);
+			} finally {
+				xmlOutput.flush();
+				xmlOutput.close();
+			}
+		} finally {
+			exiInput.close();
 		}
-
-		transformer.transform(exiSource, new StreamResult(xmlOutput));
-
-		xmlOutput.flush();
-		xmlOutput.close();
 	}
 
 	protected XMLReader getXMLReader() throws SAXException {
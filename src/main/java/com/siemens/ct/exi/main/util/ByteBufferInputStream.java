@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.InvalidMarkException;
+import java.nio.channels.FileChannel;
+
+import com.siemens.ct.exi.core.DecodingOptions;
+
+/**
+ * Input stream reading from a <code>ByteBuffer</code>, e.g. a memory-mapped
+ * file region.
+ * 
+ * <p>
+ * Bytes are taken from the buffer directly, without an intermediate copy.
+ * Reading advances the position of the given buffer.
+ * </p>
+ * 
+ * <p>
+ * EXI decoders wrap any stream that is neither a
+ * <code>BufferedInputStream</code> nor a <code>PushbackInputStream</code>
+ * into a <code>BufferedInputStream</code>. To avoid that copy, hand the
+ * stream to a decoder by means of {@link #pushback(ByteBuffer)}, as
+ * {@link #open(File)} does.
+ * </p>
+ */
+
+public class ByteBufferInputStream extends InputStream {
+
+	/**
+	 * Files smaller than this are read through a buffered stream, mapping
+	 * does not pay off for them.
+	 */
+	public static final long DEFAULT_MAP_THRESHOLD = 1 << 16;
+
+	protected ByteBuffer buffer;
+
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new NullPointerException();
+		}
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Opens a file for reading. Files of at least
+	 * {@link #DEFAULT_MAP_THRESHOLD} bytes that can be mapped as a whole are
+	 * memory-mapped, others are read via a buffered stream. Either stream is
+	 * taken as is by the EXI decoders.
+	 * 
+	 * @param file
+	 *            input file
+	 * @return input stream
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public static InputStream open(File file) throws IOException {
+		long size = file.length();
+		if (size >= DEFAULT_MAP_THRESHOLD && size <= Integer.MAX_VALUE) {
+			return new PushbackInputStream(map(file),
+					DecodingOptions.PUSHBACK_BUFFER_SIZE);
+		} else {
+			return new BufferedInputStream(new FileInputStream(file));
+		}
+	}
+
+	/**
+	 * Maps the whole file (up to 2GB) read-only into memory. The file is
+	 * closed right away, the mapping stays valid until the returned stream
+	 * is garbage collected.
+	 * 
+	 * @param file
+	 *            input file
+	 * @return stream reading the mapped file
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public static ByteBufferInputStream map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			return new ByteBufferInputStream(channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Creates a stream reading the given buffer that EXI decoders do not
+	 * wrap again. The pushback buffer has the size required for compressed
+	 * streams ({@link DecodingOptions#PUSHBACK_BUFFER_SIZE}).
+	 * 
+	 * @param buffer
+	 *            byte buffer
+	 * @return pushback stream reading the buffer
+	 */
+	public static PushbackInputStream pushback(ByteBuffer buffer) {
+		return new PushbackInputStream(new ByteBufferInputStream(buffer),
+				DecodingOptions.PUSHBACK_BUFFER_SIZE);
+	}
+
+	public ByteBuffer getByteBuffer() {
+		return buffer;
+	}
+
+	@Override
+	public int read() {
+		return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		int rem = buffer.remaining();
+		if (rem == 0) {
+			return -1;
+		}
+		if (len > rem) {
+			len = rem;
+		}
+		buffer.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public long skip(long n) {
+		if (n <= 0) {
+			return 0;
+		}
+		int k = (int) Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + k);
+		return k;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public void mark(int readlimit) {
+		buffer.mark();
+	}
+
+	@Override
+	public void reset() throws IOException {
+		try {
+			buffer.reset();
+		} catch (InvalidMarkException e) {
+			throw new IOException("Stream not marked");
+		}
+	}
+
+	@Override
+	public void close() {
+		// release buffer (mapped regions are unmapped when collected)
+		buffer = ByteBuffer.allocate(0);
+	}
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Buffered output stream on top of a NIO <code>WritableByteChannel</code> or
+ * a caller-supplied <code>ByteBuffer</code>.
+ * 
+ * <p>
+ * In channel mode bytes are collected in a buffer of explicit size and
+ * written to the channel when the buffer is full or on {@link #flush()}.
+ * Writes that exceed the buffer are passed on directly (combined with the
+ * buffered bytes in one gathering write if the channel supports it). EXI
+ * encoders recognize this stream as buffered and do not wrap it again.
+ * </p>
+ * 
+ * <p>
+ * In buffer mode (no channel) the given buffer is the final target. An
+ * <code>IOException</code> is thrown if it has no space left. After
+ * encoding, the written bytes are located between the initial position of
+ * the buffer and its current position.
+ * </p>
+ */
+
+public class ChannelOutputStream extends OutputStream {
+
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	protected final WritableByteChannel channel;
+	protected final ByteBuffer buffer;
+	protected final ByteBuffer[] gather;
+
+	public ChannelOutputStream(WritableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	public ChannelOutputStream(WritableByteChannel channel, int bufferSize) {
+		this(channel, ByteBuffer.allocate(bufferSize));
+	}
+
+	/**
+	 * Creates a stream writing to the channel using the given (possibly
+	 * direct) buffer for buffering.
+	 * 
+	 * @param channel
+	 *            target channel, or <code>null</code> if the buffer is the
+	 *            target
+	 * @param buffer
+	 *            buffer, used in full if a channel is given
+	 */
+	public ChannelOutputStream(WritableByteChannel channel, ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new IllegalArgumentException("Buffer must not be null");
+		}
+		if (channel != null) {
+			if (buffer.capacity() == 0) {
+				throw new IllegalArgumentException("Buffer has no space");
+			}
+			buffer.clear();
+		}
+		this.channel = channel;
+		this.buffer = buffer;
+		this.gather = (channel instanceof GatheringByteChannel) ? new ByteBuffer[2]
+				: null;
+	}
+
+	/**
+	 * Creates a stream writing into the given buffer only.
+	 * 
+	 * @param buffer
+	 *            target buffer
+	 */
+	public ChannelOutputStream(ByteBuffer buffer) {
+		this(null, buffer);
+	}
+
+	public WritableByteChannel getChannel() {
+		return channel;
+	}
+
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			drain();
+		}
+		buffer.put((byte) b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len <= buffer.remaining()) {
+			buffer.put(b, off, len);
+		} else if (channel == null) {
+			throw new IOException("Buffer overflow, " + len
+					+ " bytes to write but only " + buffer.remaining()
+					+ " bytes left", new BufferOverflowException());
+		} else if (len < buffer.capacity() >> 1) {
+			// small write, fill up
+			int n = buffer.remaining();
+			buffer.put(b, off, n);
+			drain();
+			buffer.put(b, off + n, len - n);
+		} else {
+			// large write, skip copying
+			ByteBuffer src = ByteBuffer.wrap(b, off, len);
+			if (gather != null && buffer.position() > 0) {
+				buffer.flip();
+				gather[0] = buffer;
+				gather[1] = src;
+				try {
+					while (src.hasRemaining()) {
+						((GatheringByteChannel) channel).write(gather);
+					}
+				} finally {
+					gather[0] = gather[1] = null;
+					buffer.clear();
+				}
+			} else {
+				drain();
+				while (src.hasRemaining()) {
+					channel.write(src);
+				}
+			}
+		}
+	}
+
+	protected void drain() throws IOException {
+		if (channel == null) {
+			throw new IOException("Buffer overflow",
+					new BufferOverflowException());
+		}
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (channel != null && buffer.position() > 0) {
+			drain();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			if (channel != null) {
+				channel.close();
+			}
+		}
+	}
+
+}
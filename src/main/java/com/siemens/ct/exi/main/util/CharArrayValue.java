@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import com.siemens.ct.exi.core.values.AbstractValue;
+import com.siemens.ct.exi.core.values.ValueType;
+
+/**
+ * String value that is backed by a region of a character array.
+ *
+ * <p>
+ * The characters are not copied. The owner of the array is responsible for
+ * not modifying the region as long as the value is in use and may re-use the
+ * instance by setting a new region.
+ * </p>
+ * 
+ * <p>
+ * Note: this saves the String of the caller only. The EXI encoder writes
+ * strings by means of the string table and creates a String per value
+ * anyway, either its own whitespace-processed copy or, if lexical values
+ * or whitespace are preserved, by calling {@link #toString()} once.
+ * </p>
+ */
+
+public class CharArrayValue extends AbstractValue {
+
+	protected char[] ch;
+	protected int start;
+	protected int length;
+
+	/* lazily created string representation */
+	protected String sValue;
+
+	public CharArrayValue() {
+		super(ValueType.STRING);
+	}
+
+	public CharArrayValue(char[] ch, int start, int length) {
+		this();
+		setCharacters(ch, start, length);
+	}
+
+	public void setCharacters(char[] ch, int start, int length) {
+		this.ch = ch;
+		this.start = start;
+		this.length = length;
+		this.sValue = null;
+	}
+
+	public int getCharactersLength() {
+		return length;
+	}
+
+	public void getCharacters(char[] cbuffer, int offset) {
+		System.arraycopy(ch, start, cbuffer, offset, length);
+	}
+
+	@Override
+	public String toString() {
+		if (sValue == null) {
+			sValue = new String(ch, start, length);
+		}
+		return sValue;
+	}
+
+	@Override
+	public String toString(char[] cbuffer, int offset) {
+		return toString();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == null) {
+			return false;
+		}
+		return this == o ? true : toString().equals(o.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+}
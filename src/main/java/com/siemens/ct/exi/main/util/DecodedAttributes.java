@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import com.siemens.ct.exi.core.context.QNameContext;
+import com.siemens.ct.exi.core.values.Value;
+
+/**
+ * Attributes of the current start element as reported by pull APIs (StAX,
+ * XmlPull).
+ * 
+ * <p>
+ * Names, prefixes and values are held in parallel arrays that are re-used
+ * for all elements, so adding an attribute does not allocate. The String
+ * representation of a value is created on first access and kept until the
+ * attributes are cleared. Lookups by name scan the attributes for small
+ * elements and use an open-addressing index on the local-name for elements
+ * with more than <code>LINEAR_LOOKUP_MAX</code> attributes.
+ * </p>
+ */
+
+public class DecodedAttributes {
+
+	/* number of attributes up to which lookups scan the arrays */
+	protected static final int LINEAR_LOOKUP_MAX = 8;
+
+	protected QNameContext[] qnames;
+	protected String[] prefixes;
+	protected Value[] values;
+	protected String[] strings;
+	protected int size;
+
+	/* open-addressing index, attribute position + 1 (0 for empty slots) */
+	protected int[] index;
+	protected boolean indexed;
+
+	public DecodedAttributes() {
+		qnames = new QNameContext[8];
+		prefixes = new String[8];
+		values = new Value[8];
+		strings = new String[8];
+	}
+
+	public void add(QNameContext qnc, String prefix, Value value) {
+		if (size == qnames.length) {
+			grow();
+		}
+		qnames[size] = qnc;
+		prefixes[size] = prefix;
+		values[size] = value;
+		size++;
+		indexed = false;
+	}
+
+	protected void grow() {
+		int newLength = size << 1;
+		QNameContext[] newQNames = new QNameContext[newLength];
+		System.arraycopy(qnames, 0, newQNames, 0, size);
+		qnames = newQNames;
+		String[] newPrefixes = new String[newLength];
+		System.arraycopy(prefixes, 0, newPrefixes, 0, size);
+		prefixes = newPrefixes;
+		Value[] newValues = new Value[newLength];
+		System.arraycopy(values, 0, newValues, 0, size);
+		values = newValues;
+		String[] newStrings = new String[newLength];
+		System.arraycopy(strings, 0, newStrings, 0, size);
+		strings = newStrings;
+	}
+
+	public void clear() {
+		// do not retain values
+		for (int i = 0; i < size; i++) {
+			qnames[i] = null;
+			prefixes[i] = null;
+			values[i] = null;
+			strings[i] = null;
+		}
+		size = 0;
+		indexed = false;
+	}
+
+	public int getLength() {
+		return size;
+	}
+
+	protected final void checkIndex(int i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: "
+					+ size);
+		}
+	}
+
+	public QNameContext getQNameContext(int i) {
+		checkIndex(i);
+		return qnames[i];
+	}
+
+	public String getNamespaceURI(int i) {
+		checkIndex(i);
+		return qnames[i].getNamespaceUri();
+	}
+
+	public String getLocalName(int i) {
+		checkIndex(i);
+		return qnames[i].getLocalName();
+	}
+
+	public String getPrefix(int i) {
+		checkIndex(i);
+		return prefixes[i];
+	}
+
+	public Value getValue(int i) {
+		checkIndex(i);
+		return values[i];
+	}
+
+	public String getValueAsString(int i) {
+		checkIndex(i);
+		String s = strings[i];
+		if (s == null) {
+			s = strings[i] = values[i].toString();
+		}
+		return s;
+	}
+
+	/**
+	 * Returns the position of the first attribute with the given name or -1.
+	 * 
+	 * @param namespaceURI
+	 *            namespace URI, <code>null</code> matches any namespace
+	 * @param localName
+	 *            local-name
+	 * @return position or -1
+	 */
+	public int getIndex(String namespaceURI, String localName) {
+		if (size > LINEAR_LOOKUP_MAX) {
+			if (!indexed) {
+				buildIndex();
+			}
+			int mask = index.length - 1;
+			for (int slot = hash(localName) & mask;; slot = (slot + 1) & mask) {
+				int i = index[slot] - 1;
+				if (i < 0) {
+					return -1;
+				}
+				if (matches(i, namespaceURI, localName)) {
+					return i;
+				}
+			}
+		} else {
+			for (int i = 0; i < size; i++) {
+				if (matches(i, namespaceURI, localName)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	protected final boolean matches(int i, String namespaceURI,
+			String localName) {
+		QNameContext qnc = qnames[i];
+		return qnc.getLocalName().equals(localName)
+				&& (namespaceURI == null || qnc.getNamespaceUri().equals(
+						namespaceURI));
+	}
+
+	/*
+	 * Linear probing keeps attributes with the same local-name in document
+	 * order along the probe sequence.
+	 */
+	protected void buildIndex() {
+		int len = 16;
+		while (len < (size << 1)) {
+			len <<= 1;
+		}
+		if (index == null || index.length < len || index.length > (len << 2)) {
+			index = new int[len];
+		} else {
+			len = index.length;
+			for (int i = 0; i < len; i++) {
+				index[i] = 0;
+			}
+		}
+		int mask = len - 1;
+		for (int i = 0; i < size; i++) {
+			int slot = hash(qnames[i].getLocalName()) & mask;
+			while (index[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			index[slot] = i + 1;
+		}
+		indexed = true;
+	}
+
+	protected static int hash(String localName) {
+		int h = localName.hashCode();
+		// spread bits
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Returns the value of the first attribute with the given name or
+	 * <code>null</code>.
+	 * 
+	 * @param namespaceURI
+	 *            namespace URI, <code>null</code> matches any namespace
+	 * @param localName
+	 *            local-name
+	 * @return value as String or <code>null</code>
+	 */
+	public String getValueAsString(String namespaceURI, String localName) {
+		int i = getIndex(namespaceURI, localName);
+		return i < 0 ? null : getValueAsString(i);
+	}
+
+}
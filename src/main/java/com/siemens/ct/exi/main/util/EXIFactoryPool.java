@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+
+/**
+ * Thread-safe pool of re-usable EXI processors (encoders, decoders) keyed by
+ * the <code>EXIFactory</code> they have been created for.
+ * 
+ * <p>
+ * Factories are compared by identity. A factory must not be modified once
+ * instances have been pooled for it. Every borrowed instance is expected to
+ * be returned via {@link #release(Object)}. Instances that have been
+ * borrowed but not yet returned can be inspected with
+ * {@link #getLeaks()}, optionally including the stack trace of the borrowing
+ * call (see {@link #setLeakTracking(boolean)}).
+ * </p>
+ * 
+ * @param <T>
+ *            type of the pooled instances
+ */
+
+public abstract class EXIFactoryPool<T> {
+
+	public static final int DEFAULT_MAX_IDLE = 16;
+
+	/* idle instances per factory */
+	protected final Map<EXIFactory, Deque<T>> idle;
+
+	/* borrowed instances and their borrow site */
+	protected final Map<T, Borrow> borrowed;
+
+	protected int maxIdle;
+	protected boolean leakTracking;
+
+	public EXIFactoryPool() {
+		this(DEFAULT_MAX_IDLE);
+	}
+
+	public EXIFactoryPool(int maxIdle) {
+		idle = new IdentityHashMap<EXIFactory, Deque<T>>();
+		borrowed = new IdentityHashMap<T, Borrow>();
+		setMaxIdle(maxIdle);
+	}
+
+	/**
+	 * Creates a new instance for the given factory.
+	 * 
+	 * @param factory
+	 *            EXI factory
+	 * @return new instance
+	 * @throws EXIException
+	 *             EXI exception
+	 */
+	protected abstract T create(EXIFactory factory) throws EXIException;
+
+	/**
+	 * Called for an instance that is returned to the pool, e.g. to release
+	 * references to handlers or streams. Does nothing by default.
+	 * 
+	 * @param t
+	 *            returned instance
+	 */
+	protected void passivate(T t) {
+	}
+
+	/**
+	 * Returns an idle instance for the given factory or creates a new one.
+	 * 
+	 * @param factory
+	 *            EXI factory
+	 * @return pooled instance
+	 * @throws EXIException
+	 *             EXI exception
+	 */
+	public T borrow(EXIFactory factory) throws EXIException {
+		if (factory == null) {
+			throw new IllegalArgumentException("EXIFactory must not be null");
+		}
+		T t = null;
+		synchronized (this) {
+			Deque<T> d = idle.get(factory);
+			if (d != null) {
+				t = d.pollFirst();
+			}
+		}
+		if (t == null) {
+			// create outside of lock, may involve grammar work
+			t = create(factory);
+		}
+		synchronized (this) {
+			borrowed.put(t, new Borrow(factory,
+					leakTracking ? new Throwable("Borrowed here") : null));
+		}
+		return t;
+	}
+
+	/**
+	 * Returns a borrowed instance to the pool.
+	 * 
+	 * @param t
+	 *            instance previously obtained via {@link #borrow(EXIFactory)}
+	 * @throws IllegalArgumentException
+	 *             if the instance is not borrowed from this pool (e.g.
+	 *             returned twice)
+	 */
+	public void release(T t) {
+		Borrow b;
+		synchronized (this) {
+			b = borrowed.remove(t);
+			if (b == null) {
+				throw new IllegalArgumentException(
+						"Instance not borrowed from this pool: " + t);
+			}
+		}
+		passivate(t);
+		synchronized (this) {
+			Deque<T> d = idle.get(b.factory);
+			if (d == null) {
+				d = new ArrayDeque<T>();
+				idle.put(b.factory, d);
+			}
+			if (d.size() < maxIdle) {
+				d.addFirst(t);
+			}
+		}
+	}
+
+	/**
+	 * Drops a borrowed instance, e.g. after a failure left it in an unknown
+	 * state.
+	 * 
+	 * @param t
+	 *            instance previously obtained via {@link #borrow(EXIFactory)}
+	 */
+	public synchronized void invalidate(T t) {
+		borrowed.remove(t);
+	}
+
+	public synchronized void setMaxIdle(int maxIdle) {
+		if (maxIdle < 0) {
+			throw new IllegalArgumentException("maxIdle < 0: " + maxIdle);
+		}
+		this.maxIdle = maxIdle;
+	}
+
+	public synchronized int getMaxIdle() {
+		return maxIdle;
+	}
+
+	/**
+	 * Enables recording of the stack trace of each borrow call so that
+	 * leaked instances can be traced back to their origin. Costly, meant for
+	 * debugging.
+	 * 
+	 * @param leakTracking
+	 *            whether to record borrow sites
+	 */
+	public synchronized void setLeakTracking(boolean leakTracking) {
+		this.leakTracking = leakTracking;
+	}
+
+	public synchronized boolean isLeakTracking() {
+		return leakTracking;
+	}
+
+	public synchronized int getIdleCount(EXIFactory factory) {
+		Deque<T> d = idle.get(factory);
+		return d == null ? 0 : d.size();
+	}
+
+	public synchronized int getBorrowedCount() {
+		return borrowed.size();
+	}
+
+	/**
+	 * Reports instances that have been borrowed and not (yet) returned. With
+	 * leak tracking enabled the throwables carry the stack trace of the
+	 * borrowing call.
+	 * 
+	 * @return one throwable per outstanding instance
+	 */
+	public synchronized List<Throwable> getLeaks() {
+		List<Throwable> leaks = new ArrayList<Throwable>(borrowed.size());
+		for (Map.Entry<T, Borrow> e : borrowed.entrySet()) {
+			Throwable t = new Throwable("Not returned: " + e.getKey());
+			if (e.getValue().site != null) {
+				t.initCause(e.getValue().site);
+			}
+			leaks.add(t);
+		}
+		return leaks;
+	}
+
+	/**
+	 * Removes all idle instances.
+	 */
+	public synchronized void clear() {
+		idle.clear();
+	}
+
+	static final class Borrow {
+		final EXIFactory factory;
+		final Throwable site;
+
+		Borrow(EXIFactory factory, Throwable site) {
+			this.factory = factory;
+			this.site = site;
+		}
+	}
+
+}
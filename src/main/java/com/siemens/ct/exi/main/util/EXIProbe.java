@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.DecodingOptions;
+import com.siemens.ct.exi.core.EXIBodyDecoder;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.SchemaIdResolver;
+import com.siemens.ct.exi.core.coder.EXIHeaderDecoder;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.core.grammars.event.EventType;
+import com.siemens.ct.exi.core.io.channel.BitDecoderChannel;
+import com.siemens.ct.exi.core.values.BooleanValue;
+import com.siemens.ct.exi.core.values.Value;
+import com.siemens.ct.exi.main.helpers.DefaultSchemaIdResolver;
+
+/**
+ * Reads the EXI header and the root element of an EXI stream without
+ * consuming the stream, e.g. to route EXI messages.
+ * 
+ * <p>
+ * The stream is handed back untouched: a <code>PushbackInputStream</code>
+ * gets all read bytes pushed back (its buffer needs to be large enough), any
+ * other stream needs to support <code>mark</code>/<code>reset</code> and a
+ * <code>ByteBuffer</code> keeps its position. Afterwards the stream can be
+ * passed to a decoder as is.
+ * </p>
+ * 
+ * <p>
+ * Grammars for a schemaId found in the header are resolved once and kept by
+ * the probe, up to {@link #MAX_CACHED_GRAMMARS} schemaIds (least recently
+ * used ones are dropped first). Body decoders are re-used for streams without options. A probe
+ * must not be used by several threads at the same time.
+ * </p>
+ */
+
+public class EXIProbe {
+
+	/**
+	 * Result of probing an EXI stream.
+	 */
+	public static final class Result {
+		final boolean cookie;
+		final EXIFactory optionsFactory;
+		final String schemaId;
+		final QName rootElement;
+
+		Result(boolean cookie, EXIFactory optionsFactory, String schemaId,
+				QName rootElement) {
+			this.cookie = cookie;
+			this.optionsFactory = optionsFactory;
+			this.schemaId = schemaId;
+			this.rootElement = rootElement;
+		}
+
+		/**
+		 * @return true if the stream starts with the EXI cookie ($EXI)
+		 */
+		public boolean hasCookie() {
+			return cookie;
+		}
+
+		/**
+		 * @return true if the header carries EXI options
+		 */
+		public boolean hasOptions() {
+			return optionsFactory != null;
+		}
+
+		/**
+		 * @return factory with the options of the header or null if the
+		 *         header carries no options
+		 */
+		public EXIFactory getOptionsFactory() {
+			return optionsFactory;
+		}
+
+		/**
+		 * @return schemaId of the header options or null if none is given (or
+		 *         schemaId is nil)
+		 */
+		public String getSchemaId() {
+			return schemaId;
+		}
+
+		/**
+		 * @return qualified name of the first start element or null if the
+		 *         stream has no element
+		 */
+		public QName getRootElement() {
+			return rootElement;
+		}
+
+		@Override
+		public String toString() {
+			return "cookie=" + cookie + ", options=" + hasOptions()
+					+ ", schemaId=" + schemaId + ", root=" + rootElement;
+		}
+	}
+
+	/*
+	 * Header decoder that keeps the schemaId and resolves grammars only once
+	 * per schemaId.
+	 */
+	protected class ProbeHeaderDecoder extends EXIHeaderDecoder {
+		String schemaId;
+
+		public ProbeHeaderDecoder() throws EXIException {
+			super();
+		}
+
+		@Override
+		protected void handleCharacters(Value value, EXIFactory f)
+				throws EXIException {
+			if (SCHEMA_ID.equals(lastSE.getLocalName())) {
+				schemaId = value.toString();
+				if (!f.getDecodingOptions().isOptionEnabled(
+						DecodingOptions.IGNORE_SCHEMA_ID)) {
+					f.setGrammars(getGrammars(schemaId));
+				}
+			} else {
+				super.handleCharacters(value, f);
+			}
+		}
+
+		@Override
+		protected void handleXsiNil(Value value, EXIFactory f)
+				throws EXIException {
+			if (SCHEMA_ID.equals(lastSE.getLocalName())
+					&& value instanceof BooleanValue
+					&& ((BooleanValue) value).toBoolean()) {
+				schemaId = null;
+			}
+			super.handleXsiNil(value, f);
+		}
+	}
+
+	/*
+	 * Keeps all bytes read so that they can be pushed back.
+	 */
+	protected static class RecordingInputStream extends FilterInputStream {
+		byte[] buf = new byte[DecodingOptions.PUSHBACK_BUFFER_SIZE];
+		int count;
+
+		public RecordingInputStream() {
+			super(null);
+		}
+
+		void setInputStream(InputStream in) {
+			this.in = in;
+			this.count = 0;
+		}
+
+		void ensureCapacity(int reqSize) {
+			if (reqSize > buf.length) {
+				byte[] newBuf = new byte[Math.max(buf.length << 1, reqSize)];
+				System.arraycopy(buf, 0, newBuf, 0, count);
+				buf = newBuf;
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b >= 0) {
+				ensureCapacity(count + 1);
+				buf[count++] = (byte) b;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if (n > 0) {
+				ensureCapacity(count + n);
+				System.arraycopy(b, off, buf, count, n);
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = 0;
+			while (skipped < n && read() >= 0) {
+				skipped++;
+			}
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() {
+			// the underlying stream is owned by the caller
+		}
+	}
+
+	/**
+	 * Maximum number of schemaIds the resolved grammars are kept for. The
+	 * schemaId is taken from the stream and cannot be trusted to come from a
+	 * small set.
+	 */
+	public static final int MAX_CACHED_GRAMMARS = 16;
+
+	protected final EXIFactory noOptionsFactory;
+	protected final ProbeHeaderDecoder headerDecoder;
+	protected final RecordingInputStream recorder;
+	protected final Map<String, Grammars> grammars;
+	/* decoder for streams without options, re-used */
+	protected EXIBodyDecoder noOptionsDecoder;
+
+	public EXIProbe(EXIFactory noOptionsFactory) throws EXIException {
+		this.noOptionsFactory = noOptionsFactory;
+		if (noOptionsFactory.getSchemaIdResolver() == null) {
+			// set default schemaId resolver
+			noOptionsFactory.setSchemaIdResolver(new DefaultSchemaIdResolver());
+		}
+		this.headerDecoder = new ProbeHeaderDecoder();
+		this.recorder = new RecordingInputStream();
+		this.grammars = new LinkedHashMap<String, Grammars>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Grammars> e) {
+				return size() > MAX_CACHED_GRAMMARS;
+			}
+		};
+	}
+
+	protected Grammars getGrammars(String schemaId) throws EXIException {
+		Grammars g = grammars.get(schemaId);
+		if (g == null) {
+			SchemaIdResolver sir = noOptionsFactory.getSchemaIdResolver();
+			g = sir.resolveSchemaId(schemaId);
+			grammars.put(schemaId, g);
+		}
+		return g;
+	}
+
+	/**
+	 * Probes an EXI stream and restores it afterwards.
+	 * 
+	 * @param is
+	 *            <code>PushbackInputStream</code> or stream supporting
+	 *            <code>mark</code>/<code>reset</code>
+	 * @return probe result
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception, e.g. the push back buffer is too small
+	 */
+	public Result probe(InputStream is) throws EXIException, IOException {
+		if (is instanceof PushbackInputStream) {
+			recorder.setInputStream(is);
+			boolean probed = false;
+			try {
+				Result r = probeStream(recorder);
+				probed = true;
+				return r;
+			} finally {
+				int count = recorder.count;
+				recorder.setInputStream(null);
+				if (probed) {
+					((PushbackInputStream) is).unread(recorder.buf, 0, count);
+				} else {
+					try {
+						((PushbackInputStream) is).unread(recorder.buf, 0,
+								count);
+					} catch (IOException e) {
+						// do not mask the failure of probing
+					}
+				}
+			}
+		} else if (is.markSupported()) {
+			is.mark(Integer.MAX_VALUE);
+			boolean probed = false;
+			try {
+				Result r = probeStream(is);
+				probed = true;
+				return r;
+			} finally {
+				if (probed) {
+					is.reset();
+				} else {
+					try {
+						is.reset();
+					} catch (IOException e) {
+						// do not mask the failure of probing
+					}
+				}
+			}
+		} else {
+			throw new IllegalArgumentException(
+					"EXI probe requires a PushbackInputStream or a stream supporting mark/reset");
+		}
+	}
+
+	/**
+	 * Probes the EXI stream starting at the current position of the buffer.
+	 * The position of the buffer is not modified.
+	 * 
+	 * @param buffer
+	 *            EXI stream
+	 * @return probe result
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public Result probe(ByteBuffer buffer) throws EXIException, IOException {
+		return probeStream(new ByteBufferInputStream(buffer.duplicate()));
+	}
+
+	protected Result probeStream(InputStream is) throws EXIException,
+			IOException {
+		BitDecoderChannel headerChannel = new BitDecoderChannel(is);
+		boolean cookie = headerChannel.lookAhead() == '$';
+
+		headerDecoder.schemaId = null;
+		EXIFactory exiFactory = headerDecoder.parse(headerChannel,
+				noOptionsFactory);
+
+		EXIBodyDecoder decoder;
+		if (exiFactory == noOptionsFactory) {
+			if (noOptionsDecoder == null) {
+				noOptionsDecoder = noOptionsFactory.createEXIBodyDecoder();
+			}
+			decoder = noOptionsDecoder;
+		} else {
+			decoder = exiFactory.createEXIBodyDecoder();
+		}
+		if (exiFactory.getCodingMode() == CodingMode.BIT_PACKED) {
+			// bit-packed re-uses the header channel
+			decoder.setInputChannel(headerChannel);
+		} else {
+			decoder.setInputStream(is);
+		}
+
+		// decode up to the first start element
+		QName rootElement = null;
+		boolean done = false;
+		EventType eventType;
+		while (!done && (eventType = decoder.next()) != null) {
+			switch (eventType) {
+			case START_DOCUMENT:
+				decoder.decodeStartDocument();
+				break;
+			case START_ELEMENT:
+			case START_ELEMENT_NS:
+			case START_ELEMENT_GENERIC:
+			case START_ELEMENT_GENERIC_UNDECLARED:
+				rootElement = decoder.decodeStartElement().getQName();
+				done = true;
+				break;
+			case DOC_TYPE:
+				decoder.decodeDocType();
+				break;
+			case COMMENT:
+				decoder.decodeComment();
+				break;
+			case PROCESSING_INSTRUCTION:
+				decoder.decodeProcessingInstruction();
+				break;
+			default:
+				// no element
+				done = true;
+				break;
+			}
+		}
+
+		return new Result(cookie, exiFactory == noOptionsFactory ? null
+				: exiFactory, headerDecoder.schemaId, rootElement);
+	}
+
+}
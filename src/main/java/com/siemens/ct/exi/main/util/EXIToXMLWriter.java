@@ -0,0 +1,654 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import com.siemens.ct.exi.core.Constants;
+import com.siemens.ct.exi.core.EXIBodyDecoder;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.EXIStreamDecoder;
+import com.siemens.ct.exi.core.coder.AbstractEXIBodyCoder;
+import com.siemens.ct.exi.core.container.DocType;
+import com.siemens.ct.exi.core.container.NamespaceDeclaration;
+import com.siemens.ct.exi.core.container.ProcessingInstruction;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.grammars.event.EventType;
+import com.siemens.ct.exi.core.values.ListValue;
+import com.siemens.ct.exi.core.values.Value;
+import com.siemens.ct.exi.core.values.ValueType;
+import com.siemens.ct.exi.main.helpers.DefaultSchemaIdResolver;
+
+/**
+ * Decodes an EXI stream to XML text (UTF-8).
+ * 
+ * <p>
+ * The body decoder events are written as escaped UTF-8 bytes into a byte
+ * buffer that is re-used for all streams. There is no SAX or TrAX layer in
+ * between. Fragments (see <code>EXIFactory.isFragment()</code>) are written
+ * without XML declaration.
+ * </p>
+ * 
+ * <p>
+ * A writer can be used for any number of streams, one after the other, but
+ * not by several threads at the same time.
+ * </p>
+ */
+
+public class EXIToXMLWriter {
+
+	protected static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	protected static final byte[] XML_DECLARATION = toBytes("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+
+	/* escaping */
+	protected static final int ESCAPE_NONE = 0;
+	protected static final int ESCAPE_TEXT = 1;
+	protected static final int ESCAPE_ATTRIBUTE = 2;
+
+	protected final EXIFactory noOptionsFactory;
+	protected EXIStreamDecoder exiStream;
+
+	protected boolean xmlDeclaration = true;
+	protected int indentation = 0;
+
+	/* output */
+	protected OutputStream os;
+	protected byte[] buffer;
+	protected int pos;
+
+	/* helper buffer for values */
+	protected char[] cbuffer;
+
+	/* attributes of the deferred start element */
+	protected String[] atQNames;
+	protected Value[] atValues;
+	protected int atLength;
+
+	/* state */
+	protected boolean started;
+	protected boolean startTagOpen;
+	protected int depth;
+	/* per depth: element has child elements */
+	protected boolean[] childElements;
+	protected boolean lastWasText;
+
+	public EXIToXMLWriter(EXIFactory noOptionsFactory) throws EXIException {
+		this.noOptionsFactory = noOptionsFactory;
+		if (noOptionsFactory.getSchemaIdResolver() == null) {
+			// set default schemaId resolver
+			noOptionsFactory.setSchemaIdResolver(new DefaultSchemaIdResolver());
+		}
+		this.exiStream = noOptionsFactory.createEXIStreamDecoder();
+		this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+		this.cbuffer = new char[256];
+		this.atQNames = new String[8];
+		this.atValues = new Value[8];
+		this.childElements = new boolean[16];
+	}
+
+	protected static byte[] toBytes(String ascii) {
+		byte[] b = new byte[ascii.length()];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) ascii.charAt(i);
+		}
+		return b;
+	}
+
+	/**
+	 * Sets whether documents start with an XML declaration (default true).
+	 * Fragments never have an XML declaration.
+	 * 
+	 * @param xmlDeclaration
+	 *            write XML declaration
+	 */
+	public void setXMLDeclaration(boolean xmlDeclaration) {
+		this.xmlDeclaration = xmlDeclaration;
+	}
+
+	public boolean isXMLDeclaration() {
+		return xmlDeclaration;
+	}
+
+	/**
+	 * Sets the number of spaces used to indent nested elements. Elements
+	 * with character content are not indented. Zero (default) writes no
+	 * additional whitespace.
+	 * 
+	 * @param indentation
+	 *            number of spaces
+	 */
+	public void setIndentation(int indentation) {
+		if (indentation < 0) {
+			throw new IllegalArgumentException("Negative indentation "
+					+ indentation);
+		}
+		this.indentation = indentation;
+	}
+
+	public int getIndentation() {
+		return indentation;
+	}
+
+	/**
+	 * Decodes an EXI stream (header and body) and writes the XML text.
+	 * 
+	 * @param exi
+	 *            EXI stream
+	 * @param xml
+	 *            output for XML text, not closed
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void write(InputStream exi, OutputStream xml) throws EXIException,
+			IOException {
+		EXIBodyDecoder decoder = exiStream.decodeHeader(exi);
+		// stream decoder keeps the body decoder for header options
+		if (decoder instanceof AbstractEXIBodyCoder
+				&& ((AbstractEXIBodyCoder) decoder).exiFactory != noOptionsFactory) {
+			exiStream = noOptionsFactory.createEXIStreamDecoder();
+		}
+
+		this.os = xml;
+		this.pos = 0;
+		this.started = false;
+		this.startTagOpen = false;
+		this.depth = 0;
+		this.lastWasText = false;
+		this.atLength = 0;
+
+		try {
+			writeEvents(decoder);
+			flushBuffer();
+		} finally {
+			// do not retain values and output
+			for (int i = 0; i < atLength; i++) {
+				atValues[i] = null;
+			}
+			atLength = 0;
+			this.os = null;
+		}
+	}
+
+	protected void writeEvents(EXIBodyDecoder decoder) throws EXIException,
+			IOException {
+		EventType eventType;
+		boolean fragment = false;
+		boolean isStartElementDeferred = false;
+
+		while ((eventType = decoder.next()) != null) {
+			switch (eventType) {
+			/* DOCUMENT */
+			case START_DOCUMENT:
+				decoder.decodeStartDocument();
+				if (decoder instanceof AbstractEXIBodyCoder) {
+					fragment = ((AbstractEXIBodyCoder) decoder).exiFactory
+							.isFragment();
+				} else {
+					fragment = noOptionsFactory.isFragment();
+				}
+				if (xmlDeclaration && !fragment) {
+					writeBytes(XML_DECLARATION);
+					started = true;
+				}
+				break;
+			case END_DOCUMENT:
+				decoder.decodeEndDocument();
+				if (indentation > 0) {
+					writeNewLine(0);
+				}
+				break;
+			/* ATTRIBUTES */
+			case ATTRIBUTE_XSI_NIL:
+				decoder.decodeAttributeXsiNil();
+				addAttribute(decoder);
+				break;
+			case ATTRIBUTE_XSI_TYPE:
+				decoder.decodeAttributeXsiType();
+				addAttribute(decoder);
+				break;
+			case ATTRIBUTE:
+			case ATTRIBUTE_NS:
+			case ATTRIBUTE_GENERIC:
+			case ATTRIBUTE_GENERIC_UNDECLARED:
+			case ATTRIBUTE_INVALID_VALUE:
+			case ATTRIBUTE_ANY_INVALID_VALUE:
+				decoder.decodeAttribute();
+				addAttribute(decoder);
+				break;
+			/* NAMESPACE DECLARATION */
+			case NAMESPACE_DECLARATION:
+				decoder.decodeNamespaceDeclaration();
+				break;
+			/* SELF_CONTAINED */
+			case SELF_CONTAINED:
+				decoder.decodeStartSelfContainedFragment();
+				break;
+			/* START ELEMENT */
+			case START_ELEMENT:
+			case START_ELEMENT_NS:
+			case START_ELEMENT_GENERIC:
+			case START_ELEMENT_GENERIC_UNDECLARED:
+				if (isStartElementDeferred) {
+					writeStartTag(decoder);
+				}
+				// prefix and attributes are known with the next event
+				decoder.decodeStartElement();
+				isStartElementDeferred = true;
+				break;
+			/* END ELEMENT */
+			case END_ELEMENT:
+			case END_ELEMENT_UNDECLARED:
+				if (isStartElementDeferred) {
+					writeStartTag(decoder);
+					isStartElementDeferred = false;
+				}
+				String eeQName = decoder.getElementQNameAsString();
+				decoder.decodeEndElement();
+				writeEndTag(eeQName);
+				break;
+			/* CHARACTERS */
+			case CHARACTERS:
+			case CHARACTERS_GENERIC:
+			case CHARACTERS_GENERIC_UNDECLARED:
+				if (isStartElementDeferred) {
+					writeStartTag(decoder);
+					isStartElementDeferred = false;
+				}
+				Value val = decoder.decodeCharacters();
+				closeStartTag();
+				writeValue(val, ESCAPE_TEXT);
+				lastWasText = true;
+				break;
+			/* MISC */
+			case DOC_TYPE:
+				writeDocType(decoder.decodeDocType());
+				break;
+			case ENTITY_REFERENCE:
+				if (isStartElementDeferred) {
+					writeStartTag(decoder);
+					isStartElementDeferred = false;
+				}
+				char[] er = decoder.decodeEntityReference();
+				closeStartTag();
+				writeByte('&');
+				writeChars(er, 0, er.length, ESCAPE_NONE);
+				writeByte(';');
+				lastWasText = true;
+				break;
+			case COMMENT:
+				if (isStartElementDeferred) {
+					writeStartTag(decoder);
+					isStartElementDeferred = false;
+				}
+				char[] comment = decoder.decodeComment();
+				closeStartTag();
+				writeIndentation();
+				writeByte('<');
+				writeByte('!');
+				writeByte('-');
+				writeByte('-');
+				writeChars(comment, 0, comment.length, ESCAPE_NONE);
+				writeByte('-');
+				writeByte('-');
+				writeByte('>');
+				break;
+			case PROCESSING_INSTRUCTION:
+				if (isStartElementDeferred) {
+					writeStartTag(decoder);
+					isStartElementDeferred = false;
+				}
+				ProcessingInstruction pi = decoder
+						.decodeProcessingInstruction();
+				closeStartTag();
+				writeIndentation();
+				writeByte('<');
+				writeByte('?');
+				writeString(pi.target, ESCAPE_NONE);
+				if (pi.data != null && pi.data.length() > 0) {
+					writeByte(' ');
+					writeString(pi.data, ESCAPE_NONE);
+				}
+				writeByte('?');
+				writeByte('>');
+				break;
+			default:
+				throw new RuntimeException("Unexpected EXI Event '" + eventType
+						+ "' ");
+			}
+		}
+	}
+
+	protected void addAttribute(EXIBodyDecoder decoder) {
+		if (atLength == atQNames.length) {
+			String[] newQNames = new String[atLength << 1];
+			System.arraycopy(atQNames, 0, newQNames, 0, atLength);
+			atQNames = newQNames;
+			Value[] newValues = new Value[atLength << 1];
+			System.arraycopy(atValues, 0, newValues, 0, atLength);
+			atValues = newValues;
+		}
+		atQNames[atLength] = decoder.getAttributeQNameAsString();
+		atValues[atLength] = decoder.getAttributeValue();
+		atLength++;
+	}
+
+	protected void writeStartTag(EXIBodyDecoder decoder) throws IOException {
+		closeStartTag();
+
+		// parent has child elements
+		childElements[depth] = true;
+		writeIndentation();
+
+		depth++;
+		if (depth == childElements.length) {
+			boolean[] newChildElements = new boolean[depth << 1];
+			System.arraycopy(childElements, 0, newChildElements, 0, depth);
+			childElements = newChildElements;
+		}
+		childElements[depth] = false;
+
+		writeByte('<');
+		writeString(decoder.getElementQNameAsString(), ESCAPE_NONE);
+
+		// namespace declarations
+		List<NamespaceDeclaration> nsDecls = decoder
+				.getDeclaredPrefixDeclarations();
+		if (nsDecls != null) {
+			for (int i = 0; i < nsDecls.size(); i++) {
+				NamespaceDeclaration ns = nsDecls.get(i);
+				writeByte(' ');
+				writeByte('x');
+				writeByte('m');
+				writeByte('l');
+				writeByte('n');
+				writeByte('s');
+				if (ns.prefix != null && ns.prefix.length() > 0) {
+					writeByte(':');
+					writeString(ns.prefix, ESCAPE_NONE);
+				}
+				writeByte('=');
+				writeByte('"');
+				writeString(ns.namespaceURI, ESCAPE_ATTRIBUTE);
+				writeByte('"');
+			}
+		}
+
+		// attributes
+		for (int i = 0; i < atLength; i++) {
+			writeByte(' ');
+			writeString(atQNames[i], ESCAPE_NONE);
+			writeByte('=');
+			writeByte('"');
+			writeValue(atValues[i], ESCAPE_ATTRIBUTE);
+			writeByte('"');
+			atValues[i] = null;
+		}
+		atLength = 0;
+
+		startTagOpen = true;
+		lastWasText = false;
+	}
+
+	protected void closeStartTag() throws IOException {
+		if (startTagOpen) {
+			writeByte('>');
+			startTagOpen = false;
+		}
+	}
+
+	protected void writeEndTag(String qname) throws IOException {
+		if (startTagOpen) {
+			// empty element
+			writeByte('/');
+			writeByte('>');
+			startTagOpen = false;
+		} else {
+			if (indentation > 0 && childElements[depth] && !lastWasText) {
+				writeNewLine(depth - 1);
+			}
+			writeByte('<');
+			writeByte('/');
+			writeString(qname, ESCAPE_NONE);
+			writeByte('>');
+		}
+		depth--;
+		lastWasText = false;
+	}
+
+	protected void writeDocType(DocType docType) throws IOException {
+		writeIndentation();
+		writeString("<!DOCTYPE ", ESCAPE_NONE);
+		writeChars(docType.name, 0, docType.name.length, ESCAPE_NONE);
+		if (docType.publicID.length > 0) {
+			writeString(" PUBLIC \"", ESCAPE_NONE);
+			writeChars(docType.publicID, 0, docType.publicID.length,
+					ESCAPE_NONE);
+			writeString("\" \"", ESCAPE_NONE);
+			writeChars(docType.systemID, 0, docType.systemID.length,
+					ESCAPE_NONE);
+			writeByte('"');
+		} else if (docType.systemID.length > 0) {
+			writeString(" SYSTEM \"", ESCAPE_NONE);
+			writeChars(docType.systemID, 0, docType.systemID.length,
+					ESCAPE_NONE);
+			writeByte('"');
+		}
+		if (docType.text.length > 0) {
+			writeByte(' ');
+			writeByte('[');
+			writeChars(docType.text, 0, docType.text.length, ESCAPE_NONE);
+			writeByte(']');
+		}
+		writeByte('>');
+	}
+
+	/*
+	 * Line break and indentation before markup that is not preceded by text
+	 * nor the first output of the document
+	 */
+	protected void writeIndentation() throws IOException {
+		if (indentation > 0 && !lastWasText && (depth > 0 || started)) {
+			writeNewLine(depth);
+		}
+		started = true;
+	}
+
+	protected void writeNewLine(int level) throws IOException {
+		writeByte('\n');
+		for (int i = level * indentation; i > 0; i--) {
+			writeByte(' ');
+		}
+	}
+
+	protected void writeValue(Value val, int escape) throws IOException {
+		if (val.getValueType() == ValueType.LIST) {
+			// items followed by a delimiter (same as SAXDecoder)
+			Value[] values = ((ListValue) val).toValues();
+			for (int i = 0; i < values.length; i++) {
+				writeValue(values[i], escape);
+				writeByte(Constants.XSD_LIST_DELIM_CHAR);
+			}
+		} else if (val.getValueType() == ValueType.STRING
+				|| val.getValueType() == ValueType.BOOLEAN) {
+			char[] ch = val.getCharacters();
+			writeChars(ch, 0, ch.length, escape);
+		} else {
+			int slen = val.getCharactersLength();
+			if (slen > cbuffer.length) {
+				cbuffer = new char[Math.max(slen, cbuffer.length << 1)];
+			}
+			val.getCharacters(cbuffer, 0);
+			writeChars(cbuffer, 0, slen, escape);
+		}
+	}
+
+	protected void writeString(String s, int escape) throws IOException {
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (Character.isHighSurrogate(c) && i + 1 < len
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				writeCodePoint(Character.toCodePoint(c, s.charAt(++i)));
+			} else {
+				writeChar(c, escape);
+			}
+		}
+	}
+
+	protected void writeChars(char[] ch, int start, int length, int escape)
+			throws IOException {
+		int end = start + length;
+		for (int i = start; i < end; i++) {
+			char c = ch[i];
+			if (c < 0x80 && escape == ESCAPE_NONE) {
+				if (pos == buffer.length) {
+					flushBuffer();
+				}
+				buffer[pos++] = (byte) c;
+			} else if (Character.isHighSurrogate(c) && i + 1 < end
+					&& Character.isLowSurrogate(ch[i + 1])) {
+				writeCodePoint(Character.toCodePoint(c, ch[++i]));
+			} else {
+				writeChar(c, escape);
+			}
+		}
+	}
+
+	protected void writeChar(char c, int escape) throws IOException {
+		if (pos + 6 > buffer.length) {
+			flushBuffer();
+		}
+		if (c < 0x80) {
+			if (escape != ESCAPE_NONE) {
+				switch (c) {
+				case '&':
+					writeEntity('a', 'm', 'p', 0);
+					return;
+				case '<':
+					writeEntity('l', 't', 0, 0);
+					return;
+				case '>':
+					writeEntity('g', 't', 0, 0);
+					return;
+				case '"':
+					if (escape == ESCAPE_ATTRIBUTE) {
+						writeEntity('q', 'u', 'o', 't');
+						return;
+					}
+					break;
+				case '\r':
+					writeCharReference(13);
+					return;
+				case '\n':
+					if (escape == ESCAPE_ATTRIBUTE) {
+						writeCharReference(10);
+						return;
+					}
+					break;
+				case '\t':
+					if (escape == ESCAPE_ATTRIBUTE) {
+						writeCharReference(9);
+						return;
+					}
+					break;
+				}
+			}
+			buffer[pos++] = (byte) c;
+		} else if (c < 0x800) {
+			buffer[pos++] = (byte) (0xC0 | (c >> 6));
+			buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+		} else if (Character.isSurrogate(c)) {
+			// unpaired surrogate
+			buffer[pos++] = (byte) '?';
+		} else {
+			buffer[pos++] = (byte) (0xE0 | (c >> 12));
+			buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	protected void writeCodePoint(int cp) throws IOException {
+		if (pos + 4 > buffer.length) {
+			flushBuffer();
+		}
+		buffer[pos++] = (byte) (0xF0 | (cp >> 18));
+		buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+		buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+		buffer[pos++] = (byte) (0x80 | (cp & 0x3F));
+	}
+
+	/* Note: buffer has room for 6 bytes */
+	protected void writeEntity(int c1, int c2, int c3, int c4) {
+		buffer[pos++] = '&';
+		buffer[pos++] = (byte) c1;
+		buffer[pos++] = (byte) c2;
+		if (c3 != 0) {
+			buffer[pos++] = (byte) c3;
+		}
+		if (c4 != 0) {
+			buffer[pos++] = (byte) c4;
+		}
+		buffer[pos++] = ';';
+	}
+
+	/* Note: buffer has room for 6 bytes */
+	protected void writeCharReference(int c) {
+		buffer[pos++] = '&';
+		buffer[pos++] = '#';
+		if (c >= 10) {
+			buffer[pos++] = (byte) ('0' + c / 10);
+		}
+		buffer[pos++] = (byte) ('0' + c % 10);
+		buffer[pos++] = ';';
+	}
+
+	protected void writeByte(int b) throws IOException {
+		if (pos == buffer.length) {
+			flushBuffer();
+		}
+		buffer[pos++] = (byte) b;
+	}
+
+	protected void writeBytes(byte[] b) throws IOException {
+		if (pos + b.length > buffer.length) {
+			flushBuffer();
+		}
+		System.arraycopy(b, 0, buffer, pos, b.length);
+		pos += b.length;
+	}
+
+	protected void flushBuffer() throws IOException {
+		if (pos > 0) {
+			os.write(buffer, 0, pos);
+			pos = 0;
+		}
+	}
+
+}
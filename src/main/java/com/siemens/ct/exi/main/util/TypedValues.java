@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.util.Calendar;
+
+import com.siemens.ct.exi.core.types.DateTimeType;
+import com.siemens.ct.exi.core.values.BooleanValue;
+import com.siemens.ct.exi.core.values.DateTimeValue;
+import com.siemens.ct.exi.core.values.DecimalValue;
+import com.siemens.ct.exi.core.values.FloatValue;
+import com.siemens.ct.exi.core.values.IntegerValue;
+import com.siemens.ct.exi.core.values.IntegerValueType;
+import com.siemens.ct.exi.core.values.ListValue;
+import com.siemens.ct.exi.core.values.Value;
+
+/**
+ * Creates EXI values from native Java values and vice versa.
+ */
+
+public class TypedValues {
+
+	private TypedValues() {
+	}
+
+	/**
+	 * Returns the date-time value of the given type for a calendar.
+	 * 
+	 * <p>
+	 * Unlike <code>DateTimeValue.parse(Calendar, DateTimeType)</code> the
+	 * components are represented exactly as for the lexical form (fractional
+	 * seconds in reverse digit order, time-zone as TZHours * 64 +
+	 * TZMinutes). The time-zone of the calendar is always included.
+	 * </p>
+	 * 
+	 * @param cal
+	 *            calendar
+	 * @param type
+	 *            date-time type
+	 * @return date-time value
+	 */
+	public static DateTimeValue dateTime(Calendar cal, DateTimeType type) {
+		int year = 0;
+		int monthDay = 0;
+		int time = 0;
+		int fractionalSecs = 0;
+
+		switch (type) {
+		case gYear:
+			year = cal.get(Calendar.YEAR);
+			break;
+		case gYearMonth:
+			year = cal.get(Calendar.YEAR);
+			monthDay = (cal.get(Calendar.MONTH) + 1)
+					* DateTimeValue.MONTH_MULTIPLICATOR;
+			break;
+		case date:
+			year = cal.get(Calendar.YEAR);
+			monthDay = DateTimeValue.getMonthDay(cal);
+			break;
+		case dateTime:
+			year = cal.get(Calendar.YEAR);
+			monthDay = DateTimeValue.getMonthDay(cal);
+			// Note: *no* break;
+		case time:
+			time = DateTimeValue.getTime(cal);
+			fractionalSecs = getFractionalSecs(cal.get(Calendar.MILLISECOND));
+			break;
+		case gMonth:
+			monthDay = (cal.get(Calendar.MONTH) + 1)
+					* DateTimeValue.MONTH_MULTIPLICATOR;
+			break;
+		case gMonthDay:
+			monthDay = DateTimeValue.getMonthDay(cal);
+			break;
+		case gDay:
+			monthDay = cal.get(Calendar.DAY_OF_MONTH);
+			break;
+		default:
+			throw new IllegalArgumentException("Unsupported date-time type "
+					+ type);
+		}
+
+		// TimeZone TZHours * 64 + TZMinutes
+		int offset = (cal.get(Calendar.ZONE_OFFSET) + cal
+				.get(Calendar.DST_OFFSET)) / (1000 * 60);
+		int sign = offset < 0 ? -1 : 1;
+		offset = Math.abs(offset);
+		int timezone = sign * ((offset / 60) * 64 + (offset % 60));
+
+		return new DateTimeValue(type, year, monthDay, time, fractionalSecs,
+				true, timezone);
+	}
+
+	/**
+	 * Returns the items of an integer list (e.g. <code>xs:int</code> items)
+	 * as array.
+	 * 
+	 * @param list
+	 *            list value
+	 * @return items
+	 * @throws IllegalArgumentException
+	 *             if an item is not an integer within the range of long
+	 */
+	public static long[] toLongArray(ListValue list) {
+		Value[] values = list.toValues();
+		long[] items = new long[values.length];
+		for (int i = 0; i < values.length; i++) {
+			Value v = values[i];
+			if (v instanceof IntegerValue
+					&& ((IntegerValue) v).getIntegerValueType() != IntegerValueType.BIG) {
+				items[i] = ((IntegerValue) v).longValue();
+			} else {
+				throw new IllegalArgumentException("No long list item " + v);
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Returns the items of a numeric list (float, double, decimal or integer
+	 * items) as array.
+	 * 
+	 * @param list
+	 *            list value
+	 * @return items
+	 * @throws IllegalArgumentException
+	 *             if an item is not numeric
+	 */
+	public static double[] toDoubleArray(ListValue list) {
+		Value[] values = list.toValues();
+		double[] items = new double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			Value v = values[i];
+			switch (v.getValueType()) {
+			case FLOAT:
+				items[i] = ((FloatValue) v).toDouble();
+				break;
+			case DECIMAL:
+				items[i] = ((DecimalValue) v).toBigDecimal().doubleValue();
+				break;
+			case INTEGER:
+				IntegerValue iv = (IntegerValue) v;
+				items[i] = iv.getIntegerValueType() == IntegerValueType.BIG ? iv
+						.bigIntegerValue().doubleValue() : iv.longValue();
+				break;
+			default:
+				throw new IllegalArgumentException("No numeric list item " + v);
+			}
+		}
+		return items;
+	}
+
+	/**
+	 * Returns the items of a boolean list as array.
+	 * 
+	 * @param list
+	 *            list value
+	 * @return items
+	 * @throws IllegalArgumentException
+	 *             if an item is not a boolean
+	 */
+	public static boolean[] toBooleanArray(ListValue list) {
+		Value[] values = list.toValues();
+		boolean[] items = new boolean[values.length];
+		for (int i = 0; i < values.length; i++) {
+			Value v = values[i];
+			if (v instanceof BooleanValue) {
+				items[i] = ((BooleanValue) v).toBoolean();
+			} else {
+				throw new IllegalArgumentException("No boolean list item "
+						+ v);
+			}
+		}
+		return items;
+	}
+
+	/*
+	 * Milliseconds as fractional seconds, digits in reverse order without
+	 * trailing zeros (e.g. 120ms -> ".12" -> 21)
+	 */
+	static int getFractionalSecs(int millis) {
+		if (millis == 0) {
+			return 0;
+		}
+		int digits = 3;
+		while (millis % 10 == 0) {
+			millis /= 10;
+			digits--;
+		}
+		int rev = 0;
+		for (int i = 0; i < digits; i++) {
+			rev = rev * 10 + millis % 10;
+			millis /= 10;
+		}
+		return rev;
+	}
+
+}
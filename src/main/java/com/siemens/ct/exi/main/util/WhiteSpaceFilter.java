@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.IOException;
+
+import com.siemens.ct.exi.core.Constants;
+import com.siemens.ct.exi.core.EXIBodyEncoder;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.values.StringValue;
+
+/**
+ * Detects insignificant whitespace before it is handed to the body encoder.
+ * 
+ * <p>
+ * Text that consists solely of whitespace characters and directly follows an
+ * end element is never encoded unless lexical values or xml:space="preserve"
+ * are in effect: the body encoder finds no CH production with a datatype at
+ * that position and removes such whitespace nodes. The filter recognizes
+ * these runs based on the structural position only, so that encoders can
+ * drop them without creating a value.
+ * </p>
+ * 
+ * <p>
+ * The filter is only enabled for schema-less and strict schema-informed
+ * streams. In non-strict mode undeclared elements may appear in simple
+ * content where whitespace is significant.
+ * </p>
+ * 
+ * <p>
+ * Callers that deliver text in several fragments may defer ignorable
+ * fragments and pass them on once the run turns out to contain other
+ * characters.
+ * </p>
+ */
+
+public class WhiteSpaceFilter {
+
+	protected static final int DEFAULT_DEPTH = 32;
+
+	protected final boolean enabled;
+
+	/* last structural event has been an end element */
+	protected boolean afterEndElement;
+
+	/* characters of the current run have been passed on */
+	protected boolean passedOn;
+
+	/* effective xml:space="preserve" per element depth */
+	protected boolean[] xmlSpacePreserve;
+	protected int depth;
+
+	/* deferred ignorable fragments */
+	protected char[] deferred;
+	protected int deferredLength;
+
+	public WhiteSpaceFilter(EXIFactory factory) {
+		FidelityOptions fo = factory.getFidelityOptions();
+		this.enabled = !fo.isFidelityEnabled(FidelityOptions.FEATURE_LEXICAL_VALUE)
+				&& (fo.isStrict() || !factory.getGrammars().isSchemaInformed());
+		this.xmlSpacePreserve = new boolean[DEFAULT_DEPTH];
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void startDocument() {
+		afterEndElement = false;
+		depth = 0;
+		xmlSpacePreserve[0] = false;
+		endOfText();
+	}
+
+	public void startElement() {
+		afterEndElement = false;
+		if (++depth == xmlSpacePreserve.length) {
+			boolean[] newPreserve = new boolean[depth << 1];
+			System.arraycopy(xmlSpacePreserve, 0, newPreserve, 0, depth);
+			xmlSpacePreserve = newPreserve;
+		}
+		// inherited
+		xmlSpacePreserve[depth] = xmlSpacePreserve[depth - 1];
+		endOfText();
+	}
+
+	/**
+	 * Reports an attribute of the current element. Any attribute in the XML
+	 * namespace with the value "preserve" or "default" switches the xml:space
+	 * behavior, as done by the body encoder.
+	 * 
+	 * @param uri
+	 *            attribute namespace URI
+	 * @param value
+	 *            attribute value
+	 */
+	public void attribute(String uri, String value) {
+		if (Constants.XML_NS_URI.equals(uri)) {
+			if ("preserve".equals(value)) {
+				xmlSpacePreserve[depth] = true;
+			} else if ("default".equals(value)) {
+				xmlSpacePreserve[depth] = false;
+			}
+		}
+	}
+
+	public void endElement() {
+		afterEndElement = true;
+		if (depth > 0) {
+			depth--;
+		}
+		endOfText();
+	}
+
+	/**
+	 * Ends the current character run, e.g. with a comment or a processing
+	 * instruction. Deferred fragments are dropped.
+	 */
+	public void endOfText() {
+		passedOn = false;
+		deferredLength = 0;
+	}
+
+	public boolean isIgnorable(char[] ch, int start, int length) {
+		return isCandidate() && isSolelyWhiteSpace(ch, start, length);
+	}
+
+	public boolean isIgnorable(String text) {
+		return isCandidate() && isSolelyWhiteSpace(text);
+	}
+
+	protected boolean isCandidate() {
+		return enabled && afterEndElement && !passedOn
+				&& !xmlSpacePreserve[depth];
+	}
+
+	public void defer(char[] ch, int start, int length) {
+		ensureDeferredCapacity(deferredLength + length);
+		System.arraycopy(ch, start, deferred, deferredLength, length);
+		deferredLength += length;
+	}
+
+	public void defer(String text) {
+		int length = text.length();
+		ensureDeferredCapacity(deferredLength + length);
+		text.getChars(0, length, deferred, deferredLength);
+		deferredLength += length;
+	}
+
+	protected void ensureDeferredCapacity(int reqSize) {
+		if (deferred == null) {
+			deferred = new char[Math.max(reqSize, 64)];
+		} else if (reqSize > deferred.length) {
+			char[] newDeferred = new char[Math.max(reqSize,
+					deferred.length << 1)];
+			System.arraycopy(deferred, 0, newDeferred, 0, deferredLength);
+			deferred = newDeferred;
+		}
+	}
+
+	/**
+	 * Marks the current character run as significant. Deferred fragments
+	 * (if any) are handed to the encoder first so that the run is encoded as
+	 * a whole.
+	 * 
+	 * @param encoder
+	 *            body encoder
+	 * @throws EXIException
+	 *             EXI exception
+	 * @throws IOException
+	 *             IO exception
+	 */
+	public void passOn(EXIBodyEncoder encoder) throws EXIException,
+			IOException {
+		if (deferredLength > 0) {
+			encoder.encodeCharacters(new StringValue(new String(deferred, 0,
+					deferredLength)));
+			deferredLength = 0;
+		}
+		passedOn = true;
+	}
+
+	public static boolean isWhiteSpace(char c) {
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+
+	public static boolean isSolelyWhiteSpace(char[] ch, int start, int length) {
+		final int end = start + length;
+		for (int i = start; i < end; i++) {
+			if (!isWhiteSpace(ch[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public static boolean isSolelyWhiteSpace(String text) {
+		final int length = text.length();
+		for (int i = 0; i < length; i++) {
+			if (!isWhiteSpace(text.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
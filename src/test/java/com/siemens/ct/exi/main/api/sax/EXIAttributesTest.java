@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.core.values.ValueType;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+
+public class EXIAttributesTest extends TestCase {
+
+	static final String XSD = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+			+ " <xs:element name='root'>"
+			+ "  <xs:complexType>"
+			+ "   <xs:attribute name='a' type='xs:int'/>"
+			+ "   <xs:attribute name='b' type='xs:boolean'/>"
+			+ "   <xs:attribute name='l'>"
+			+ "    <xs:simpleType><xs:list itemType='xs:int'/></xs:simpleType>"
+			+ "   </xs:attribute>"
+			+ "   <xs:attribute name='s' type='xs:string'/>"
+			+ "  </xs:complexType>"
+			+ " </xs:element>" + "</xs:schema>";
+
+	protected byte[] encode(EXIFactory factory, String xml) throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(os);
+		SAXParserFactory spf = SAXParserFactory.newInstance();
+		spf.setNamespaceAware(true);
+		XMLReader reader = spf.newSAXParser().getXMLReader();
+		reader.setContentHandler(encoder);
+		reader.parse(new InputSource(new ByteArrayInputStream(xml.getBytes())));
+		return os.toByteArray();
+	}
+
+	public void testTypedValues() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		Grammars g = GrammarFactory.newInstance().createGrammars(
+				new ByteArrayInputStream(XSD.getBytes()));
+		factory.setGrammars(g);
+
+		byte[] exi = encode(factory,
+				"<root a='12' b='true' l='1 2 3' s='x y'/>");
+
+		final List<Attributes> atts = new ArrayList<Attributes>();
+		XMLReader reader = new SAXFactory(factory).createEXIReader();
+		reader.setContentHandler(new DefaultHandler() {
+			@Override
+			public void startElement(String uri, String localName,
+					String qName, Attributes attributes) throws SAXException {
+				assertTrue(attributes instanceof EXIAttributes);
+				EXIAttributes ea = (EXIAttributes) attributes;
+				assertEquals(4, ea.getLength());
+
+				int a = ea.getIndex("", "a");
+				assertTrue(a >= 0);
+				assertEquals(ValueType.INTEGER, ea.getTypedValue(a)
+						.getValueType());
+				assertEquals("a", ea.getQNameContext(a).getLocalName());
+
+				assertEquals("12", ea.getValue("", "a"));
+				assertEquals("true", ea.getValue("b"));
+				assertEquals("1 2 3 ", ea.getValue("", "l"));
+				assertEquals("x y", ea.getValue("s"));
+				assertEquals("CDATA", ea.getType("s"));
+
+				// repeated access returns the same string
+				assertSame(ea.getValue(a), ea.getValue(a));
+
+				assertNull(ea.getValue("", "unknown"));
+				assertNull(ea.getType(4));
+				assertNull(ea.getTypedValue(-1));
+				atts.add(attributes);
+			}
+		});
+		reader.parse(new InputSource(new ByteArrayInputStream(exi)));
+		assertEquals(1, atts.size());
+	}
+
+	public void testReuse() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+
+		StringBuilder xml = new StringBuilder("<root>");
+		for (int n = 0; n < 3; n++) {
+			xml.append("<e");
+			for (int i = 0; i < 20 * n; i++) {
+				xml.append(" at" + i + "='v" + n + "_" + i + "'");
+			}
+			xml.append("/>");
+		}
+		xml.append("</root>");
+		byte[] exi = encode(factory, xml.toString());
+
+		final List<Attributes> atts = new ArrayList<Attributes>();
+		XMLReader reader = new SAXFactory(factory).createEXIReader();
+		reader.setContentHandler(new DefaultHandler() {
+			@Override
+			public void startElement(String uri, String localName,
+					String qName, Attributes attributes) throws SAXException {
+				if ("e".equals(localName)) {
+					int n = atts.size();
+					assertEquals(20 * n, attributes.getLength());
+					// read a single attribute only
+					if (n > 0) {
+						assertEquals("v" + n + "_7",
+								attributes.getValue("", "at7"));
+					}
+					for (int i = 0; i < attributes.getLength(); i++) {
+						int idx = attributes.getIndex("at" + i);
+						assertEquals("at" + i, attributes.getLocalName(idx));
+						assertEquals("v" + n + "_" + i,
+								attributes.getValue(idx));
+					}
+					atts.add(attributes);
+				}
+			}
+		});
+		reader.parse(new InputSource(new ByteArrayInputStream(exi)));
+
+		assertEquals(3, atts.size());
+		// slots are re-used across elements
+		assertSame(atts.get(0), atts.get(2));
+	}
+
+}
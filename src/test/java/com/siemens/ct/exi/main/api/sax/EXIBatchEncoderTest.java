@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+
+public class EXIBatchEncoderTest extends TestCase {
+
+	static final String[] XML_FILES = { "./data/general/attributes.xml",
+			"./data/general/complex-structure.xml",
+			"./data/general/datatypes.xml", "./data/general/person.xml",
+			"./data/general/attributes.xml" };
+
+	protected List<Source> getSources() {
+		List<Source> sources = new ArrayList<Source>();
+		for (String xmlFile : XML_FILES) {
+			sources.add(new StreamSource(new File(xmlFile)));
+		}
+		return sources;
+	}
+
+	protected List<byte[]> getExpected(EXIFactory factory) throws Exception {
+		List<byte[]> expected = new ArrayList<byte[]>();
+		for (String xmlFile : XML_FILES) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			EXIResult exiResult = new EXIResult(factory);
+			exiResult.setOutputStream(os);
+			XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+			xmlReader.setContentHandler(exiResult.getHandler());
+			xmlReader.setProperty(
+					"http://xml.org/sax/properties/lexical-handler",
+					exiResult.getLexicalHandler());
+			xmlReader.parse(new InputSource(xmlFile));
+			expected.add(os.toByteArray());
+		}
+		return expected;
+	}
+
+	protected void _test(EXIFactory factory) throws Exception {
+		List<byte[]> expected = getExpected(factory);
+		EXIBatchEncoder batch = new EXIBatchEncoder(factory);
+
+		// separate
+		EXIBatchEncoder.SeparateSink separate = EXIBatchEncoder.separate();
+		assertEquals(XML_FILES.length, batch.encodeAll(getSources(), separate));
+		assertEquals(expected.size(), separate.getDocuments().size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertTrue(XML_FILES[i], Arrays.equals(expected.get(i), separate
+					.getDocuments().get(i)));
+		}
+
+		// framed
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		batch.encodeAll(getSources(), EXIBatchEncoder.framed(os));
+		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(
+				os.toByteArray()));
+		for (int i = 0; i < expected.size(); i++) {
+			byte[] doc = new byte[dis.readInt()];
+			dis.readFully(doc);
+			assertTrue(XML_FILES[i], Arrays.equals(expected.get(i), doc));
+		}
+		assertEquals(-1, dis.read());
+
+		// concatenated
+		os.reset();
+		batch.encodeAll(getSources(), EXIBatchEncoder.concatenated(os));
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		for (byte[] doc : expected) {
+			all.write(doc);
+		}
+		assertTrue(Arrays.equals(all.toByteArray(), os.toByteArray()));
+	}
+
+	public void testDefault() throws Exception {
+		_test(DefaultEXIFactory.newInstance());
+	}
+
+	public void testAllFidelityCompression() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setFidelityOptions(FidelityOptions.createAll());
+		factory.setCodingMode(CodingMode.COMPRESSION);
+		_test(factory);
+	}
+
+}
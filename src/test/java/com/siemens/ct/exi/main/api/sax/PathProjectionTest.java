@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+
+public class PathProjectionTest extends TestCase {
+
+	static final String XML = "<library xmlns:x='urn:x'>"
+			+ "<!-- books -->"
+			+ "<book id='1'><title>A</title><author>X</author><x:note>n1</x:note></book>"
+			+ "text"
+			+ "<book id='2'><title>B</title><author>Y</author><x:note>n2</x:note></book>"
+			+ "<journal><title>C</title></journal>" + "</library>";
+
+	static class EventRecorder extends DefaultHandler {
+		final StringBuilder sb = new StringBuilder();
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) throws SAXException {
+			sb.append('<').append(localName);
+			for (int i = 0; i < attributes.getLength(); i++) {
+				sb.append(' ').append(attributes.getLocalName(i)).append('=')
+						.append(attributes.getValue(i));
+			}
+			sb.append('>');
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName)
+				throws SAXException {
+			sb.append("</").append(localName).append('>');
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length)
+				throws SAXException {
+			sb.append(ch, start, length);
+		}
+	}
+
+	protected static byte[] encode(EXIFactory factory, String xml)
+			throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		EXIResult exiResult = new EXIResult(factory);
+		exiResult.setOutputStream(os);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(exiResult.getHandler());
+		xmlReader.parse(new InputSource(new StringReader(xml)));
+		return os.toByteArray();
+	}
+
+	protected static String decode(SAXDecoder decoder, byte[] exi)
+			throws Exception {
+		EventRecorder er = new EventRecorder();
+		decoder.setContentHandler(er);
+		decoder.parse(new InputSource(new ByteArrayInputStream(exi)));
+		return er.sb.toString();
+	}
+
+	protected void _test(EXIFactory factory) throws Exception {
+		byte[] exi = encode(factory, XML);
+		SAXDecoder decoder = new SAXDecoder(factory);
+
+		decoder.setProperty(PathProjection.PROPERTY, new String[] {
+				"/library/book/title", "/library/*/{urn:x}note" });
+		assertEquals("<library><book id=1><title>A</title><note>n1</note>"
+				+ "</book><book id=2><title>B</title><note>n2</note></book>"
+				+ "<journal></journal></library>", decode(decoder, exi));
+
+		// re-use decoder and projection
+		assertEquals("<library><book id=1><title>A</title><note>n1</note>"
+				+ "</book><book id=2><title>B</title><note>n2</note></book>"
+				+ "<journal></journal></library>", decode(decoder, exi));
+
+		decoder.setProperty(PathProjection.PROPERTY, new PathProjection(
+				"/library/journal", "/library/book/{urn:y}note"));
+		assertEquals("<library><book id=1></book><book id=2></book>"
+				+ "<journal><title>C</title></journal>"
+				+ "</library>", decode(decoder, exi));
+
+		decoder.setProperty(PathProjection.PROPERTY, new PathProjection(
+				"/library"));
+		decoder.setProperty(PathProjection.PROPERTY, null);
+		String all = decode(decoder, exi);
+		decoder.setProperty(PathProjection.PROPERTY, new PathProjection(
+				"/library"));
+		assertEquals(all, decode(decoder, exi));
+
+		decoder.setProperty(PathProjection.PROPERTY, new PathProjection(
+				"/foo/bar"));
+		assertEquals("", decode(decoder, exi));
+	}
+
+	public void testProjection() throws Exception {
+		_test(DefaultEXIFactory.newInstance());
+	}
+
+	public void testProjectionPreserveAll() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setFidelityOptions(FidelityOptions.createAll());
+		_test(factory);
+	}
+
+	public void testDeepSelection() throws Exception {
+		// selected subtree nested deeper than the initial capacity
+		StringBuilder nested = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			nested.append("<x>");
+		}
+		nested.append("deep");
+		for (int i = 0; i < 20; i++) {
+			nested.append("</x>");
+		}
+		String xml = "<root><a>" + nested + "</a><b>" + nested
+				+ "</b></root>";
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(factory, xml);
+
+		SAXDecoder decoder = new SAXDecoder(factory);
+		decoder.setProperty(PathProjection.PROPERTY,
+				new String[] { "/root/a" });
+		assertEquals("<root><a>" + nested + "</a></root>",
+				decode(decoder, exi));
+
+		// unselected path deeper than the initial capacity
+		StringBuilder path = new StringBuilder("/root/b");
+		for (int i = 0; i < 20; i++) {
+			path.append("/x");
+		}
+		decoder.setProperty(PathProjection.PROPERTY,
+				new String[] { path.toString() });
+		assertEquals("<root><b>" + nested + "</b></root>",
+				decode(decoder, exi));
+	}
+
+	public void testInvalidPaths() throws Exception {
+		SAXDecoder decoder = new SAXDecoder(DefaultEXIFactory.newInstance());
+		String[] invalid = { "library", "/", "/a//b", "/{urn:x}" };
+		for (String path : invalid) {
+			try {
+				decoder.setProperty(PathProjection.PROPERTY,
+						new String[] { path });
+				fail(path);
+			} catch (SAXNotSupportedException e) {
+				// expected
+			}
+		}
+	}
+
+}
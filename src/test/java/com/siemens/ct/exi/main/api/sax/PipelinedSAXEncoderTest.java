@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+
+public class PipelinedSAXEncoderTest extends TestCase {
+
+	static final String[] XML_FILES = { "./data/general/attributes.xml",
+			"./data/general/complex-structure.xml",
+			"./data/general/person.xml", "./data/general/docType.xml",
+			"./data/general/randj.xml" };
+
+	protected byte[] encode(SAXEncoder encoder, String xmlFile)
+			throws Exception {
+		InputStream is = new FileInputStream(xmlFile);
+		try {
+			return encode(encoder, new InputSource(is));
+		} finally {
+			is.close();
+		}
+	}
+
+	protected byte[] encode(SAXEncoder encoder, InputSource is)
+			throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		encoder.reset(os);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler",
+				encoder);
+		xmlReader.setProperty(
+				"http://xml.org/sax/properties/declaration-handler", encoder);
+		xmlReader.parse(is);
+		return os.toByteArray();
+	}
+
+	protected void _test(EXIFactory factory, PipelinedSAXEncoder pipelined)
+			throws Exception {
+		SAXEncoder serial = new SAXFactory(factory).createEXIWriter();
+		// twice to check re-use
+		for (int k = 0; k < 2; k++) {
+			for (String xmlFile : XML_FILES) {
+				byte[] expected = encode(serial, xmlFile);
+				byte[] actual = encode(pipelined, xmlFile);
+				assertTrue(xmlFile, Arrays.equals(expected, actual));
+			}
+		}
+	}
+
+	public void testDefault() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		_test(factory, new SAXFactory(factory).createPipelinedEXIWriter());
+	}
+
+	public void testAllFidelity() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setFidelityOptions(FidelityOptions.createAll());
+		_test(factory, new SAXFactory(factory).createPipelinedEXIWriter());
+	}
+
+	public void testBackpressure() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setFidelityOptions(FidelityOptions.createAll());
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			_test(factory, new PipelinedSAXEncoder(factory, executor, 2));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testEncoderFailure() throws Exception {
+		Grammars g = GrammarFactory.newInstance().createGrammars(
+				"./data/general/person.xsd");
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setGrammars(g);
+		factory.setFidelityOptions(FidelityOptions.createStrict());
+
+		PipelinedSAXEncoder encoder = new PipelinedSAXEncoder(factory, null,
+				4);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+
+		// unknown element, not encodable in strict mode
+		StringBuilder sb = new StringBuilder("<person><unknown>");
+		for (int i = 0; i < 1000; i++) {
+			sb.append("<a/>");
+		}
+		sb.append("</unknown></person>");
+
+		for (int k = 0; k < 2; k++) {
+			encoder.reset(new ByteArrayOutputStream());
+			try {
+				xmlReader.parse(new InputSource(new StringReader(sb
+						.toString())));
+				fail("Encoder failure not reported");
+			} catch (SAXException e) {
+				// expected
+			}
+		}
+
+		// still usable
+		String xml = "<person age='12'><firstname>Daniel</firstname>"
+				+ "<lastname>Peintner</lastname></person>";
+		byte[] expected = encode(new SAXFactory(factory).createEXIWriter(),
+				new InputSource(new StringReader(xml)));
+		byte[] actual = encode(encoder, new InputSource(new StringReader(xml)));
+		assertTrue(Arrays.equals(expected, actual));
+	}
+
+	public void testParseFailure() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		PipelinedSAXEncoder encoder = new SAXFactory(factory)
+				.createPipelinedEXIWriter();
+
+		StringBuilder sb = new StringBuilder("<root>");
+		for (int i = 0; i < 1000; i++) {
+			sb.append("<a>").append(i).append("</a>");
+		}
+		sb.append("</root>");
+		final byte[] xml = sb.toString().getBytes();
+
+		// input fails half-way, no fatalError reported
+		InputStream failing = new InputStream() {
+			int pos;
+
+			@Override
+			public int read() throws IOException {
+				if (pos >= xml.length / 2) {
+					throw new IOException("connection reset");
+				}
+				return xml[pos++];
+			}
+		};
+
+		encoder.reset(new ByteArrayOutputStream());
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		try {
+			xmlReader.parse(new InputSource(failing));
+			fail("Parse failure not reported");
+		} catch (IOException e) {
+			// encoder thread is still waiting for events
+			assertTrue(encoder.isRunning());
+			encoder.abort();
+		}
+		assertFalse(encoder.isRunning());
+
+		// still usable
+		byte[] expected = encode(new SAXFactory(factory).createEXIWriter(),
+				new InputSource(new ByteArrayInputStream(xml)));
+		byte[] actual = encode(encoder, new InputSource(
+				new ByteArrayInputStream(xml)));
+		assertTrue(Arrays.equals(expected, actual));
+	}
+
+}
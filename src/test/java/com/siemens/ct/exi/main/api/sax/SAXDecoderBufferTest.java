@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.core.values.BinaryBase64Value;
+import com.siemens.ct.exi.core.values.BinaryHexValue;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+
+public class SAXDecoderBufferTest extends TestCase {
+
+	static final String SCHEMA = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+			+ "<xs:element name='root'><xs:complexType><xs:sequence>"
+			+ "<xs:element name='s' type='xs:string'/>"
+			+ "<xs:element name='b64' type='xs:base64Binary'/>"
+			+ "<xs:element name='hex' type='xs:hexBinary'/>"
+			+ "<xs:element name='list' minOccurs='0'>"
+			+ "<xs:complexType><xs:simpleContent>"
+			+ "<xs:extension base='ints'><xs:attribute name='at' type='ints'/>"
+			+ "</xs:extension></xs:simpleContent></xs:complexType></xs:element>"
+			+ "</xs:sequence></xs:complexType></xs:element>"
+			+ "<xs:simpleType name='ints'><xs:list itemType='xs:int'/></xs:simpleType>"
+			+ "</xs:schema>";
+
+	static class ChunkRecorder extends DefaultHandler {
+		final StringBuilder sb = new StringBuilder();
+		int maxChunk;
+		int calls;
+		String at;
+		boolean splitSurrogate;
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) throws SAXException {
+			if (attributes.getLength() > 0) {
+				at = attributes.getValue(0);
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length)
+				throws SAXException {
+			sb.append(ch, start, length);
+			maxChunk = Math.max(maxChunk, length);
+			calls++;
+			if (length > 0
+					&& (Character.isHighSurrogate(ch[start + length - 1]) || Character
+							.isLowSurrogate(ch[start]))) {
+				splitSurrogate = true;
+			}
+		}
+	}
+
+	protected static byte[] encode(EXIFactory factory, String xml)
+			throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		EXIResult exiResult = new EXIResult(factory);
+		exiResult.setOutputStream(os);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(exiResult.getHandler());
+		xmlReader.parse(new InputSource(new StringReader(xml)));
+		return os.toByteArray();
+	}
+
+	public void testChunks() throws Exception {
+		GrammarFactory grammarFactory = GrammarFactory.newInstance();
+		Grammars g = grammarFactory.createGrammars(new ByteArrayInputStream(
+				SCHEMA.getBytes()));
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setGrammars(g);
+
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			s.append((char) ('a' + (i % 26)));
+		}
+		byte[] bytes = new byte[10001];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		String b64 = new BinaryBase64Value(bytes).toString();
+		String hex = new BinaryHexValue(bytes).toString();
+		String xml = "<root><s>" + s + "</s><b64>" + b64 + "</b64><hex>"
+				+ hex + "</hex></root>";
+		byte[] exi = encode(factory, xml);
+
+		SAXDecoder decoder = new SAXDecoder(factory);
+		assertEquals(SAXDecoder.DEFAULT_MAX_CHAR_BUFFER_SIZE,
+				decoder.getProperty(SAXDecoder.MAX_BUFFER_SIZE_PROPERTY));
+
+		int[] maxSizes = { 1 << 16, 1024, 1001, 4 };
+		for (int maxSize : maxSizes) {
+			decoder.setProperty(SAXDecoder.MAX_BUFFER_SIZE_PROPERTY, maxSize);
+			ChunkRecorder cr = new ChunkRecorder();
+			decoder.setContentHandler(cr);
+			decoder.parse(new InputSource(new ByteArrayInputStream(exi)));
+
+			assertEquals(s + b64 + hex, cr.sb.toString());
+			assertTrue(cr.maxChunk <= maxSize);
+			assertTrue(decoder.cbuffer.length <= Math.max(maxSize,
+					SAXDecoder.DEFAULT_CHAR_BUFFER_SIZE));
+		}
+
+		// reset releases small limit
+		decoder.reset();
+		assertEquals(SAXDecoder.DEFAULT_MAX_CHAR_BUFFER_SIZE,
+				decoder.getProperty(SAXDecoder.MAX_BUFFER_SIZE_PROPERTY));
+	}
+
+	public void testSurrogates() throws Exception {
+		GrammarFactory grammarFactory = GrammarFactory.newInstance();
+		Grammars g = grammarFactory.createGrammars(new ByteArrayInputStream(
+				SCHEMA.getBytes()));
+
+		// odd start shifts every other pair across chunk boundaries
+		StringBuilder s = new StringBuilder("x");
+		for (int i = 0; i < 3000; i++) {
+			s.appendCodePoint(0x1F600 + (i % 64));
+		}
+		String xml = "<root><s>" + s + "</s><b64/><hex/></root>";
+
+		EXIFactory[] factories = { DefaultEXIFactory.newInstance(),
+				DefaultEXIFactory.newInstance() };
+		factories[1].setGrammars(g);
+		for (EXIFactory factory : factories) {
+			byte[] exi = encode(factory, xml);
+
+			SAXDecoder decoder = new SAXDecoder(factory);
+			int[] maxSizes = { 1024, 1001, 5, 4 };
+			for (int maxSize : maxSizes) {
+				decoder.setProperty(SAXDecoder.MAX_BUFFER_SIZE_PROPERTY,
+						maxSize);
+				ChunkRecorder cr = new ChunkRecorder();
+				decoder.setContentHandler(cr);
+				decoder.parse(new InputSource(new ByteArrayInputStream(exi)));
+
+				assertEquals(s.toString(), cr.sb.toString());
+				assertTrue(cr.maxChunk <= maxSize);
+				assertFalse(cr.splitSurrogate);
+			}
+		}
+	}
+
+	public void testList() throws Exception {
+		GrammarFactory grammarFactory = GrammarFactory.newInstance();
+		Grammars g = grammarFactory.createGrammars(new ByteArrayInputStream(
+				SCHEMA.getBytes()));
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setGrammars(g);
+
+		StringBuilder list = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			list.append(i * 7 - 1000).append(' ');
+		}
+		String xml = "<root><s/><b64/><hex/><list at='" + list + "'>" + list
+				+ "</list></root>";
+		byte[] exi = encode(factory, xml);
+
+		SAXDecoder decoder = new SAXDecoder(factory);
+		ChunkRecorder cr = new ChunkRecorder();
+		decoder.setContentHandler(cr);
+		decoder.parse(new InputSource(new ByteArrayInputStream(exi)));
+		assertEquals(list.toString(), cr.sb.toString());
+		assertEquals(list.toString(), cr.at);
+		// all items at once
+		assertEquals(1, cr.calls);
+
+		decoder.setProperty(SAXDecoder.MAX_BUFFER_SIZE_PROPERTY, 100);
+		cr = new ChunkRecorder();
+		decoder.setContentHandler(cr);
+		decoder.parse(new InputSource(new ByteArrayInputStream(exi)));
+		assertEquals(list.toString(), cr.sb.toString());
+		assertTrue(cr.maxChunk <= 100);
+		assertTrue(cr.calls < 5000 / 10);
+	}
+
+	public void testInvalidSize() throws Exception {
+		SAXDecoder decoder = new SAXDecoder(DefaultEXIFactory.newInstance());
+		try {
+			decoder.setProperty(SAXDecoder.MAX_BUFFER_SIZE_PROPERTY, 3);
+			fail();
+		} catch (SAXNotSupportedException e) {
+			// expected
+		}
+	}
+
+}
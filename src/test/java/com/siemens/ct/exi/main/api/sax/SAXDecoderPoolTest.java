@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.EncodingOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+
+public class SAXDecoderPoolTest extends TestCase {
+
+	static final String[] XML_FILES = { "./data/general/attributes.xml",
+			"./data/general/complex-structure.xml",
+			"./data/general/datatypes.xml" };
+
+	static class EventRecorder extends DefaultHandler {
+		final StringBuilder sb = new StringBuilder();
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) throws SAXException {
+			sb.append('<').append(localName);
+			for (int i = 0; i < attributes.getLength(); i++) {
+				sb.append(' ').append(attributes.getLocalName(i)).append('=')
+						.append(attributes.getValue(i));
+			}
+			sb.append('>');
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName)
+				throws SAXException {
+			sb.append("</").append(localName).append('>');
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length)
+				throws SAXException {
+			sb.append(ch, start, length);
+		}
+	}
+
+	protected static byte[] encode(EXIFactory factory, String xmlFile)
+			throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		EXIResult exiResult = new EXIResult(factory);
+		exiResult.setOutputStream(os);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(exiResult.getHandler());
+		InputStream is = new FileInputStream(xmlFile);
+		try {
+			xmlReader.parse(new InputSource(is));
+		} finally {
+			is.close();
+		}
+		return os.toByteArray();
+	}
+
+	protected static String decode(SAXDecoder decoder, byte[] exi)
+			throws Exception {
+		EventRecorder er = new EventRecorder();
+		decoder.setContentHandler(er);
+		decoder.parse(new InputSource(new ByteArrayInputStream(exi)));
+		return er.sb.toString();
+	}
+
+	public void testReuse() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+
+		// streams with and without EXI options in the header
+		EXIFactory optionsFactory = DefaultEXIFactory.newInstance();
+		optionsFactory.setCodingMode(CodingMode.COMPRESSION);
+		optionsFactory.getEncodingOptions().setOption(
+				EncodingOptions.INCLUDE_OPTIONS);
+
+		SAXDecoder reused = new SAXDecoder(factory);
+		for (int k = 0; k < 2; k++) {
+			for (String xmlFile : XML_FILES) {
+				byte[] exi = encode(factory, xmlFile);
+				String expected = decode(new SAXDecoder(factory), exi);
+				assertEquals(xmlFile, expected, decode(reused, exi));
+
+				byte[] exiOptions = encode(optionsFactory, xmlFile);
+				assertEquals(xmlFile, expected, decode(reused, exiOptions));
+			}
+		}
+	}
+
+	public void testBorrowRelease() throws Exception {
+		SAXDecoderPool pool = new SAXDecoderPool();
+		EXIFactory f = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(f, XML_FILES[1]);
+		String expected = decode(new SAXDecoder(f), exi);
+
+		SAXDecoder d1 = pool.borrow(f);
+		assertEquals(expected, decode(d1, exi));
+		assertNotNull(d1.getContentHandler());
+		pool.release(d1);
+		assertEquals(1, pool.getIdleCount(f));
+
+		// handlers are not handed on
+		SAXDecoder d2 = pool.borrow(f);
+		assertSame(d1, d2);
+		assertNull(d2.getContentHandler());
+		assertEquals(expected, decode(d2, exi));
+		pool.release(d2);
+		assertEquals(0, pool.getBorrowedCount());
+	}
+
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.EXIBodyEncoder;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.core.values.StringValue;
+
+public class SAXEncoderCharactersTest extends TestCase {
+
+	protected List<String> encodeDecode(EXIFactory factory, char[] ch,
+			int chunk) throws Exception {
+		return encodeDecode(factory, ch, chunk,
+				SAXEncoder.DEFAULT_MAX_PENDING_CHARACTERS);
+	}
+
+	protected List<String> encodeDecode(EXIFactory factory, char[] ch,
+			int chunk, int maxPendingChars) throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setMaxPendingCharacters(maxPendingChars);
+		encoder.setOutputStream(os);
+
+		AttributesImpl atts = new AttributesImpl();
+		encoder.startDocument();
+		encoder.startElement("", "root", "root", atts);
+		encoder.startElement("", "a", "a", atts);
+		for (int i = 0; i < ch.length; i += chunk) {
+			encoder.characters(ch, i, Math.min(chunk, ch.length - i));
+		}
+		encoder.endElement("", "a", "a");
+		encoder.startElement("", "b", "b", atts);
+		encoder.characters(ch, 0, 3);
+		encoder.endElement("", "b", "b");
+		encoder.endElement("", "root", "root");
+		encoder.endDocument();
+
+		final List<String> texts = new ArrayList<String>();
+		XMLReader reader = new SAXFactory(factory).createEXIReader();
+		reader.setContentHandler(new DefaultHandler() {
+			StringBuilder sb = new StringBuilder();
+
+			@Override
+			public void characters(char[] c, int start, int length)
+					throws SAXException {
+				sb.append(c, start, length);
+			}
+
+			@Override
+			public void endElement(String uri, String localName, String qName)
+					throws SAXException {
+				if (sb.length() > 0) {
+					texts.add(sb.toString());
+					sb.setLength(0);
+				}
+			}
+		});
+		reader.parse(new InputSource(new ByteArrayInputStream(os
+				.toByteArray())));
+
+		return texts;
+	}
+
+	protected void _testFragmentedCharacters(CodingMode codingMode)
+			throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setCodingMode(codingMode);
+
+		// exceeds the initial character buffer
+		char[] ch = new char[10000];
+		for (int i = 0; i < ch.length; i++) {
+			ch[i] = (char) ('a' + (i % 26));
+		}
+
+		List<String> texts = encodeDecode(factory, ch, 7);
+		assertEquals(2, texts.size());
+		assertEquals(new String(ch), texts.get(0));
+		assertEquals("abc", texts.get(1));
+	}
+
+	protected void _testSpilledCharacters(CodingMode codingMode)
+			throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setCodingMode(codingMode);
+
+		char[] ch = new char[5000];
+		for (int i = 0; i < ch.length; i++) {
+			ch[i] = (char) ('A' + (i % 26));
+		}
+
+		// small chunks below and single chunk above limit
+		List<String> texts = encodeDecode(factory, ch, 13, 100);
+		assertEquals(2, texts.size());
+		assertEquals(new String(ch), texts.get(0));
+		assertEquals("ABC", texts.get(1));
+
+		texts = encodeDecode(factory, ch, ch.length, 100);
+		assertEquals(2, texts.size());
+		assertEquals(new String(ch), texts.get(0));
+	}
+
+	public void testSpilledCharactersBitPacked() throws Exception {
+		_testSpilledCharacters(CodingMode.BIT_PACKED);
+	}
+
+	public void testSpilledCharactersCompression() throws Exception {
+		_testSpilledCharacters(CodingMode.COMPRESSION);
+	}
+
+	public void testFragmentedCharactersBitPacked() throws Exception {
+		_testFragmentedCharacters(CodingMode.BIT_PACKED);
+	}
+
+	public void testFragmentedCharactersByteAligned() throws Exception {
+		_testFragmentedCharacters(CodingMode.BYTE_PACKED);
+	}
+
+	public void testFragmentedCharactersCompression() throws Exception {
+		_testFragmentedCharacters(CodingMode.COMPRESSION);
+	}
+
+	static final int ALLOCATION_ELEMENTS = 2000;
+
+	/*
+	 * Same events as encodeEvents, but each characters() call is encoded as
+	 * new String and StringValue (the former SAXEncoder behavior)
+	 */
+	protected void encodeEventsAsStrings(EXIFactory factory, char[] ch)
+			throws Exception {
+		EXIBodyEncoder encoder = factory.createEXIStreamEncoder()
+				.encodeHeader(new ByteArrayOutputStream());
+		encoder.encodeStartDocument();
+		encoder.encodeStartElement("", "root", null);
+		for (int i = 0; i < ALLOCATION_ELEMENTS; i++) {
+			encoder.encodeStartElement("", "e", null);
+			encoder.encodeCharacters(new StringValue(new String(ch, 0,
+					ch.length)));
+			encoder.encodeEndElement();
+		}
+		encoder.encodeEndElement();
+		encoder.encodeEndDocument();
+		encoder.flush();
+	}
+
+	protected void encodeEvents(EXIFactory factory, char[] ch)
+			throws Exception {
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(new ByteArrayOutputStream());
+		AttributesImpl atts = new AttributesImpl();
+		encoder.startDocument();
+		encoder.startElement("", "root", "root", atts);
+		for (int i = 0; i < ALLOCATION_ELEMENTS; i++) {
+			encoder.startElement("", "e", "e", atts);
+			encoder.characters(ch, 0, ch.length);
+			encoder.endElement("", "e", "e");
+		}
+		encoder.endElement("", "root", "root");
+		encoder.endDocument();
+	}
+
+	protected long allocatedBytes(EXIFactory factory, char[] ch,
+			boolean asStrings) throws Exception {
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		long tid = Thread.currentThread().getId();
+		long min = Long.MAX_VALUE;
+		for (int i = 0; i < 20; i++) {
+			long before = ((com.sun.management.ThreadMXBean) mx)
+					.getThreadAllocatedBytes(tid);
+			if (asStrings) {
+				encodeEventsAsStrings(factory, ch);
+			} else {
+				encodeEvents(factory, ch);
+			}
+			long after = ((com.sun.management.ThreadMXBean) mx)
+					.getThreadAllocatedBytes(tid);
+			min = Math.min(min, after - before);
+		}
+		return min;
+	}
+
+	protected void _testAllocation(EXIFactory factory, long minSavedPerRun)
+			throws Exception {
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		if (!(mx instanceof com.sun.management.ThreadMXBean)
+				|| !((com.sun.management.ThreadMXBean) mx)
+						.isThreadAllocatedMemorySupported()) {
+			// no allocation counter on this VM
+			return;
+		}
+		((com.sun.management.ThreadMXBean) mx)
+				.setThreadAllocatedMemoryEnabled(true);
+
+		// same (string table hit) value for each element
+		char[] ch = "some character content".toCharArray();
+		long strings = allocatedBytes(factory, ch, true);
+		long pending = allocatedBytes(factory, ch, false);
+		assertTrue(strings + " vs. " + pending, strings - pending > minSavedPerRun
+				* ALLOCATION_ELEMENTS);
+	}
+
+	public void testAllocation() throws Exception {
+		// the encoder copies the text for whitespace handling, the String
+		// and StringValue of the SAX layer are saved
+		_testAllocation(DefaultEXIFactory.newInstance(), 64);
+	}
+
+	public void testAllocationLexicalValues() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.getFidelityOptions().setFidelity(
+				FidelityOptions.FEATURE_LEXICAL_VALUE, true);
+		// the string table still needs a String (toString()), only the
+		// StringValue is saved
+		_testAllocation(factory, 8);
+	}
+
+}
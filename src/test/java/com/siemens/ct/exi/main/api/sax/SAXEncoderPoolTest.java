@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+
+public class SAXEncoderPoolTest extends TestCase {
+
+	static final String[] XML_FILES = { "./data/general/attributes.xml",
+			"./data/general/complex-structure.xml",
+			"./data/general/datatypes.xml" };
+
+	protected byte[] encode(EXIResult exiResult, String xmlFile)
+			throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		exiResult.reset(os);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(exiResult.getHandler());
+		xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler",
+				exiResult.getLexicalHandler());
+		InputStream is = new FileInputStream(xmlFile);
+		try {
+			xmlReader.parse(new InputSource(is));
+		} finally {
+			is.close();
+		}
+		return os.toByteArray();
+	}
+
+	protected void _testReset(EXIFactory factory) throws Exception {
+		EXIResult reused = new EXIResult(factory);
+		// twice, in both directions
+		for (int k = 0; k < 2; k++) {
+			for (String xmlFile : XML_FILES) {
+				byte[] fresh = encode(new EXIResult(factory), xmlFile);
+				byte[] again = encode(reused, xmlFile);
+				assertTrue(xmlFile, Arrays.equals(fresh, again));
+			}
+		}
+	}
+
+	public void testResetDefault() throws Exception {
+		_testReset(DefaultEXIFactory.newInstance());
+	}
+
+	public void testResetStrict() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setFidelityOptions(FidelityOptions.createAll());
+		_testReset(factory);
+	}
+
+	public void testBorrowRelease() throws Exception {
+		SAXEncoderPool pool = new SAXEncoderPool();
+		EXIFactory f1 = DefaultEXIFactory.newInstance();
+		EXIFactory f2 = DefaultEXIFactory.newInstance();
+
+		SAXEncoder e1 = pool.borrow(f1);
+		SAXEncoder e2 = pool.borrow(f1);
+		assertNotSame(e1, e2);
+		assertEquals(2, pool.getBorrowedCount());
+
+		byte[] fresh = encode(new EXIResult(f1), XML_FILES[0]);
+		assertTrue(Arrays.equals(fresh,
+				encode(new EXIResult(e1), XML_FILES[0])));
+
+		pool.release(e1);
+		pool.release(e2);
+		assertEquals(0, pool.getBorrowedCount());
+		assertEquals(2, pool.getIdleCount(f1));
+		assertEquals(0, pool.getIdleCount(f2));
+
+		// re-used for same factory only
+		SAXEncoder e3 = pool.borrow(f1);
+		assertTrue(e3 == e1 || e3 == e2);
+		SAXEncoder e4 = pool.borrow(f2);
+		assertNotSame(e1, e4);
+		assertNotSame(e2, e4);
+
+		assertTrue(Arrays.equals(fresh,
+				encode(new EXIResult(e3), XML_FILES[0])));
+		pool.release(e3);
+		pool.release(e4);
+	}
+
+	public void testReleaseDropsOutput() throws Exception {
+		SAXEncoderPool pool = new SAXEncoderPool();
+		EXIFactory f = DefaultEXIFactory.newInstance();
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		SAXEncoder e = pool.borrow(f, os);
+		// aborted document
+		e.startDocument();
+		e.startElement("", "root", "root", new EXIAttributes());
+		e.characters("text".toCharArray(), 0, 4);
+		pool.release(e);
+
+		assertNull(e.encoder);
+		assertEquals(0, e.pendingCharsLength);
+
+		SAXEncoder again = pool.borrow(f);
+		assertSame(e, again);
+		byte[] fresh = encode(new EXIResult(f), XML_FILES[0]);
+		assertTrue(Arrays.equals(fresh,
+				encode(new EXIResult(again), XML_FILES[0])));
+		pool.release(again);
+	}
+
+	public void testReleaseTwice() throws Exception {
+		SAXEncoderPool pool = new SAXEncoderPool();
+		EXIFactory f = DefaultEXIFactory.newInstance();
+		SAXEncoder e = pool.borrow(f);
+		pool.release(e);
+		try {
+			pool.release(e);
+			fail("Instance returned twice");
+		} catch (IllegalArgumentException ex) {
+			// expected
+		}
+	}
+
+	public void testLeaks() throws Exception {
+		SAXEncoderPool pool = new SAXEncoderPool();
+		pool.setLeakTracking(true);
+		EXIFactory f = DefaultEXIFactory.newInstance();
+
+		SAXEncoder e1 = pool.borrow(f, new ByteArrayOutputStream());
+		pool.borrow(f, new ByteArrayOutputStream());
+		pool.release(e1);
+
+		assertEquals(1, pool.getLeaks().size());
+		assertNotNull(pool.getLeaks().get(0).getCause());
+	}
+
+	public void testMaxIdle() throws Exception {
+		SAXEncoderPool pool = new SAXEncoderPool(1);
+		EXIFactory f = DefaultEXIFactory.newInstance();
+		SAXEncoder e1 = pool.borrow(f);
+		SAXEncoder e2 = pool.borrow(f);
+		pool.release(e1);
+		pool.release(e2);
+		assertEquals(1, pool.getIdleCount(f));
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+
+public class StringInterningTest extends TestCase {
+
+	static final String[] XML_FILES = { "./data/general/attributes.xml",
+			"./data/general/complex-structure.xml",
+			"./data/general/datatypes.xml" };
+
+	static final String FEATURE = "http://xml.org/sax/features/string-interning";
+
+	static class NameRecorder extends DefaultHandler {
+		final StringBuilder sb = new StringBuilder();
+		final boolean checkInterned;
+
+		NameRecorder(boolean checkInterned) {
+			this.checkInterned = checkInterned;
+		}
+
+		void name(String s) {
+			if (checkInterned) {
+				assertSame(s, s.intern());
+			}
+			sb.append(s).append(' ');
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri)
+				throws SAXException {
+			name(prefix);
+			name(uri);
+		}
+
+		@Override
+		public void endPrefixMapping(String prefix) throws SAXException {
+			name(prefix);
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) throws SAXException {
+			name(uri);
+			name(localName);
+			name(qName);
+			for (int i = 0; i < attributes.getLength(); i++) {
+				name(attributes.getURI(i));
+				name(attributes.getLocalName(i));
+				name(attributes.getQName(i));
+				assertEquals(i,
+						attributes.getIndex(attributes.getURI(i),
+								attributes.getLocalName(i)));
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName)
+				throws SAXException {
+			name(uri);
+			name(localName);
+			name(qName);
+		}
+	}
+
+	protected static byte[] encode(EXIFactory factory, String xmlFile)
+			throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		EXIResult exiResult = new EXIResult(factory);
+		exiResult.setOutputStream(os);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(exiResult.getHandler());
+		InputStream is = new FileInputStream(xmlFile);
+		try {
+			xmlReader.parse(new InputSource(is));
+		} finally {
+			is.close();
+		}
+		return os.toByteArray();
+	}
+
+	protected void _test(EXIFactory factory) throws Exception {
+		SAXDecoder decoder = new SAXDecoder(factory);
+		assertFalse(decoder.getFeature(FEATURE));
+
+		for (String xmlFile : XML_FILES) {
+			byte[] exi = encode(factory, xmlFile);
+
+			decoder.setFeature(FEATURE, false);
+			NameRecorder expected = new NameRecorder(false);
+			decoder.setContentHandler(expected);
+			decoder.parse(new InputSource(new ByteArrayInputStream(exi)));
+
+			decoder.setFeature(FEATURE, true);
+			assertTrue(decoder.getFeature(FEATURE));
+			// twice, second run hits cached names
+			for (int i = 0; i < 2; i++) {
+				NameRecorder interned = new NameRecorder(true);
+				decoder.setContentHandler(interned);
+				decoder.parse(new InputSource(new ByteArrayInputStream(exi)));
+				assertEquals(xmlFile, expected.sb.toString(),
+						interned.sb.toString());
+			}
+		}
+
+		decoder.reset();
+		assertFalse(decoder.getFeature(FEATURE));
+	}
+
+	public void testStringInterning() throws Exception {
+		_test(DefaultEXIFactory.newInstance());
+	}
+
+	public void testStringInterningPrefixes() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setFidelityOptions(FidelityOptions.createAll());
+		_test(factory);
+	}
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.sax;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.core.types.DateTimeType;
+import com.siemens.ct.exi.core.values.Value;
+import com.siemens.ct.exi.core.values.ValueType;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+
+public class TypedContentHandlerTest extends TestCase {
+
+	static final String XSD = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+			+ " <xs:element name='root'>"
+			+ "  <xs:complexType>"
+			+ "   <xs:sequence>"
+			+ "    <xs:element name='b' type='xs:boolean'/>"
+			+ "    <xs:element name='l' type='xs:long'/>"
+			+ "    <xs:element name='d' type='xs:double'/>"
+			+ "    <xs:element name='dec' type='xs:decimal'/>"
+			+ "    <xs:element name='bin' type='xs:base64Binary'/>"
+			+ "    <xs:element name='hex' type='xs:hexBinary'/>"
+			+ "    <xs:element name='dt' type='xs:dateTime'/>"
+			+ "    <xs:element name='s' type='xs:string'/>"
+			+ "   </xs:sequence>"
+			+ "  </xs:complexType>"
+			+ " </xs:element>" + "</xs:schema>";
+
+	static final String[] TEXT = { "true", "-1234567890123", "0.5", "12.25",
+			"AQID", "010203", "2018-05-20T10:20:30Z", "42" };
+
+	static final String[] NAMES = { "b", "l", "d", "dec", "bin", "hex", "dt",
+			"s" };
+
+	protected EXIFactory getFactory(boolean schemaInformed) throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		if (schemaInformed) {
+			Grammars g = GrammarFactory.newInstance().createGrammars(
+					new ByteArrayInputStream(XSD.getBytes()));
+			factory.setGrammars(g);
+		}
+		return factory;
+	}
+
+	protected byte[] encode(EXIFactory factory, boolean typed)
+			throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(os);
+
+		AttributesImpl atts = new AttributesImpl();
+		encoder.startDocument();
+		encoder.startElement("", "root", "root", atts);
+		for (int i = 0; i < NAMES.length; i++) {
+			encoder.startElement("", NAMES[i], NAMES[i], atts);
+			if (typed) {
+				switch (i) {
+				case 0:
+					encoder.typedValue(true);
+					break;
+				case 1:
+					encoder.typedValue(-1234567890123L);
+					break;
+				case 2:
+					encoder.typedValue(0.5d);
+					break;
+				case 3:
+					encoder.typedValue(new BigDecimal("12.25"));
+					break;
+				case 4:
+				case 5:
+					encoder.typedValue(new byte[] { 0, 1, 2, 3, 4 }, 1, 3);
+					break;
+				case 6:
+					Calendar cal = Calendar.getInstance(TimeZone
+							.getTimeZone("UTC"));
+					cal.clear();
+					cal.set(2018, Calendar.MAY, 20, 10, 20, 30);
+					encoder.typedDateTime(cal, DateTimeType.dateTime);
+					break;
+				default:
+					// typed value for string type
+					encoder.typedValue(42L);
+				}
+			} else {
+				encoder.characters(TEXT[i].toCharArray(), 0,
+						TEXT[i].length());
+			}
+			encoder.endElement("", NAMES[i], NAMES[i]);
+		}
+		encoder.endElement("", "root", "root");
+		encoder.endDocument();
+
+		return os.toByteArray();
+	}
+
+	protected void _test(EXIFactory factory) throws Exception {
+		byte[] typed = encode(factory, true);
+		assertTrue(Arrays.equals(encode(factory, false), typed));
+
+		final StringBuilder sb = new StringBuilder();
+		XMLReader reader = new SAXFactory(factory).createEXIReader();
+		reader.setContentHandler(new DefaultHandler() {
+			@Override
+			public void characters(char[] ch, int start, int length)
+					throws SAXException {
+				sb.append(ch, start, length);
+			}
+
+			@Override
+			public void endElement(String uri, String localName, String qName)
+					throws SAXException {
+				sb.append('|');
+			}
+		});
+		reader.parse(new InputSource(new ByteArrayInputStream(typed)));
+		assertTrue(sb.toString(), sb.toString().startsWith("true|"));
+		assertTrue(sb.toString(), sb.toString().contains("|42|"));
+	}
+
+	public void testSchemaInformed() throws Exception {
+		_test(getFactory(true));
+	}
+
+	public void testSchemaInformedStrict() throws Exception {
+		EXIFactory factory = getFactory(true);
+		factory.setFidelityOptions(FidelityOptions.createStrict());
+		_test(factory);
+	}
+
+	public void testSchemaLess() throws Exception {
+		EXIFactory factory = getFactory(false);
+		byte[] typed = encode(factory, true);
+		assertTrue(typed.length > 0);
+	}
+
+	public void testMixedWithCharacters() throws Exception {
+		EXIFactory factory = getFactory(true);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(os);
+		AttributesImpl atts = new AttributesImpl();
+		encoder.startDocument();
+		encoder.startElement("", "root", "root", atts);
+		encoder.startElement("", "b", "b", atts);
+		encoder.characters(" ".toCharArray(), 0, 1);
+		encoder.typedValue(false);
+		encoder.endElement("", "b", "b");
+		encoder.startElement("", "l", "l", atts);
+		encoder.typedValue(12L);
+		encoder.characters("3".toCharArray(), 0, 1);
+		encoder.endElement("", "l", "l");
+		encoder.endElement("", "root", "root");
+		// valid prefix of document, end not reachable
+	}
+
+	public void testCharactersAroundTypedValue() throws Exception {
+		EXIFactory factory = getFactory(false);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(os);
+		AttributesImpl atts = new AttributesImpl();
+		encoder.startDocument();
+		encoder.startElement("", "root", "root", atts);
+		encoder.startElement("", "a", "a", atts);
+		encoder.characters("abc".toCharArray(), 0, 3);
+		encoder.typedValue(42L);
+		// overwrites the buffer of the preceding characters
+		encoder.characters("xyz".toCharArray(), 0, 3);
+		encoder.endElement("", "a", "a");
+		encoder.startElement("", "a", "a", atts);
+		// string table hits
+		encoder.characters("abc".toCharArray(), 0, 3);
+		encoder.typedValue(42L);
+		encoder.characters("xyz".toCharArray(), 0, 3);
+		encoder.endElement("", "a", "a");
+		encoder.endElement("", "root", "root");
+		encoder.endDocument();
+
+		final StringBuilder sb = new StringBuilder();
+		XMLReader reader = new SAXFactory(factory).createEXIReader();
+		reader.setContentHandler(new DefaultHandler() {
+			@Override
+			public void characters(char[] ch, int start, int length)
+					throws SAXException {
+				sb.append(ch, start, length);
+			}
+
+			@Override
+			public void endElement(String uri, String localName, String qName)
+					throws SAXException {
+				sb.append('|');
+			}
+		});
+		reader.parse(new InputSource(new ByteArrayInputStream(os
+				.toByteArray())));
+		assertEquals("abc42xyz|abc42xyz||", sb.toString());
+	}
+
+	/*
+	 * Collects typed values and characters
+	 */
+	static class TypedCollector extends DefaultHandler implements
+			TypedValueHandler {
+		final List<Value> values = new ArrayList<Value>();
+		final StringBuilder chars = new StringBuilder();
+
+		@Override
+		public void characters(char[] ch, int start, int length)
+				throws SAXException {
+			chars.append(ch, start, length);
+		}
+
+		public void typedValue(Value value) throws SAXException {
+			values.add(value);
+		}
+
+	}
+
+	public void testDecodeTyped() throws Exception {
+		EXIFactory factory = getFactory(true);
+		byte[] exi = encode(factory, false);
+
+		XMLReader reader = new SAXFactory(factory).createEXIReader();
+		TypedCollector tc = new TypedCollector();
+		reader.setContentHandler(tc);
+		reader.setProperty(TypedValueHandler.PROPERTY, tc);
+		assertSame(tc, reader.getProperty(TypedValueHandler.PROPERTY));
+		reader.parse(new InputSource(new ByteArrayInputStream(exi)));
+
+		ValueType[] expected = { ValueType.BOOLEAN, ValueType.INTEGER,
+				ValueType.FLOAT, ValueType.DECIMAL, ValueType.BINARY_BASE64,
+				ValueType.BINARY_HEX, ValueType.DATETIME };
+		assertEquals(expected.length, tc.values.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], tc.values.get(i).getValueType());
+		}
+		assertEquals(TEXT[0], tc.values.get(0).toString());
+		assertEquals(TEXT[1], tc.values.get(1).toString());
+		// string content
+		assertEquals("42", tc.chars.toString());
+
+		// plain handlers
+		reader.setProperty(TypedValueHandler.PROPERTY, null);
+		tc = new TypedCollector();
+		reader.setContentHandler(tc);
+		reader.parse(new InputSource(new ByteArrayInputStream(exi)));
+		assertEquals(0, tc.values.size());
+		assertTrue(tc.chars.toString().startsWith("true"));
+	}
+
+	public void testTranscodeTyped() throws Exception {
+		EXIFactory factory = getFactory(true);
+		byte[] exi = encode(factory, false);
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(os);
+
+		XMLReader reader = new SAXFactory(factory).createEXIReader();
+		reader.setContentHandler(encoder);
+		reader.setProperty(TypedValueHandler.PROPERTY, encoder);
+		reader.parse(new InputSource(new ByteArrayInputStream(exi)));
+
+		assertTrue(Arrays.equals(exi, os.toByteArray()));
+	}
+
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import junit.framework.TestCase;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.TestStAXEncoder;
+
+public class EXIEventReaderTest extends TestCase {
+
+	protected static byte[] encode(EXIFactory ef, InputStream isXML)
+			throws Exception {
+		TestStAXEncoder tse = new TestStAXEncoder(ef);
+		ByteArrayOutputStream osEXI = new ByteArrayOutputStream();
+		try {
+			tse.encodeTo(isXML, osEXI);
+		} finally {
+			isXML.close();
+		}
+		return osEXI.toByteArray();
+	}
+
+	@SuppressWarnings("rawtypes")
+	protected static String toString(XMLEvent event) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(event.getEventType());
+		if (event.isStartElement()) {
+			StartElement se = event.asStartElement();
+			sb.append(se.getName()).append(se.getName().getPrefix());
+			Map<String, String> atts = new TreeMap<String, String>();
+			for (Iterator it = se.getAttributes(); it.hasNext();) {
+				Attribute at = (Attribute) it.next();
+				atts.put(at.getName() + at.getName().getPrefix(),
+						at.getValue());
+				assertSame(at, se.getAttributeByName(at.getName()));
+			}
+			sb.append(atts);
+			Map<String, String> nss = new TreeMap<String, String>();
+			for (Iterator it = se.getNamespaces(); it.hasNext();) {
+				Namespace ns = (Namespace) it.next();
+				nss.put(ns.getPrefix(), ns.getNamespaceURI());
+				assertEquals(ns.getNamespaceURI(),
+						se.getNamespaceURI(ns.getPrefix()));
+			}
+			sb.append(nss);
+		} else if (event.isEndElement()) {
+			sb.append(event.asEndElement().getName());
+			sb.append(event.asEndElement().getName().getPrefix());
+		} else if (event.isCharacters()) {
+			sb.append(event.asCharacters().getData());
+			sb.append(event.asCharacters().isWhiteSpace());
+		}
+		return sb.toString();
+	}
+
+	protected static List<String> read(XMLEventReader reader) throws Exception {
+		List<String> events = new ArrayList<String>();
+		while (reader.hasNext()) {
+			events.add(toString(reader.nextEvent()));
+		}
+		return events;
+	}
+
+	protected void _test(EXIFactory ef, String xmlFile) throws Exception {
+		byte[] exi = encode(ef, new FileInputStream(xmlFile));
+
+		// reference: stream reader wrapped by XMLInputFactory
+		StAXDecoder stax = new StAXDecoder(ef);
+		stax.setInputStream(new ByteArrayInputStream(exi));
+		List<String> expected = read(XMLInputFactory.newInstance()
+				.createXMLEventReader(stax));
+
+		for (int k = 0; k < 2; k++) {
+			EXIEventReader reader = new EXIEventReader(ef, k == 1);
+			// re-use reader
+			for (int i = 0; i < 2; i++) {
+				reader.setInputStream(new ByteArrayInputStream(exi));
+				assertEquals(xmlFile, expected, read(reader));
+			}
+		}
+	}
+
+	public void testNotebook() throws Exception {
+		EXIFactory ef = DefaultEXIFactory.newInstance();
+		_test(ef, "./data/W3C/PrimerNotebook/notebook.xml");
+	}
+
+	public void testPrefixes() throws Exception {
+		EXIFactory ef = DefaultEXIFactory.newInstance();
+		ef.getFidelityOptions().setFidelity(FidelityOptions.FEATURE_PREFIX,
+				true);
+		_test(ef, "./data/W3C/PrimerNotebook/notebook.xml");
+		_test(ef, "./data/general/person.xml");
+	}
+
+	protected static final String XML = "<p:root xmlns:p='urn:p' a='1'>"
+			+ "<p:a>x &amp; y</p:a><p:a b='2'>z</p:a></p:root>";
+
+	public void testFlyweight() throws Exception {
+		EXIFactory ef = DefaultEXIFactory.newInstance();
+		ef.getFidelityOptions().setFidelity(FidelityOptions.FEATURE_PREFIX,
+				true);
+		byte[] exi = encode(ef, new ByteArrayInputStream(XML.getBytes()));
+
+		EXIEventReader reader = new EXIEventReader(ef, true);
+		reader.setInputStream(new ByteArrayInputStream(exi));
+		assertTrue(reader.nextEvent().isStartDocument());
+		XMLEvent root = reader.nextEvent();
+		assertTrue(root.isStartElement());
+		assertEquals("1", root.asStartElement()
+				.getAttributeByName(new QName("a")).getValue());
+		StringWriter sw = new StringWriter();
+		root.writeAsEncodedUnicode(sw);
+		assertEquals("<p:root xmlns:p=\"urn:p\" a=\"1\">", sw.toString());
+
+		// two instances per kind re-used in turn
+		XMLEvent a = reader.nextEvent();
+		assertNotSame(root, a);
+		XMLEvent ch = reader.nextEvent();
+		assertTrue(ch instanceof EXIEventReader.FlyweightCharacters);
+		EXIEventReader.FlyweightCharacters fch = (EXIEventReader.FlyweightCharacters) ch;
+		assertEquals("x & y", new String(fch.getTextCharacters(),
+				fch.getTextStart(), fch.getTextLength()));
+		XMLEvent ee = reader.nextEvent();
+		assertTrue(ee.isEndElement());
+		assertSame(root, reader.nextEvent());
+		assertNull(root.asStartElement().getAttributeByName(new QName("a")));
+		assertEquals("2", root.asStartElement()
+				.getAttributeByName(new QName("b")).getValue());
+		XMLEvent ch2 = reader.nextEvent();
+		assertNotSame(ch, ch2);
+		assertEquals("x & y", ch.asCharacters().getData());
+		assertEquals("z", ch2.asCharacters().getData());
+		XMLEvent ee2 = reader.nextEvent();
+		assertNotSame(ee, ee2);
+		assertSame(ee, reader.nextEvent());
+		assertTrue(reader.nextEvent().isEndDocument());
+		assertFalse(reader.hasNext());
+	}
+
+	public void testImmutable() throws Exception {
+		EXIFactory ef = DefaultEXIFactory.newInstance();
+		ef.getFidelityOptions().setFidelity(FidelityOptions.FEATURE_PREFIX,
+				true);
+		byte[] exi = encode(ef, new ByteArrayInputStream(XML.getBytes()));
+
+		EXIEventReader reader = new EXIEventReader(ef);
+		reader.setInputStream(new ByteArrayInputStream(exi));
+		List<XMLEvent> events = new ArrayList<XMLEvent>();
+		while (reader.hasNext()) {
+			events.add(reader.nextEvent());
+		}
+		assertEquals(10, events.size());
+		// events stay valid
+		StartElement root = events.get(1).asStartElement();
+		assertEquals(new QName("urn:p", "root"), root.getName());
+		assertEquals("p", root.getName().getPrefix());
+		assertEquals("1", root.getAttributeByName(new QName("a")).getValue());
+		assertEquals("urn:p", root.getNamespaceURI("p"));
+		assertEquals("x & y", events.get(3).asCharacters().getData());
+		assertEquals("2",
+				events.get(5).asStartElement()
+						.getAttributeByName(new QName("b")).getValue());
+		assertNotSame(events.get(2), events.get(5));
+	}
+
+	public void testFlyweightPeek() throws Exception {
+		EXIFactory ef = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(ef, new ByteArrayInputStream(XML.getBytes()));
+
+		EXIEventReader reader = new EXIEventReader(ef, true);
+		reader.setInputStream(new ByteArrayInputStream(exi));
+		reader.nextEvent();
+		// start element held across peek() of the next start element
+		XMLEvent root = reader.nextEvent();
+		assertTrue(reader.peek().isStartElement());
+		assertEquals("root", root.asStartElement().getName().getLocalPart());
+		assertEquals("1", root.asStartElement()
+				.getAttributeByName(new QName("a")).getValue());
+		assertEquals("a", reader.nextEvent().asStartElement().getName()
+				.getLocalPart());
+
+		// characters held across peek() and read of later characters
+		XMLEvent ch = reader.nextEvent();
+		assertTrue(reader.peek().isEndElement());
+		assertEquals("x & y", ch.asCharacters().getData());
+		reader.nextEvent();
+		reader.nextEvent();
+		XMLEvent ch2 = reader.nextEvent();
+		assertTrue(reader.peek().isEndElement());
+		EXIEventReader.FlyweightCharacters fch = (EXIEventReader.FlyweightCharacters) ch;
+		assertEquals("x & y", new String(fch.getTextCharacters(),
+				fch.getTextStart(), fch.getTextLength()));
+		assertEquals("z", ch2.asCharacters().getData());
+		reader.close();
+	}
+
+	public void testNamespaceContext() throws Exception {
+		EXIFactory ef = DefaultEXIFactory.newInstance();
+		ef.getFidelityOptions().setFidelity(FidelityOptions.FEATURE_PREFIX,
+				true);
+		byte[] exi = encode(ef, new ByteArrayInputStream(XML.getBytes()));
+
+		EXIEventReader reader = new EXIEventReader(ef);
+		reader.setInputStream(new ByteArrayInputStream(exi));
+		reader.nextEvent();
+		NamespaceContext nsc = reader.nextEvent().asStartElement()
+				.getNamespaceContext();
+		assertEquals("urn:p", nsc.getNamespaceURI("p"));
+		assertEquals("p", nsc.getPrefix("urn:p"));
+		assertEquals(XMLConstants.XML_NS_URI,
+				nsc.getNamespaceURI(XMLConstants.XML_NS_PREFIX));
+		assertEquals(XMLConstants.XMLNS_ATTRIBUTE_NS_URI,
+				nsc.getNamespaceURI(XMLConstants.XMLNS_ATTRIBUTE));
+		assertEquals(XMLConstants.XML_NS_PREFIX,
+				nsc.getPrefix(XMLConstants.XML_NS_URI));
+		assertEquals(XMLConstants.XMLNS_ATTRIBUTE,
+				nsc.getPrefixes(XMLConstants.XMLNS_ATTRIBUTE_NS_URI).next());
+		try {
+			nsc.getNamespaceURI(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			nsc.getPrefix(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		reader.close();
+	}
+
+	public void testPeekAndElementText() throws Exception {
+		EXIFactory ef = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(ef, new ByteArrayInputStream(XML.getBytes()));
+
+		for (int k = 0; k < 2; k++) {
+			EXIEventReader reader = new EXIEventReader(ef, k == 1);
+			reader.setInputStream(new ByteArrayInputStream(exi));
+			XMLEvent sd = reader.peek();
+			assertTrue(sd.isStartDocument());
+			assertSame(sd, reader.nextEvent());
+			assertEquals("root", reader.nextTag().asStartElement().getName()
+					.getLocalPart());
+			assertTrue(reader.peek().isStartElement());
+			assertTrue(reader.nextEvent().isStartElement());
+			assertEquals("x & y", reader.getElementText());
+			assertTrue(reader.nextTag().isStartElement());
+			assertEquals("z", reader.getElementText());
+			assertTrue(reader.nextTag().isEndElement());
+			assertTrue(reader.nextEvent().isEndDocument());
+			assertNull(reader.peek());
+			assertFalse(reader.hasNext());
+			reader.close();
+		}
+	}
+
+}
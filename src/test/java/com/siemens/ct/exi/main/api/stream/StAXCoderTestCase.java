@@ -30,16 +30,23 @@ import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 import junit.framework.AssertionFailedError;
 
+import com.ctc.wstx.stax.WstxInputFactory;
+
 import com.siemens.ct.exi.core.EXIFactory;
 import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.datatype.Datatype;
 import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
 import com.siemens.ct.exi.main.TestStAXDecoder;
 import com.siemens.ct.exi.main.TestStAXEncoder;
 import com.siemens.ct.exi.main.data.AbstractTestCase;
@@ -527,6 +534,115 @@ public class StAXCoderTestCase extends AbstractTestCase {
 		}
 	}
 
+	public void testTextCharacters() throws AssertionFailedError, Exception {
+		EXIFactory ef = DefaultEXIFactory.newInstance();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append("text ").append(i).append(' ');
+		}
+		String longText = sb.toString();
+		String sxml = "<root><a>" + longText + "</a><b> \t\n</b><c>x</c></root>";
+
+		// encode
+		TestStAXEncoder tse = new TestStAXEncoder(ef);
+		ByteArrayOutputStream osEXI = new ByteArrayOutputStream();
+		tse.encodeTo(new ByteArrayInputStream(sxml.getBytes()), osEXI);
+
+		// decode
+		StAXDecoder exiReader = new StAXDecoder(ef);
+		exiReader.setInputStream(new ByteArrayInputStream(osEXI.toByteArray()));
+
+		List<String> texts = new ArrayList<String>();
+		char[] textArray = null;
+		while (exiReader.hasNext()) {
+			if (exiReader.next() == XMLStreamConstants.CHARACTERS) {
+				// view into re-used buffer
+				char[] ch = exiReader.getTextCharacters();
+				assertTrue(textArray == null || textArray == ch);
+				textArray = ch;
+				assertEquals(0, exiReader.getTextStart());
+				String text = new String(ch, exiReader.getTextStart(),
+						exiReader.getTextLength());
+				assertEquals(exiReader.getText(), text);
+
+				// copy in pieces
+				StringBuilder copy = new StringBuilder();
+				char[] target = new char[10];
+				int nCopied;
+				int sourceStart = 0;
+				do {
+					nCopied = exiReader.getTextCharacters(sourceStart, target,
+							3, 7);
+					copy.append(target, 3, nCopied);
+					sourceStart += nCopied;
+				} while (nCopied == 7);
+				assertEquals(text, copy.toString());
+
+				texts.add(text);
+				assertEquals(text.trim().length() == 0,
+						exiReader.isWhiteSpace());
+			}
+		}
+
+		assertEquals(3, texts.size());
+		assertEquals(longText, texts.get(0));
+		assertEquals(" \t\n", texts.get(1));
+		assertEquals("x", texts.get(2));
+	}
+
+	public void testNames() throws AssertionFailedError, Exception {
+		EXIFactory ef = DefaultEXIFactory.newInstance();
+		ef.getFidelityOptions().setFidelity(FidelityOptions.FEATURE_PREFIX,
+				true);
+		String sxml = "<p:root xmlns:p='urn:p' xmlns:q='urn:q'>"
+				+ "<p:a q:at='1'/><p:a q:at='2'/><b/></p:root>";
+
+		// encode
+		TestStAXEncoder tse = new TestStAXEncoder(ef);
+		ByteArrayOutputStream osEXI = new ByteArrayOutputStream();
+		tse.encodeTo(new ByteArrayInputStream(sxml.getBytes()), osEXI);
+
+		StAXDecoder exiReader = new StAXDecoder(ef);
+		List<QName> names = new ArrayList<QName>();
+		List<QName> atNames = new ArrayList<QName>();
+		// decoder is re-used
+		for (int k = 0; k < 2; k++) {
+			exiReader.setInputStream(new ByteArrayInputStream(osEXI
+					.toByteArray()));
+			while (exiReader.hasNext()) {
+				int event = exiReader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					names.add(exiReader.getName());
+					for (int i = 0; i < exiReader.getAttributeCount(); i++) {
+						atNames.add(exiReader.getAttributeName(i));
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					names.add(exiReader.getName());
+				}
+			}
+		}
+
+		// root, a, /a, a, /a, b, /b, /root
+		assertEquals(16, names.size());
+		QName a = names.get(1);
+		assertEquals(new QName("urn:p", "a"), a);
+		assertEquals("p", a.getPrefix());
+		assertEquals("p", names.get(0).getPrefix());
+		assertEquals("", names.get(5).getPrefix());
+		for (int i = 0; i < names.size(); i++) {
+			assertEquals(names.get(i % 8), names.get(i));
+			assertEquals(names.get(i % 8).getPrefix(), names.get(i).getPrefix());
+		}
+		// same name, same instance
+		assertSame(a, names.get(2));
+		assertSame(a, names.get(3));
+
+		assertEquals(4, atNames.size());
+		assertEquals(new QName("urn:q", "at"), atNames.get(0));
+		assertEquals("q", atNames.get(0).getPrefix());
+		assertSame(atNames.get(0), atNames.get(1));
+	}
+
 	public static void main(String[] args) throws Exception {
 
 		StAXCoderTestCase st = new StAXCoderTestCase("StAX");
@@ -535,4 +651,81 @@ public class StAXCoderTestCase extends AbstractTestCase {
 
 	}
 
+	public void testTypedTranscoding() throws AssertionFailedError,
+			Exception {
+		_testTypedTranscoding("./data/general/datatypes.xml",
+				"./data/general/datatypes.xsd");
+		_testTypedTranscoding("./data/schema/xsi-type.xml",
+				"./data/schema/xsi-type.xsd");
+
+		String xsd = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+				+ " <xs:element name='r' type='xs:int'/></xs:schema>";
+		String xml = "<r> +042 </r>";
+
+		// typed values would lose the lexical form
+		EXIFactory ef = DefaultEXIFactory.newInstance();
+		ef.setGrammars(GrammarFactory.newInstance().createGrammars(
+				new ByteArrayInputStream(xsd.getBytes())));
+		ef.getFidelityOptions().setFidelity(
+				FidelityOptions.FEATURE_LEXICAL_VALUE, true);
+		_testTypedTranscoding(ef, xml.getBytes(), false);
+
+		ef = DefaultEXIFactory.newInstance();
+		ef.setGrammars(GrammarFactory.newInstance().createGrammars(
+				new ByteArrayInputStream(xsd.getBytes())));
+		_testTypedTranscoding(ef, xml.getBytes(), true);
+	}
+
+	protected void _testTypedTranscoding(String xmlInput, String xsdInput)
+			throws AssertionFailedError, Exception {
+		EXIFactory ef = DefaultEXIFactory.newInstance();
+		ef.setGrammars(GrammarFactory.newInstance().createGrammars(xsdInput));
+
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		InputStream xmlIn = new FileInputStream(xmlInput);
+		int b;
+		while ((b = xmlIn.read()) != -1) {
+			xml.write(b);
+		}
+		xmlIn.close();
+
+		_testTypedTranscoding(ef, xml.toByteArray(), true);
+	}
+
+	protected void _testTypedTranscoding(EXIFactory ef, byte[] xml,
+			boolean expectTyped) throws AssertionFailedError, Exception {
+		// Woodstox implements the Stax2 typed access API
+		XMLInputFactory xmlFactory = new WstxInputFactory();
+
+		// characters
+		ByteArrayOutputStream osText = new ByteArrayOutputStream();
+		StAXEncoder textEncoder = new StAXEncoder(ef);
+		textEncoder.setOutputStream(osText);
+		textEncoder.encode(xmlFactory
+				.createXMLStreamReader(new ByteArrayInputStream(xml)));
+
+		// typed values
+		final int[] typed = new int[1];
+		ByteArrayOutputStream osTyped = new ByteArrayOutputStream();
+		StAXEncoder typedEncoder = new StAXEncoder(ef) {
+			@Override
+			protected Datatype getTypedDatatype() {
+				Datatype dt = super.getTypedDatatype();
+				if (dt != null) {
+					typed[0]++;
+				}
+				return dt;
+			}
+		};
+		typedEncoder.setTypedTranscoding(true);
+		typedEncoder.setOutputStream(osTyped);
+		XMLStreamReader xmlReader = xmlFactory
+				.createXMLStreamReader(new ByteArrayInputStream(xml));
+		typedEncoder.encode(xmlReader);
+
+		assertEquals(expectTyped, typed[0] > 0);
+		assertTrue(Arrays.equals(osText.toByteArray(),
+				osTyped.toByteArray()));
+	}
+
 }
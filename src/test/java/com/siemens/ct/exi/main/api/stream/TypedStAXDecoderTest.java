@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.api.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+
+import junit.framework.TestCase;
+
+import org.codehaus.stax2.typed.TypedValueDecoder;
+import org.codehaus.stax2.typed.TypedXMLStreamException;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.core.values.Value;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.TestStAXEncoder;
+
+public class TypedStAXDecoderTest extends TestCase {
+
+	static final String XSD = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+			+ "<xs:element name='root'><xs:complexType><xs:sequence>"
+			+ "<xs:element name='l' type='xs:long'/>"
+			+ "<xs:element name='i' type='xs:int'/>"
+			+ "<xs:element name='f' type='xs:double'/>"
+			+ "<xs:element name='d' type='xs:decimal'/>"
+			+ "<xs:element name='b' type='xs:boolean'/>"
+			+ "<xs:element name='bin' type='xs:base64Binary'/>"
+			+ "<xs:element name='list'><xs:simpleType>"
+			+ "<xs:list itemType='xs:int'/></xs:simpleType></xs:element>"
+			+ "</xs:sequence>"
+			+ "<xs:attribute name='at' type='xs:int'/>"
+			+ "<xs:attribute name='big' type='xs:integer'/>"
+			+ "</xs:complexType></xs:element></xs:schema>";
+
+	static final String XML = "<root at='-12' big='123456789012345678901234567890'>"
+			+ "<l>1231538438555555559</l><i> 5435 </i><f>12.5E-2</f>"
+			+ "<d>-1.23</d><b>1</b><bin>SGVsbG8gRVhJ</bin>"
+			+ "<list>100 34 -23</list></root>";
+
+	/* counts lexical decoding */
+	static class CountingDecoder extends TypedStAXDecoder {
+		int lexical;
+
+		CountingDecoder(EXIFactory ef) throws Exception {
+			super(ef);
+		}
+
+		@Override
+		protected void decodeLexical(Value value, TypedValueDecoder tvd)
+				throws XMLStreamException {
+			lexical++;
+			super.decodeLexical(value, tvd);
+		}
+	}
+
+	protected static CountingDecoder createDecoder(EXIFactory ef, String xml)
+			throws Exception {
+		TestStAXEncoder tse = new TestStAXEncoder(ef);
+		ByteArrayOutputStream osEXI = new ByteArrayOutputStream();
+		tse.encodeTo(new ByteArrayInputStream(xml.getBytes()), osEXI);
+
+		CountingDecoder exiReader = new CountingDecoder(ef);
+		exiReader.setInputStream(new ByteArrayInputStream(osEXI.toByteArray()));
+		return exiReader;
+	}
+
+	protected static EXIFactory createSchemaInformedFactory() throws Exception {
+		EXIFactory ef = DefaultEXIFactory.newInstance();
+		ef.setGrammars(GrammarFactory.newInstance().createGrammars(
+				new ByteArrayInputStream(XSD.getBytes())));
+		return ef;
+	}
+
+	protected void _testTypedAccess(CountingDecoder exiReader)
+			throws Exception {
+		assertEquals(XMLStreamConstants.START_ELEMENT, exiReader.nextTag());
+		assertEquals(-12,
+				exiReader.getAttributeAsInt(exiReader.getAttributeIndex(null,
+						"at")));
+		assertEquals(new BigInteger("123456789012345678901234567890"),
+				exiReader.getAttributeAsInteger(exiReader.getAttributeIndex(
+						"", "big")));
+
+		exiReader.nextTag();
+		assertEquals(1231538438555555559L, exiReader.getElementAsLong());
+		assertEquals(XMLStreamConstants.END_ELEMENT, exiReader.getEventType());
+		assertEquals("l", exiReader.getLocalName());
+		exiReader.nextTag();
+		assertEquals(5435, exiReader.getElementAsInt());
+		exiReader.nextTag();
+		assertEquals(0.125, exiReader.getElementAsDouble(), 0.0);
+		exiReader.nextTag();
+		assertEquals(new BigDecimal("-1.23"), exiReader.getElementAsDecimal());
+		exiReader.nextTag();
+		assertTrue(exiReader.getElementAsBoolean());
+
+		// chunked binary
+		exiReader.nextTag();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4];
+		int n;
+		while ((n = exiReader.readElementAsBinary(buffer, 0, buffer.length)) >= 0) {
+			bytes.write(buffer, 0, n);
+		}
+		assertEquals("Hello EXI", new String(bytes.toByteArray(), "US-ASCII"));
+		assertEquals(XMLStreamConstants.END_ELEMENT, exiReader.getEventType());
+
+		// chunked array
+		exiReader.nextTag();
+		int[] ints = new int[5];
+		assertEquals(2, exiReader.readElementAsIntArray(ints, 0, 2));
+		assertEquals(1, exiReader.readElementAsIntArray(ints, 2, 3));
+		assertEquals(-1, exiReader.readElementAsIntArray(ints, 3, 2));
+		assertTrue(Arrays.equals(new int[] { 100, 34, -23, 0, 0 }, ints));
+
+		assertEquals(XMLStreamConstants.END_ELEMENT, exiReader.nextTag());
+		assertEquals("root", exiReader.getLocalName());
+	}
+
+	public void testSchemaInformed() throws Exception {
+		CountingDecoder exiReader = createDecoder(
+				createSchemaInformedFactory(), XML);
+		_testTypedAccess(exiReader);
+		// values taken from typed EXI values
+		assertEquals(0, exiReader.lexical);
+	}
+
+	public void testSchemaLess() throws Exception {
+		CountingDecoder exiReader = createDecoder(
+				DefaultEXIFactory.newInstance(), XML);
+		_testTypedAccess(exiReader);
+		assertTrue(exiReader.lexical > 0);
+	}
+
+	public void testInvalidLexical() throws Exception {
+		CountingDecoder exiReader = createDecoder(
+				DefaultEXIFactory.newInstance(), "<root><a> x1 </a></root>");
+		exiReader.nextTag();
+		exiReader.nextTag();
+		try {
+			exiReader.getElementAsInt();
+			fail("Invalid integer accepted");
+		} catch (TypedXMLStreamException e) {
+			assertEquals("x1", e.getLexical());
+		}
+	}
+
+}
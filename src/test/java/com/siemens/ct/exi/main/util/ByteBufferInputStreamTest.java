@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+
+public class ByteBufferInputStreamTest extends TestCase {
+
+	public void testRead() throws IOException {
+		byte[] data = new byte[] { 0, 1, 2, (byte) 0xFF, 4, 5, 6, 7 };
+		ByteBufferInputStream is = new ByteBufferInputStream(
+				ByteBuffer.wrap(data));
+
+		assertEquals(8, is.available());
+		assertEquals(0, is.read());
+		assertEquals(1, is.read());
+		assertTrue(is.markSupported());
+		is.mark(100);
+		assertEquals(2, is.read());
+		assertEquals(0xFF, is.read());
+		is.reset();
+		assertEquals(2, is.read());
+		assertEquals(1, is.skip(1));
+
+		byte[] b = new byte[10];
+		assertEquals(0, is.read(b, 0, 0));
+		assertEquals(4, is.read(b, 1, 9));
+		assertEquals(4, b[1]);
+		assertEquals(7, b[4]);
+		assertEquals(0, is.available());
+		assertEquals(-1, is.read());
+		assertEquals(-1, is.read(b, 0, 1));
+		assertEquals(0, is.skip(5));
+
+		is.close();
+		assertEquals(-1, is.read());
+	}
+
+	protected static File createEXIFile(EXIFactory factory, int elements)
+			throws Exception {
+		File f = File.createTempFile("exificient", ".exi");
+		f.deleteOnExit();
+		FileOutputStream fos = new FileOutputStream(f);
+		SAXEncoder encoder = new SAXFactory(factory).createEXIWriter();
+		encoder.setOutputStream(fos);
+		encoder.startDocument();
+		encoder.startElement("", "root", "root", null);
+		for (int i = 0; i < elements; i++) {
+			encoder.startElement("", "e", "e", null);
+			char[] ch = ("value-" + i + "-abcdefghijklmnopqrstuvwxyz")
+					.toCharArray();
+			encoder.characters(ch, 0, ch.length);
+			encoder.endElement("", "e", "e");
+		}
+		encoder.endElement("", "root", "root");
+		encoder.endDocument();
+		fos.close();
+		return f;
+	}
+
+	protected static int countElements(XMLReader reader, InputSource is)
+			throws Exception {
+		final int[] cnt = new int[1];
+		reader.setContentHandler(new DefaultHandler() {
+			@Override
+			public void startElement(String uri, String localName,
+					String qName, Attributes attributes)
+					throws SAXException {
+				cnt[0]++;
+			}
+		});
+		reader.parse(is);
+		return cnt[0];
+	}
+
+	public void testMappedFile() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		File f = createEXIFile(factory, 5000);
+		assertTrue(f.length() >= ByteBufferInputStream.DEFAULT_MAP_THRESHOLD);
+
+		InputStream is = ByteBufferInputStream.open(f);
+		assertTrue(is instanceof PushbackInputStream);
+		is.close();
+
+		XMLReader reader = new SAXFactory(factory).createEXIReader();
+		// system id path
+		assertEquals(5001, countElements(reader,
+				new InputSource(f.getAbsolutePath())));
+		// explicit mapping
+		assertEquals(5001, countElements(reader, new InputSource(
+				ByteBufferInputStream.map(f))));
+	}
+
+	public void testSmallFile() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		File f = createEXIFile(factory, 10);
+
+		InputStream is = ByteBufferInputStream.open(f);
+		assertFalse(is instanceof PushbackInputStream);
+		is.close();
+
+		XMLReader reader = new SAXFactory(factory).createEXIReader();
+		assertEquals(11, countElements(reader,
+				new InputSource(f.getAbsolutePath())));
+
+		// in-memory buffer
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		InputStream fis = ByteBufferInputStream.map(f);
+		int b;
+		while ((b = fis.read()) != -1) {
+			baos.write(b);
+		}
+		fis.close();
+		assertEquals(f.length(), baos.size());
+		ByteBuffer direct = ByteBuffer.allocateDirect(baos.size());
+		direct.put(baos.toByteArray());
+		direct.flip();
+		assertEquals(11, countElements(reader, new InputSource(
+				new ByteBufferInputStream(direct.duplicate()))));
+		assertEquals(11, countElements(reader, new InputSource(
+				ByteBufferInputStream.pushback(direct))));
+		assertEquals(11, countElements(reader, new InputSource(
+				new ByteArrayInputStream(baos.toByteArray()))));
+	}
+
+}
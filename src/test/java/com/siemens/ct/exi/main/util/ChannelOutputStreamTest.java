@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.main.api.dom.DOMWriter;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.api.stream.StAXEncoder;
+
+public class ChannelOutputStreamTest extends TestCase {
+
+	static final String XML_FILE = "./data/general/randj.xml";
+
+	protected void write(OutputStream os, byte[] data) throws IOException {
+		// mix of single bytes, small and large writes
+		Random r = new Random(7);
+		int pos = 0;
+		while (pos < data.length) {
+			int len = Math.min(data.length - pos, r.nextInt(4) == 0 ? 1
+					: r.nextInt(200));
+			if (len == 1) {
+				os.write(data[pos]);
+			} else {
+				os.write(data, pos, len);
+			}
+			pos += len;
+		}
+		os.flush();
+	}
+
+	protected byte[] randomBytes(int length) {
+		byte[] data = new byte[length];
+		new Random(42).nextBytes(data);
+		return data;
+	}
+
+	public void testChannel() throws IOException {
+		byte[] data = randomBytes(100000);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		WritableByteChannel channel = Channels.newChannel(baos);
+		write(new ChannelOutputStream(channel, 64), data);
+		assertTrue(Arrays.equals(data, baos.toByteArray()));
+
+		baos.reset();
+		write(new ChannelOutputStream(channel, ByteBuffer.allocateDirect(100)),
+				data);
+		assertTrue(Arrays.equals(data, baos.toByteArray()));
+	}
+
+	public void testGatheringChannel() throws IOException {
+		byte[] data = randomBytes(100000);
+		File f = File.createTempFile("exi", ".bin");
+		try {
+			RandomAccessFile raf = new RandomAccessFile(f, "rw");
+			FileChannel fc = raf.getChannel();
+			ChannelOutputStream cos = new ChannelOutputStream(fc, 128);
+			write(cos, data);
+			cos.close();
+			assertFalse(fc.isOpen());
+
+			byte[] read = new byte[(int) f.length()];
+			InputStream is = new FileInputStream(f);
+			try {
+				int off = 0;
+				while (off < read.length) {
+					off += is.read(read, off, read.length - off);
+				}
+			} finally {
+				is.close();
+			}
+			assertTrue(Arrays.equals(data, read));
+		} finally {
+			f.delete();
+		}
+	}
+
+	public void testBuffer() throws IOException {
+		byte[] data = randomBytes(1000);
+		ByteBuffer buffer = ByteBuffer.allocate(1000);
+		write(new ChannelOutputStream(buffer), data);
+		assertEquals(1000, buffer.position());
+		assertTrue(Arrays.equals(data, buffer.array()));
+
+		try {
+			new ChannelOutputStream(ByteBuffer.allocate(999)).write(data);
+			fail("Buffer overflow not detected");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	protected void encodeSAX(EXIFactory f, WritableByteChannel channel,
+			OutputStream os) throws Exception {
+		SAXEncoder encoder = new SAXFactory(f).createEXIWriter();
+		if (channel != null) {
+			encoder.setOutputChannel(channel);
+		} else {
+			encoder.setOutputStream(os);
+		}
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(encoder);
+		xmlReader.parse(new InputSource(XML_FILE));
+	}
+
+	static class CountingOutputStream extends ByteArrayOutputStream {
+		int singleWrites;
+
+		@Override
+		public synchronized void write(int b) {
+			singleWrites++;
+			super.write(b);
+		}
+	}
+
+	public void testBufferedOutputStream() throws Exception {
+		EXIFactory f = DefaultEXIFactory.newInstance();
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		SAXEncoder encoder = new SAXFactory(f).createEXIWriter();
+		xmlReader.setContentHandler(encoder);
+
+		// unbuffered stream gets a buffer in between
+		CountingOutputStream wrapped = new CountingOutputStream();
+		encoder.setOutputStream(wrapped, false);
+		xmlReader.parse(new InputSource(XML_FILE));
+		assertEquals(0, wrapped.singleWrites);
+
+		// buffered stream is written to directly
+		CountingOutputStream direct = new CountingOutputStream();
+		encoder.setOutputStream(direct, true);
+		xmlReader.parse(new InputSource(XML_FILE));
+		assertTrue(direct.singleWrites > 0);
+
+		assertTrue(Arrays.equals(wrapped.toByteArray(), direct.toByteArray()));
+	}
+
+	public void testEncoders() throws Exception {
+		EXIFactory f = DefaultEXIFactory.newInstance();
+
+		// SAX
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		encodeSAX(f, null, expected);
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		encodeSAX(f, Channels.newChannel(actual), null);
+		assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+
+		// StAX
+		XMLInputFactory xmlFactory = XMLInputFactory.newInstance();
+		expected.reset();
+		StAXEncoder staxEncoder = new StAXEncoder(f);
+		staxEncoder.setOutputStream(expected);
+		XMLStreamReader xmlStream = xmlFactory
+				.createXMLStreamReader(new FileInputStream(XML_FILE));
+		staxEncoder.encode(xmlStream);
+		actual.reset();
+		staxEncoder = new StAXEncoder(f);
+		staxEncoder.setOutputChannel(Channels.newChannel(actual));
+		xmlStream = xmlFactory.createXMLStreamReader(new FileInputStream(
+				XML_FILE));
+		staxEncoder.encode(xmlStream);
+		assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+
+		// DOM
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		Document doc = dbf.newDocumentBuilder().parse(new File(XML_FILE));
+		expected.reset();
+		DOMWriter domWriter = new DOMWriter(f);
+		domWriter.setOutput(expected);
+		domWriter.encode(doc);
+		actual.reset();
+		domWriter = new DOMWriter(f);
+		domWriter.setOutput(Channels.newChannel(actual));
+		domWriter.encode(doc);
+		assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import com.siemens.ct.exi.core.context.QNameContext;
+import com.siemens.ct.exi.core.values.IntegerValue;
+import com.siemens.ct.exi.core.values.StringValue;
+
+public class DecodedAttributesTest extends TestCase {
+
+	protected static QNameContext qnc(int uriID, int localNameID, String uri,
+			String localName) {
+		return new QNameContext(uriID, localNameID, new QName(uri, localName));
+	}
+
+	protected void _testLookup(int n) {
+		DecodedAttributes atts = new DecodedAttributes();
+		// re-used
+		for (int k = 0; k < 2; k++) {
+			atts.clear();
+			for (int i = 0; i < n; i++) {
+				atts.add(qnc(0, i, "", "a" + i), "", new StringValue("v" + i));
+			}
+			// same local-name in other namespace
+			atts.add(qnc(4, 0, "urn:x", "a0"), "x", new StringValue("x0"));
+			assertEquals(n + 1, atts.getLength());
+
+			for (int i = 0; i < n; i++) {
+				assertEquals(i, atts.getIndex("", "a" + i));
+				assertEquals(i, atts.getIndex(null, "a" + i));
+				assertEquals("v" + i, atts.getValueAsString("", "a" + i));
+				assertEquals("a" + i, atts.getLocalName(i));
+				assertEquals("", atts.getNamespaceURI(i));
+			}
+			assertEquals(n, atts.getIndex("urn:x", "a0"));
+			assertEquals("x", atts.getPrefix(n));
+			// first in document order
+			assertEquals("v0", atts.getValueAsString(null, "a0"));
+			assertEquals(-1, atts.getIndex("", "b"));
+			assertEquals(-1, atts.getIndex("urn:x", "a1"));
+			assertNull(atts.getValueAsString("", "b"));
+		}
+	}
+
+	public void testLookupLinear() {
+		_testLookup(3);
+	}
+
+	public void testLookupIndexed() {
+		_testLookup(50);
+	}
+
+	public void testValueString() {
+		DecodedAttributes atts = new DecodedAttributes();
+		atts.add(qnc(0, 0, "", "i"), "", IntegerValue.valueOf(42));
+		String s = atts.getValueAsString(0);
+		assertEquals("42", s);
+		// cached
+		assertSame(s, atts.getValueAsString(0));
+		assertEquals(IntegerValue.valueOf(42), atts.getValue(0));
+	}
+
+	public void testIndexOutOfBounds() {
+		DecodedAttributes atts = new DecodedAttributes();
+		atts.add(qnc(0, 0, "", "a"), "", new StringValue("v"));
+		atts.clear();
+		assertEquals(0, atts.getLength());
+		try {
+			atts.getValueAsString(0);
+			fail("attributes were cleared");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+}
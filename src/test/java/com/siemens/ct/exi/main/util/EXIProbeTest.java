@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.CodingMode;
+import com.siemens.ct.exi.core.DecodingOptions;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.EncodingOptions;
+import com.siemens.ct.exi.core.exceptions.EXIException;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.sax.EXIResult;
+import com.siemens.ct.exi.main.api.sax.SAXDecoder;
+
+public class EXIProbeTest extends TestCase {
+
+	protected static byte[] encode(EXIFactory factory, String xmlFile)
+			throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		EXIResult exiResult = new EXIResult(factory);
+		exiResult.setOutputStream(os);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(exiResult.getHandler());
+		InputStream is = new FileInputStream(xmlFile);
+		try {
+			xmlReader.parse(new InputSource(is));
+		} finally {
+			is.close();
+		}
+		return os.toByteArray();
+	}
+
+	protected static String decode(EXIFactory factory, InputStream is)
+			throws Exception {
+		final StringBuilder sb = new StringBuilder();
+		SAXDecoder decoder = new SAXDecoder(factory);
+		decoder.setContentHandler(new DefaultHandler() {
+			@Override
+			public void startElement(String uri, String localName,
+					String qName, Attributes attributes) {
+				sb.append('<').append(localName).append('>');
+			}
+
+			@Override
+			public void endElement(String uri, String localName, String qName) {
+				sb.append("</").append(localName).append('>');
+			}
+
+			@Override
+			public void characters(char[] ch, int start, int length) {
+				sb.append(ch, start, length);
+			}
+		});
+		decoder.parse(new InputSource(is));
+		return sb.toString();
+	}
+
+	public void testNoOptions() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(factory, "./data/general/complex-structure.xml");
+
+		EXIProbe probe = new EXIProbe(factory);
+		for (int i = 0; i < 2; i++) {
+			EXIProbe.Result r = probe.probe(new ByteArrayInputStream(exi));
+			assertFalse(r.hasCookie());
+			assertFalse(r.hasOptions());
+			assertNull(r.getOptionsFactory());
+			assertNull(r.getSchemaId());
+			assertEquals(new QName("", "test"), r.getRootElement());
+		}
+	}
+
+	public void testOptions() throws Exception {
+		String xsd = "./data/general/order.xsd";
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setGrammars(GrammarFactory.newInstance().createGrammars(xsd));
+		factory.setCodingMode(CodingMode.COMPRESSION);
+		factory.getEncodingOptions().setOption(EncodingOptions.INCLUDE_COOKIE);
+		factory.getEncodingOptions().setOption(EncodingOptions.INCLUDE_OPTIONS);
+		factory.getEncodingOptions().setOption(
+				EncodingOptions.INCLUDE_SCHEMA_ID);
+		byte[] exi = encode(factory, "./data/general/order.xml");
+
+		EXIFactory decFactory = DefaultEXIFactory.newInstance();
+		String expected = decode(decFactory, new ByteArrayInputStream(exi));
+
+		EXIProbe probe = new EXIProbe(decFactory);
+
+		// mark/reset
+		InputStream is = new BufferedInputStream(new ByteArrayInputStream(exi));
+		EXIProbe.Result r = probe.probe(is);
+		assertTrue(r.hasCookie());
+		assertTrue(r.hasOptions());
+		assertEquals(CodingMode.COMPRESSION, r.getOptionsFactory()
+				.getCodingMode());
+		assertEquals(xsd, r.getSchemaId());
+		assertEquals(new QName("", "order"), r.getRootElement());
+		assertEquals(expected, decode(decFactory, is));
+
+		// push back
+		is = new PushbackInputStream(new ByteArrayInputStream(exi),
+				exi.length);
+		r = probe.probe(is);
+		assertEquals(new QName("", "order"), r.getRootElement());
+		assertEquals(expected, decode(decFactory, is));
+
+		// byte buffer
+		ByteBuffer bb = ByteBuffer.allocate(exi.length + 3);
+		bb.put(new byte[3]);
+		bb.put(exi);
+		bb.position(3);
+		r = probe.probe(bb);
+		assertEquals(xsd, r.getSchemaId());
+		assertEquals(new QName("", "order"), r.getRootElement());
+		assertEquals(3, bb.position());
+	}
+
+	public void testPushbackBufferTooSmall() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(factory, "./data/general/complex-structure.xml");
+
+		EXIProbe probe = new EXIProbe(factory);
+		try {
+			probe.probe(new PushbackInputStream(new ByteArrayInputStream(exi),
+					1));
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+
+		// default size suffices for header and root element
+		InputStream is = new PushbackInputStream(
+				new ByteArrayInputStream(exi),
+				DecodingOptions.PUSHBACK_BUFFER_SIZE);
+		probe.probe(is);
+		assertEquals(decode(factory, new ByteArrayInputStream(exi)),
+				decode(factory, is));
+	}
+
+	public void testFailureNotMasked() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		// broken cookie, fails after reading more than the push back size
+		byte[] noExi = "$EXq....".getBytes("US-ASCII");
+
+		EXIProbe probe = new EXIProbe(factory);
+		try {
+			probe.probe(new PushbackInputStream(
+					new ByteArrayInputStream(noExi), 1));
+			fail();
+		} catch (EXIException e) {
+			// expected, not the failing push back
+		}
+		try {
+			probe.probe(new BufferedInputStream(new ByteArrayInputStream(
+					noExi)) {
+				@Override
+				public synchronized void reset() throws IOException {
+					throw new IOException("reset failed");
+				}
+			});
+			fail();
+		} catch (EXIException e) {
+			// expected, not the failing reset
+		}
+	}
+
+}
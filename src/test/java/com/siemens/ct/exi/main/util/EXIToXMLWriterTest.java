@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.EncodingOptions;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.sax.EXIResult;
+import com.siemens.ct.exi.main.api.sax.SAXDecoder;
+
+public class EXIToXMLWriterTest extends TestCase {
+
+	// pre-populated xsi prefix is declared on the root element
+	static final String XSI = " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"";
+
+	/*
+	 * Records elements (expanded names), sorted attributes and merged
+	 * character data
+	 */
+	static class RecordingHandler extends DefaultHandler {
+		final StringBuilder sb = new StringBuilder();
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) {
+			sb.append("<{").append(uri).append('}').append(localName);
+			Map<String, String> atts = new TreeMap<String, String>();
+			for (int i = 0; i < attributes.getLength(); i++) {
+				atts.put("{" + attributes.getURI(i) + "}"
+						+ attributes.getLocalName(i), attributes.getValue(i));
+			}
+			sb.append(atts).append('>');
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			sb.append("</{").append(uri).append('}').append(localName)
+					.append('>');
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) {
+			sb.append(ch, start, length);
+		}
+	}
+
+	protected static byte[] encode(EXIFactory factory, InputStream is)
+			throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		EXIResult exiResult = new EXIResult(factory);
+		exiResult.setOutputStream(os);
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(exiResult.getHandler());
+		xmlReader.setProperty("http://xml.org/sax/properties/lexical-handler",
+				exiResult.getHandler());
+		xmlReader.setProperty(
+				"http://xml.org/sax/properties/declaration-handler",
+				exiResult.getHandler());
+		try {
+			xmlReader.parse(new InputSource(is));
+		} finally {
+			is.close();
+		}
+		return os.toByteArray();
+	}
+
+	protected static String toXML(EXIToXMLWriter writer, byte[] exi)
+			throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		writer.write(new ByteArrayInputStream(exi), os);
+		return new String(os.toByteArray(), "UTF-8");
+	}
+
+	protected static String parse(String xml) throws Exception {
+		RecordingHandler rh = new RecordingHandler();
+		XMLReader xmlReader = XMLReaderFactory.createXMLReader();
+		xmlReader.setContentHandler(rh);
+		xmlReader.parse(new InputSource(new ByteArrayInputStream(xml
+				.getBytes("UTF-8"))));
+		return rh.sb.toString();
+	}
+
+	protected static String decode(EXIFactory factory, byte[] exi)
+			throws Exception {
+		RecordingHandler rh = new RecordingHandler();
+		SAXDecoder decoder = new SAXDecoder(factory);
+		decoder.setContentHandler(rh);
+		decoder.parse(new InputSource(new ByteArrayInputStream(exi)));
+		return rh.sb.toString();
+	}
+
+	protected void _test(EXIFactory factory, String xmlFile) throws Exception {
+		byte[] exi = encode(factory, new FileInputStream(xmlFile));
+		String expected = decode(factory, exi);
+
+		EXIToXMLWriter writer = new EXIToXMLWriter(factory);
+		// writer is re-used
+		for (int i = 0; i < 2; i++) {
+			String xml = toXML(writer, exi);
+			assertTrue(xml, xml.startsWith("<?xml"));
+			assertEquals(xmlFile, expected, parse(xml));
+		}
+	}
+
+	public void testSchemaLess() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		_test(factory, "./data/general/complex-structure.xml");
+		_test(factory, "./data/general/attributes.xml");
+		_test(factory, "./data/general/datatypes.xml");
+		_test(factory, "./data/general/person.xml");
+	}
+
+	public void testSchemaInformed() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setGrammars(GrammarFactory.newInstance().createGrammars(
+				"./data/general/datatypes.xsd"));
+		_test(factory, "./data/general/datatypes.xml");
+
+		factory = DefaultEXIFactory.newInstance();
+		factory.setGrammars(GrammarFactory.newInstance().createGrammars(
+				"./data/general/order.xsd"));
+		_test(factory, "./data/general/order.xml");
+	}
+
+	public void testPrefixes() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.getFidelityOptions().setFidelity(
+				FidelityOptions.FEATURE_PREFIX, true);
+		_test(factory, "./data/general/person.xml");
+	}
+
+	public void testEscaping() throws Exception {
+		String xml = "<root a='&quot;&lt;&amp;&gt;&#9;&#10;&#13;'>"
+				+ "&lt;&amp;&gt; &#13; ä€𝄞</root>";
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(factory,
+				new ByteArrayInputStream(xml.getBytes("UTF-8")));
+
+		String out = toXML(new EXIToXMLWriter(factory), exi);
+		assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<root" + XSI + " a=\"&quot;&lt;&amp;&gt;&#9;&#10;&#13;\">"
+				+ "&lt;&amp;&gt; &#13; ä€𝄞</root>", out);
+		assertEquals(decode(factory, exi), parse(out));
+	}
+
+	public void testNoXMLDeclaration() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(factory,
+				new ByteArrayInputStream("<a><b/></a>".getBytes("UTF-8")));
+
+		EXIToXMLWriter writer = new EXIToXMLWriter(factory);
+		writer.setXMLDeclaration(false);
+		assertEquals("<a" + XSI + "><b/></a>", toXML(writer, exi));
+	}
+
+	public void testFragment() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		factory.setFragment(true);
+		byte[] exi = encode(factory,
+				new ByteArrayInputStream("<a>x</a>".getBytes("UTF-8")));
+
+		// fragments do not have an XML declaration
+		assertEquals("<a" + XSI + ">x</a>",
+				toXML(new EXIToXMLWriter(factory), exi));
+	}
+
+	public void testIndentation() throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		byte[] exi = encode(factory, new ByteArrayInputStream(
+				"<a><b>x</b><c><d/></c></a>".getBytes("UTF-8")));
+
+		EXIToXMLWriter writer = new EXIToXMLWriter(factory);
+		writer.setXMLDeclaration(false);
+		writer.setIndentation(2);
+		assertEquals("<a" + XSI
+				+ ">\n  <b>x</b>\n  <c>\n    <d/>\n  </c>\n</a>\n",
+				toXML(writer, exi));
+	}
+
+	public void testLexical() throws Exception {
+		String xml = "<!DOCTYPE root [<!ENTITY e 'ent'>]><?pi data?><!--c0-->"
+				+ "<root>a&e;b<!--c1--><?t x?><x/></root><!--c2-->";
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		FidelityOptions fo = factory.getFidelityOptions();
+		fo.setFidelity(FidelityOptions.FEATURE_DTD, true);
+		fo.setFidelity(FidelityOptions.FEATURE_COMMENT, true);
+		fo.setFidelity(FidelityOptions.FEATURE_PI, true);
+		factory.getEncodingOptions().setOption(
+				EncodingOptions.RETAIN_ENTITY_REFERENCE);
+		byte[] exi = encode(factory,
+				new ByteArrayInputStream(xml.getBytes("UTF-8")));
+
+		String prolog = "<!DOCTYPE root [<!ENTITY e \"ent\"> ]><?pi data?><!--c0-->";
+		String root = "<root" + XSI + ">a&e;b<!--c1--><?t x?><x/></root>";
+		EXIToXMLWriter writer = new EXIToXMLWriter(factory);
+		String out = toXML(writer, exi);
+		assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + prolog
+				+ root + "<!--c2-->", out);
+		assertEquals(parse(xml), parse(out));
+
+		String indented = "<!DOCTYPE root [<!ENTITY e \"ent\"> ]>\n<?pi data?>"
+				+ "\n<!--c0-->\n<root" + XSI
+				+ ">a&e;b<!--c1--><?t x?><x/>\n</root>\n<!--c2-->\n";
+		writer.setIndentation(2);
+		assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ indented, toXML(writer, exi));
+		// output flushed in between
+		writer.buffer = new byte[64];
+		assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ indented, toXML(writer, exi));
+		// no line break before the first markup
+		writer.setXMLDeclaration(false);
+		assertEquals(indented, toXML(writer, exi));
+	}
+
+}
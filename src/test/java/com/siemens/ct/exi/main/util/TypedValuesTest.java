@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+import com.siemens.ct.exi.core.types.DateTimeType;
+import com.siemens.ct.exi.core.values.BooleanValue;
+import com.siemens.ct.exi.core.values.DateTimeValue;
+import com.siemens.ct.exi.core.values.FloatValue;
+import com.siemens.ct.exi.core.values.IntegerValue;
+import com.siemens.ct.exi.core.values.ListValue;
+import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.core.values.Value;
+
+public class TypedValuesTest extends TestCase {
+
+	protected void assertDateTime(String lexical, DateTimeType type,
+			Calendar cal) {
+		DateTimeValue expected = DateTimeValue.parse(lexical, type);
+		DateTimeValue actual = TypedValues.dateTime(cal, type);
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(expected.year, actual.year);
+		assertEquals(expected.monthDay, actual.monthDay);
+		assertEquals(expected.time, actual.time);
+		assertEquals(expected.fractionalSecs, actual.fractionalSecs);
+		assertEquals(expected.timezone, actual.timezone);
+	}
+
+	protected Calendar getCalendar(String tz) {
+		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone(tz));
+		cal.clear();
+		cal.set(2018, Calendar.FEBRUARY, 3, 4, 5, 6);
+		return cal;
+	}
+
+	public void testDateTime() {
+		Calendar cal = getCalendar("UTC");
+		assertDateTime("2018-02-03T04:05:06Z", DateTimeType.dateTime, cal);
+		cal.set(Calendar.MILLISECOND, 120);
+		assertDateTime("2018-02-03T04:05:06.12Z", DateTimeType.dateTime, cal);
+		cal.set(Calendar.MILLISECOND, 5);
+		assertDateTime("2018-02-03T04:05:06.005Z", DateTimeType.dateTime, cal);
+		cal.set(Calendar.MILLISECOND, 987);
+		assertDateTime("04:05:06.987Z", DateTimeType.time, cal);
+	}
+
+	public void testTimezone() {
+		assertDateTime("2018-02-03T04:05:06+05:30", DateTimeType.dateTime,
+				getCalendar("GMT+05:30"));
+		assertDateTime("2018-02-03-02:00", DateTimeType.date,
+				getCalendar("GMT-02:00"));
+	}
+
+	public void testGregorian() {
+		Calendar cal = getCalendar("UTC");
+		assertDateTime("2018Z", DateTimeType.gYear, cal);
+		assertDateTime("2018-02Z", DateTimeType.gYearMonth, cal);
+		assertDateTime("--02Z", DateTimeType.gMonth, cal);
+		assertDateTime("--02-03Z", DateTimeType.gMonthDay, cal);
+		assertDateTime("---03Z", DateTimeType.gDay, cal);
+	}
+
+	public void testListArrays() {
+		ListValue ints = new ListValue(new Value[] { IntegerValue.valueOf(1),
+				IntegerValue.valueOf(-2), IntegerValue.valueOf(Long.MAX_VALUE) },
+				null);
+		long[] longs = TypedValues.toLongArray(ints);
+		assertEquals(3, longs.length);
+		assertEquals(1, longs[0]);
+		assertEquals(-2, longs[1]);
+		assertEquals(Long.MAX_VALUE, longs[2]);
+
+		double[] doubles = TypedValues.toDoubleArray(new ListValue(
+				new Value[] { FloatValue.parse(0.5d), IntegerValue.valueOf(3) },
+				null));
+		assertEquals(0.5d, doubles[0]);
+		assertEquals(3d, doubles[1]);
+
+		boolean[] booleans = TypedValues.toBooleanArray(new ListValue(
+				new Value[] { BooleanValue.BOOLEAN_VALUE_TRUE,
+						BooleanValue.BOOLEAN_VALUE_FALSE }, null));
+		assertTrue(booleans[0]);
+		assertFalse(booleans[1]);
+
+		try {
+			TypedValues.toLongArray(new ListValue(
+					new Value[] { new StringValue("x") }, null));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
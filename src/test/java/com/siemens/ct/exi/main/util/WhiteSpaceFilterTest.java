@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) 2007-2018 Siemens AG
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * 
+ */
+
+package com.siemens.ct.exi.main.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.siemens.ct.exi.core.Constants;
+import com.siemens.ct.exi.core.EXIBodyEncoder;
+import com.siemens.ct.exi.core.EXIFactory;
+import com.siemens.ct.exi.core.FidelityOptions;
+import com.siemens.ct.exi.core.attributes.AttributeFactory;
+import com.siemens.ct.exi.core.attributes.AttributeList;
+import com.siemens.ct.exi.core.grammars.Grammars;
+import com.siemens.ct.exi.core.helpers.DefaultEXIFactory;
+import com.siemens.ct.exi.core.values.StringValue;
+import com.siemens.ct.exi.grammars.GrammarFactory;
+import com.siemens.ct.exi.main.api.dom.DOMWriter;
+import com.siemens.ct.exi.main.api.sax.SAXEncoder;
+import com.siemens.ct.exi.main.api.sax.SAXFactory;
+import com.siemens.ct.exi.main.api.stream.StAXEncoder;
+
+public class WhiteSpaceFilterTest extends TestCase {
+
+	static final String XSD = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+			+ " <xs:element name='root'>"
+			+ "  <xs:complexType>"
+			+ "   <xs:sequence>"
+			+ "    <xs:element name='a' type='xs:string'/>"
+			+ "    <xs:element name='b' type='xs:int' maxOccurs='2'/>"
+			+ "   </xs:sequence>"
+			+ "  </xs:complexType>"
+			+ " </xs:element>" + "</xs:schema>";
+
+	static final String XML_SCHEMA = "<root>\n  <a> s </a>\n  <b> 1 </b>\r\n\t<b>2</b>\n</root>";
+
+	static final String[] XML_SCHEMA_LESS = {
+			"<root>\n  <a>x</a>\n  <b> y </b>\n  <c/>\n</root>",
+			"<root><a/>  text  <a/> \n <b>  </b>\t</root>",
+			"<root>\n <a xml:space='preserve'>\n <b/>\n <c xml:space='default'> <d/> </c> </a>\n <e/> \n</root>" };
+
+	/* inputs of WhiteSpaceTestCase */
+	static final String[] XML_WHITESPACE_TEST_CASE = {
+			"<root xml:space='preserve'>\n\t<test> This is     great. </test>\n\n</root>",
+			"<root>\n\t<test xml:space='preserve'> This is     great. </test>\n\n</root>",
+			"<root xml:space='preserve'>\n\t<test xml:space='default'> This is     great. </test>\n\n</root>",
+			"<root xml:space='preserve'>\n\t<test xml:space='default'>  <foo />  </test>\n\n</root>",
+			"<root xml:space='default'>\n\t<test> This is     great. </test>\n\n</root>",
+			"<foo a='\n\nxyz' ></foo>",
+			"<!DOCTYPE  foo [<!ENTITY d \"&#xD;\"><!ENTITY a \"&#xA;\"><!ENTITY da \"&#xD;&#xA;\">]><foo a='&d;&d;A&a;&a;B&da;' ></foo>",
+			"<foo a='&#xd;&#xd;A&#xa;&#xa;B&#xd;&#xa;' ></foo>",
+			"<foo>  text content </foo>",
+			"<foo>  <inner>  text  X   content </inner>  </foo>",
+			"<foo> C1 <inner>  text  X   content </inner> C2 </foo>",
+			"<foo>  <inner at='foo'>  text  X   content </inner>  </foo>" };
+
+	/* simple content schemas of WhiteSpaceTestCase */
+	static final String[] XSD_WHITESPACE_TEST_CASE = {
+			"<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+					+ " <xs:element name='foo' type='xs:string'/></xs:schema>",
+			"<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+					+ " <xs:element name='foo' type='stringReplace'/>"
+					+ " <xs:simpleType name='stringReplace'>"
+					+ "  <xs:restriction base='xs:string'>"
+					+ "   <xs:whiteSpace value='replace'/>"
+					+ "  </xs:restriction></xs:simpleType></xs:schema>",
+			"<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+					+ " <xs:element name='foo' type='stringCollapse'/>"
+					+ " <xs:simpleType name='stringCollapse'>"
+					+ "  <xs:restriction base='xs:string'>"
+					+ "   <xs:whiteSpace value='collapse'/>"
+					+ "  </xs:restriction></xs:simpleType></xs:schema>" };
+
+	static final String[] XML_WHITESPACE_TEST_CASE_SIMPLE = {
+			"<foo>  text content </foo>",
+			"<foo> \t\r text content \n</foo>",
+			"<foo> \t\n text \t content xyz     \n \n\r</foo>", "<foo>  </foo>" };
+
+	/* mixed and element-only content with xml:space */
+	static final String XSD_MIXED = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema'>"
+			+ " <xs:import namespace='http://www.w3.org/XML/1998/namespace'"
+			+ "  schemaLocation='"
+			+ new File("./data/schema/xml.xsd").toURI()
+			+ "'/>"
+			+ " <xs:element name='root'>"
+			+ "  <xs:complexType mixed='true'>"
+			+ "   <xs:sequence>"
+			+ "    <xs:element name='a' minOccurs='0' maxOccurs='unbounded'/>"
+			+ "    <xs:element name='c' minOccurs='0'>"
+			+ "     <xs:complexType>"
+			+ "      <xs:sequence>"
+			+ "       <xs:element name='a' minOccurs='0' maxOccurs='unbounded'/>"
+			+ "      </xs:sequence>"
+			+ "      <xs:attribute ref='xml:space'/>"
+			+ "     </xs:complexType>"
+			+ "    </xs:element>"
+			+ "   </xs:sequence>"
+			+ "   <xs:attribute ref='xml:space'/>"
+			+ "  </xs:complexType>"
+			+ " </xs:element>" + "</xs:schema>";
+
+	static final String[] XML_MIXED = {
+			"<root> text <a/>\n <a>x</a> \n tail </root>",
+			"<root>\n <a/>\n <a/>\n</root>",
+			"<root xml:space='preserve'>\n <a/>\n <a/>\n</root>",
+			"<root> head <a/>\n <c>\n <a/>\n </c>\n tail </root>",
+			"<root xml:space='preserve'>\n <a/>\n <c xml:space='default'>\n <a/>\n </c>\n</root>" };
+
+	protected static EXIFactory getFactory(boolean schemaInformed,
+			FidelityOptions fo) throws Exception {
+		return getFactory(schemaInformed ? XSD : null, fo);
+	}
+
+	protected static EXIFactory getFactory(String xsd, FidelityOptions fo)
+			throws Exception {
+		EXIFactory factory = DefaultEXIFactory.newInstance();
+		if (xsd != null) {
+			Grammars g = GrammarFactory.newInstance().createGrammars(
+					new ByteArrayInputStream(xsd.getBytes()));
+			factory.setGrammars(g);
+		}
+		factory.setFidelityOptions(fo);
+		return factory;
+	}
+
+	public void testEnabled() throws Exception {
+		FidelityOptions lexical = FidelityOptions.createDefault();
+		lexical.setFidelity(FidelityOptions.FEATURE_LEXICAL_VALUE, true);
+
+		assertTrue(new WhiteSpaceFilter(getFactory(false,
+				FidelityOptions.createDefault())).isEnabled());
+		assertTrue(new WhiteSpaceFilter(getFactory(true,
+				FidelityOptions.createStrict())).isEnabled());
+		assertFalse(new WhiteSpaceFilter(getFactory(true,
+				FidelityOptions.createDefault())).isEnabled());
+		assertFalse(new WhiteSpaceFilter(getFactory(false, lexical))
+				.isEnabled());
+	}
+
+	public void testState() throws Exception {
+		WhiteSpaceFilter f = new WhiteSpaceFilter(getFactory(false,
+				FidelityOptions.createDefault()));
+		char[] ws = " \n\r\t".toCharArray();
+
+		f.startDocument();
+		f.startElement();
+		assertFalse(f.isIgnorable(ws, 0, ws.length));
+		f.startElement();
+		f.endElement();
+		assertTrue(f.isIgnorable(ws, 0, ws.length));
+		assertTrue(f.isIgnorable(""));
+		assertFalse(f.isIgnorable(" x "));
+
+		// once characters are passed on the run is significant
+		f.passOn(null);
+		assertFalse(f.isIgnorable(ws, 0, ws.length));
+		f.endOfText();
+		assertTrue(f.isIgnorable(ws, 0, ws.length));
+
+		// xml:space
+		f.startElement();
+		f.attribute(Constants.XML_NS_URI, "preserve");
+		f.startElement();
+		f.endElement();
+		assertFalse(f.isIgnorable(ws, 0, ws.length));
+		f.startElement();
+		f.attribute(Constants.XML_NS_URI, "default");
+		f.startElement();
+		f.endElement();
+		assertTrue(f.isIgnorable(ws, 0, ws.length));
+		f.endElement();
+		assertFalse(f.isIgnorable(ws, 0, ws.length));
+		f.endElement();
+		assertTrue(f.isIgnorable(ws, 0, ws.length));
+
+		// deep nesting
+		for (int i = 0; i < 100; i++) {
+			f.startElement();
+		}
+		for (int i = 0; i < 100; i++) {
+			f.endElement();
+		}
+		assertTrue(f.isIgnorable(ws, 0, ws.length));
+	}
+
+	/*
+	 * Handler passing all events to the body encoder without filtering.
+	 */
+	static class BodyEncoderHandler extends DefaultHandler {
+		final EXIBodyEncoder encoder;
+		final AttributeList exiAttributes;
+
+		BodyEncoderHandler(EXIFactory factory, ByteArrayOutputStream os)
+				throws Exception {
+			encoder = factory.createEXIStreamEncoder().encodeHeader(os);
+			exiAttributes = AttributeFactory.newInstance()
+					.createAttributeListInstance(factory);
+		}
+
+		void handle(Exception e) throws SAXException {
+			throw new SAXException(e);
+		}
+
+		@Override
+		public void startDocument() throws SAXException {
+			try {
+				encoder.encodeStartDocument();
+			} catch (Exception e) {
+				handle(e);
+			}
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			try {
+				encoder.encodeEndDocument();
+				encoder.flush();
+			} catch (Exception e) {
+				handle(e);
+			}
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName,
+				Attributes attributes) throws SAXException {
+			try {
+				encoder.encodeStartElement(uri, localName, null);
+				for (int i = 0; i < attributes.getLength(); i++) {
+					exiAttributes.addAttribute(attributes.getURI(i),
+							attributes.getLocalName(i), null,
+							attributes.getValue(i));
+				}
+				encoder.encodeAttributeList(exiAttributes);
+				exiAttributes.clear();
+			} catch (Exception e) {
+				handle(e);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName)
+				throws SAXException {
+			try {
+				encoder.encodeEndElement();
+			} catch (Exception e) {
+				handle(e);
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length)
+				throws SAXException {
+			try {
+				encoder.encodeCharacters(new StringValue(new String(ch,
+						start, length)));
+			} catch (Exception e) {
+				handle(e);
+			}
+		}
+	}
+
+	protected static XMLReader newXMLReader() throws Exception {
+		SAXParserFactory spf = SAXParserFactory.newInstance();
+		spf.setNamespaceAware(true);
+		return spf.newSAXParser().getXMLReader();
+	}
+
+	protected void _testEncoders(EXIFactory factory, String xml)
+			throws Exception {
+		// expected
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		XMLReader reader = newXMLReader();
+		reader.setContentHandler(new BodyEncoderHandler(factory, expected));
+		reader.parse(new InputSource(new ByteArrayInputStream(xml.getBytes())));
+
+		// SAX
+		ByteArrayOutputStream sax = new ByteArrayOutputStream();
+		SAXEncoder saxEncoder = new SAXFactory(factory).createEXIWriter();
+		saxEncoder.setOutputStream(sax);
+		reader = newXMLReader();
+		reader.setContentHandler(saxEncoder);
+		reader.parse(new InputSource(new ByteArrayInputStream(xml.getBytes())));
+		assertTrue("SAX: " + xml,
+				Arrays.equals(expected.toByteArray(), sax.toByteArray()));
+
+		// StAX
+		ByteArrayOutputStream stax = new ByteArrayOutputStream();
+		StAXEncoder staxEncoder = new StAXEncoder(factory);
+		staxEncoder.setOutputStream(stax);
+		XMLStreamReader xmlStream = XMLInputFactory.newInstance()
+				.createXMLStreamReader(new ByteArrayInputStream(xml.getBytes()));
+		staxEncoder.encode(xmlStream);
+		assertTrue("StAX: " + xml,
+				Arrays.equals(expected.toByteArray(), stax.toByteArray()));
+
+		// DOM
+		ByteArrayOutputStream dom = new ByteArrayOutputStream();
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		Document doc = dbf.newDocumentBuilder().parse(
+				new ByteArrayInputStream(xml.getBytes()));
+		DOMWriter domWriter = new DOMWriter(factory);
+		domWriter.setOutput(dom);
+		domWriter.encode(doc);
+		assertTrue("DOM: " + xml,
+				Arrays.equals(expected.toByteArray(), dom.toByteArray()));
+	}
+
+	public void testSchemaLess() throws Exception {
+		EXIFactory factory = getFactory(false, FidelityOptions.createDefault());
+		for (String xml : XML_SCHEMA_LESS) {
+			_testEncoders(factory, xml);
+		}
+	}
+
+	public void testSchemaLessLexicalValues() throws Exception {
+		FidelityOptions fo = FidelityOptions.createDefault();
+		fo.setFidelity(FidelityOptions.FEATURE_LEXICAL_VALUE, true);
+		EXIFactory factory = getFactory(false, fo);
+		for (String xml : XML_SCHEMA_LESS) {
+			_testEncoders(factory, xml);
+		}
+	}
+
+	public void testSchemaInformed() throws Exception {
+		_testEncoders(getFactory(true, FidelityOptions.createDefault()),
+				XML_SCHEMA);
+	}
+
+	public void testSchemaInformedStrict() throws Exception {
+		_testEncoders(getFactory(true, FidelityOptions.createStrict()),
+				XML_SCHEMA);
+	}
+
+	public void testWhiteSpaceTestCaseSchemaLess() throws Exception {
+		EXIFactory factory = getFactory(false, FidelityOptions.createDefault());
+		for (String xml : XML_WHITESPACE_TEST_CASE) {
+			_testEncoders(factory, xml);
+		}
+	}
+
+	public void testWhiteSpaceTestCaseSchemaInformed() throws Exception {
+		for (String xsd : XSD_WHITESPACE_TEST_CASE) {
+			EXIFactory factory = getFactory(xsd, FidelityOptions.createDefault());
+			EXIFactory factoryStrict = getFactory(xsd,
+					FidelityOptions.createStrict());
+			for (String xml : XML_WHITESPACE_TEST_CASE_SIMPLE) {
+				_testEncoders(factory, xml);
+				_testEncoders(factoryStrict, xml);
+			}
+		}
+	}
+
+	public void testMixedContentStrict() throws Exception {
+		EXIFactory factory = getFactory(XSD_MIXED,
+				FidelityOptions.createStrict());
+		assertTrue(new WhiteSpaceFilter(factory).isEnabled());
+		for (String xml : XML_MIXED) {
+			_testEncoders(factory, xml);
+		}
+	}
+
+	public void testPreserveElementContentStrict() throws Exception {
+		// preserved whitespace in element-only content after EE has no CH
+		// production in strict grammars, the filter must not swallow it
+		EXIFactory factory = getFactory(XSD_MIXED,
+				FidelityOptions.createStrict());
+		String xml = "<root>\n <a/>\n <c xml:space='preserve'>\n <a/>\n </c>\n</root>";
+
+		XMLReader reader = newXMLReader();
+		reader.setContentHandler(new BodyEncoderHandler(factory,
+				new ByteArrayOutputStream()));
+		try {
+			reader.parse(new InputSource(new ByteArrayInputStream(xml
+					.getBytes())));
+			fail("Whitespace in strict element content encoded");
+		} catch (SAXException e) {
+			// expected
+		}
+
+		SAXEncoder saxEncoder = new SAXFactory(factory).createEXIWriter();
+		saxEncoder.setOutputStream(new ByteArrayOutputStream());
+		reader = newXMLReader();
+		reader.setContentHandler(saxEncoder);
+		try {
+			reader.parse(new InputSource(new ByteArrayInputStream(xml
+					.getBytes())));
+			fail("Whitespace in strict element content encoded");
+		} catch (SAXException e) {
+			// expected
+		}
+	}
+
+	public void testMixedContent() throws Exception {
+		EXIFactory factory = getFactory(XSD_MIXED,
+				FidelityOptions.createDefault());
+		for (String xml : XML_MIXED) {
+			_testEncoders(factory, xml);
+		}
+	}
+
+	public void testStAXFragmentedCharacters() throws Exception {
+		EXIFactory factory = getFactory(false, FidelityOptions.createDefault());
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		BodyEncoderHandler h = new BodyEncoderHandler(factory, expected);
+		AttributesImpl atts = new AttributesImpl();
+		h.startDocument();
+		h.startElement("", "root", "root", atts);
+		h.startElement("", "a", "a", atts);
+		h.endElement("", "a", "a");
+		h.characters("\n ".toCharArray(), 0, 2);
+		h.characters("x".toCharArray(), 0, 1);
+		h.characters(" ".toCharArray(), 0, 1);
+		h.startElement("", "a", "a", atts);
+		h.endElement("", "a", "a");
+		h.characters("\n ".toCharArray(), 0, 2);
+		h.endElement("", "root", "root");
+		h.endDocument();
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		StAXEncoder stax = new StAXEncoder(factory);
+		stax.setOutputStream(os);
+		stax.writeStartDocument();
+		stax.writeStartElement("", "root", "");
+		stax.writeStartElement("", "a", "");
+		stax.writeEndElement();
+		stax.writeCharacters("\n ");
+		stax.writeCharacters("x".toCharArray(), 0, 1);
+		stax.writeCharacters(" ");
+		stax.writeStartElement("", "a", "");
+		stax.writeEndElement();
+		stax.writeCharacters("\n ".toCharArray(), 0, 2);
+		stax.writeEndElement();
+		stax.writeEndDocument();
+
+		assertTrue(Arrays.equals(expected.toByteArray(), os.toByteArray()));
+	}
+
+}